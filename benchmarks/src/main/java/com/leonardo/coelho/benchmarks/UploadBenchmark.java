@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.benchmarks;
+
+import com.leonardo.coelho.dropboxfake.FakeDropboxServer;
+import com.leonardo.coelho.dropboxfake.StepHarness;
+import com.leonardo.coelho.dropboxoutput.DropboxOutputMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.trans.step.StepInterface;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files uploaded per second by Dropbox Output: many small files through the simple upload, a large one through
+ * upload sessions, and small files again with a share of the calls failing.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class UploadBenchmark {
+  static final int SMALL_FILES = 100;
+  static final int SMALL_FILE_SIZE = 32 << 10; // 32KiB
+  static final int LARGE_FILE_SIZE = 64 << 20; // 64MiB
+  static final int CHUNK_SIZE_MIB = 4;
+
+  /** How long the server waits before serving each request. */
+  @Param( "2" )
+  public long latencyMillis;
+
+  /** Bandwidth of each request, 0 for no limit. */
+  @Param( "0" )
+  public long bandwidthKib;
+
+  @Param( { "1", "8" } )
+  public int concurrentTransfers;
+
+  /**
+   * Share of the calls failing in the scenario with errors, split evenly between rate limits, internal errors and
+   * dropped connections.
+   */
+  @Param( "0.2" )
+  public double errorRatio;
+
+  private FakeDropboxServer server;
+  private Path workDir;
+  private List<String[]> smallFiles;
+  private List<String[]> largeFile;
+
+  @Setup( Level.Trial )
+  public void setUp() throws IOException, KettleException {
+    workDir = Files.createTempDirectory( "upload-benchmark" );
+    server = FakeDropboxServer.start( workDir.resolve( "dropbox" ) );
+    StepHarness.init( server );
+    smallFiles = new ArrayList<>();
+    for ( int i = 0; i < SMALL_FILES; i++ ) {
+      smallFiles.add( new String[] { createFile( "small-" + i, SMALL_FILE_SIZE ), "/benchmark/small-" + i } );
+    }
+    largeFile =
+      Collections.singletonList( new String[] { createFile( "large", LARGE_FILE_SIZE ), "/benchmark/large" } );
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown() throws IOException {
+    server.close();
+    StepHarness.deleteRecursively( workDir );
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( SMALL_FILES )
+  public void smallFiles() throws KettleException {
+    upload( smallFiles, 0 );
+  }
+
+  @Benchmark
+  public void largeFileChunked() throws KettleException {
+    upload( largeFile, 0 );
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( SMALL_FILES )
+  public void smallFilesWithErrors() throws KettleException {
+    upload( smallFiles, errorRatio );
+  }
+
+  private void upload( List<String[]> files, double errors ) throws KettleException {
+    server.withLatency( latencyMillis )
+      .withBandwidth( bandwidthKib * 1024 )
+      .withRateLimited( errors / 3 )
+      .withServerErrors( errors / 3 )
+      .withDrops( errors / 3 );
+    DropboxOutputMeta meta = new DropboxOutputMeta();
+    meta.setDefault();
+    meta.setAccessTokenField( StepHarness.ACCESS_TOKEN_FIELD );
+    meta.setSourceFilesField( StepHarness.SOURCE_FILE_FIELD );
+    meta.setTargetFilesField( StepHarness.TARGET_FILE_FIELD );
+    meta.setMaxConcurrentTransfers( concurrentTransfers );
+    meta.setChunkSize( CHUNK_SIZE_MIB );
+    // Enough attempts for every file to make it through the injected errors.
+    meta.setMaxAttempts( 10 );
+    StepInterface step = StepHarness.run( "DropboxOutput", meta, files );
+    StepHarness.checkTransferred( files.size(), step.getLinesOutput() );
+  }
+
+  private String createFile( String name, int size ) throws IOException {
+    byte[] content = new byte[ size ];
+    ThreadLocalRandom.current().nextBytes( content );
+    return Files.write( workDir.resolve( name ), content ).toString();
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the Dropbox content hash of local files, the value Dropbox reports as {@code content_hash} in file
+ * metadata.
+ * <p>
+ * The file is split in 4MiB blocks, each block is hashed with SHA-256, and the content hash is the SHA-256 of the
+ * concatenated block hashes, hex encoded. Blocks are independent, so they can be hashed in parallel. Content that
+ * isn't in a file is hashed as it goes by with a {@link Digest}.
+ */
+public final class ContentHasher {
+  public static final int BLOCK_SIZE = 4 << 20; // 4MiB
+
+  // Block buffer of each hashing worker, reused for every block and file the worker hashes.
+  private static final ThreadLocal<byte[]> WORKER_BUFFER = ThreadLocal.withInitial( () -> new byte[ BLOCK_SIZE ] );
+
+  private ContentHasher() {
+  }
+
+  /**
+   * Hashes a file one block after another.
+   */
+  public static String hash( File file ) throws IOException {
+    return hash( file, null, 1 );
+  }
+
+  /**
+   * Hashes a file, keeping up to {@code parallelism} blocks in flight on the given workers.
+   *
+   * @param file local file to hash
+   * @param workers where to hash blocks, null to hash them on the calling thread
+   * @param parallelism maximum number of blocks hashed at the same time
+   * @return the content hash, lowercase hex
+   */
+  public static String hash( File file, ExecutorService workers, int parallelism ) throws IOException {
+    try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+      long size = channel.size();
+      int blocks = (int) ( ( size + BLOCK_SIZE - 1 ) / BLOCK_SIZE );
+      MessageDigest overall = sha256();
+      if ( workers == null || parallelism <= 1 || blocks <= 1 ) {
+        byte[] buffer = new byte[ BLOCK_SIZE ];
+        for ( int i = 0; i < blocks; i++ ) {
+          overall.update( hashBlock( channel, (long) i * BLOCK_SIZE, size, buffer ) );
+        }
+      } else {
+        // Block hashes must be combined in order, so only the oldest block in flight is waited for.
+        List<Future<byte[]>> inFlight = new ArrayList<>();
+        int submitted = 0;
+        int completed = 0;
+        try {
+          while ( completed < blocks ) {
+            while ( submitted < blocks && submitted - completed < parallelism ) {
+              long offset = (long) submitted++ * BLOCK_SIZE;
+              inFlight.add( workers.submit( () -> hashBlock( channel, offset, size, WORKER_BUFFER.get() ) ) );
+            }
+            overall.update( inFlight.remove( 0 ).get() );
+            completed++;
+          }
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException( ex.getMessage() );
+        } catch ( ExecutionException ex ) {
+          throw ex.getCause() instanceof IOException
+            ? (IOException) ex.getCause() : new IOException( ex.getCause().getMessage(), ex.getCause() );
+        } finally {
+          inFlight.forEach( block -> block.cancel( true ) );
+        }
+      }
+      return BaseEncoding.base16().lowerCase().encode( overall.digest() );
+    }
+  }
+
+  /**
+   * Content hash of bytes fed in any number of pieces.
+   */
+  public static final class Digest {
+    private final MessageDigest overall = sha256();
+    private final MessageDigest block = sha256();
+    private int blockLength;
+
+    public void update( byte[] b, int off, int len ) {
+      while ( len > 0 ) {
+        int n = Math.min( len, BLOCK_SIZE - blockLength );
+        block.update( b, off, n );
+        blockLength += n;
+        off += n;
+        len -= n;
+        if ( blockLength == BLOCK_SIZE ) {
+          overall.update( block.digest() );
+          blockLength = 0;
+        }
+      }
+    }
+
+    /**
+     * Returns the content hash of every byte fed so far, lowercase hex. The digest can't be fed afterwards.
+     */
+    public String digest() {
+      if ( blockLength > 0 ) {
+        overall.update( block.digest() );
+        blockLength = 0;
+      }
+      return BaseEncoding.base16().lowerCase().encode( overall.digest() );
+    }
+  }
+
+  private static byte[] hashBlock( FileChannel channel, long offset, long size, byte[] buffer ) throws IOException {
+    int length = (int) Math.min( BLOCK_SIZE, size - offset );
+    int read = 0;
+    while ( read < length ) {
+      // Positional reads don't move the channel position, so blocks can be read concurrently.
+      int n = channel.read( ByteBuffer.wrap( buffer, read, length - read ), offset + read );
+      if ( n < 0 ) {
+        throw new IOException( "Unexpected end of file at offset " + ( offset + read ) );
+      }
+      read += n;
+    }
+    MessageDigest block = sha256();
+    block.update( buffer, 0, length );
+    return block.digest();
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance( "SHA-256" );
+    } catch ( NoSuchAlgorithmException ex ) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException( ex );
+    }
+  }
+}
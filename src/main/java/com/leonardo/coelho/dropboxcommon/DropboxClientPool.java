@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.http.OkHttp3Requestor;
+import com.dropbox.core.v2.DbxClientV2;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide cache of Dropbox clients, keyed by access token.
+ * <p>
+ * Every copy of the Dropbox steps borrows its clients from here, so all of them share one keep-alive
+ * connection pool and rows no longer pay for a new HTTP client and TLS handshake on each transfer. Calls made
+ * through these clients are limited by the {@link TransferThrottle}.
+ * <p>
+ * Requests go to the Dropbox servers unless {@link #redirectTo} sends them somewhere else, e.g. to a local stand-in
+ * for benchmarks.
+ */
+public final class DropboxClientPool {
+  static final String CLIENT_IDENTIFIER = "pdi-dropbox-plugin";
+
+  // Clients are cheap, but tokens come from rows, so keep the cache bounded.
+  static final int MAX_CLIENTS = 64;
+  static final long CLIENT_IDLE_TIMEOUT_MINUTES = 10;
+
+  // Connections are what we really want to reuse between rows.
+  static final int MAX_IDLE_CONNECTIONS = 32;
+  static final long CONNECTION_KEEP_ALIVE_MINUTES = 5;
+
+  // Longpoll calls hold the connection for up to 480s, plus up to 90s of random jitter added by Dropbox.
+  static final long LONGPOLL_READ_TIMEOUT_MINUTES = 10;
+
+  private static final DropboxClientPool INSTANCE = new DropboxClientPool();
+
+  private final OkHttpClient httpClient;
+  private final OkHttpClient longpollHttpClient;
+  private final DbxRequestConfig requestConfig;
+  private final LoadingCache<String, DbxClientV2> clients;
+  private final LoadingCache<String, DbxClientV2> longpollClients;
+  private volatile HttpUrl server;
+
+  private DropboxClientPool() {
+    OkHttpClient baseClient = OkHttp3Requestor.defaultOkHttpClientBuilder()
+      .connectionPool( new ConnectionPool( MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES ) )
+      .addInterceptor( chain -> chain.proceed( redirect( chain.request() ) ) )
+      .build();
+    // Requests and bytes of every client, longpoll ones included, count towards the transfer limits.
+    httpClient = baseClient.newBuilder()
+      .addInterceptor( new ThrottlingInterceptor( TransferThrottle.getInstance(), null ) )
+      .build();
+    // Same connection pool, only reads are allowed to wait longer.
+    longpollHttpClient = baseClient.newBuilder()
+      .readTimeout( LONGPOLL_READ_TIMEOUT_MINUTES, TimeUnit.MINUTES )
+      .build();
+    requestConfig = DbxRequestConfig.newBuilder( CLIENT_IDENTIFIER )
+      .withHttpRequestor( new OkHttp3Requestor( httpClient ) )
+      .build();
+    clients = CacheBuilder.newBuilder()
+      .maximumSize( MAX_CLIENTS )
+      .expireAfterAccess( CLIENT_IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES )
+      .build( new CacheLoader<String, DbxClientV2>() {
+        @Override
+        public DbxClientV2 load( String accessToken ) {
+          return new DbxClientV2( requestConfig, accessToken );
+        }
+      } );
+    longpollClients = CacheBuilder.newBuilder()
+      .maximumSize( MAX_CLIENTS )
+      .expireAfterAccess( CLIENT_IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES )
+      .build( new CacheLoader<String, DbxClientV2>() {
+        @Override
+        public DbxClientV2 load( String accessToken ) {
+          // Longpoll calls don't send the token, each client accounts its calls to its own.
+          DbxRequestConfig longpollConfig = DbxRequestConfig.newBuilder( CLIENT_IDENTIFIER )
+            .withHttpRequestor( new OkHttp3Requestor( longpollHttpClient.newBuilder()
+              .addInterceptor( new ThrottlingInterceptor( TransferThrottle.getInstance(), accessToken ) )
+              .build() ) )
+            .build();
+          return new DbxClientV2( longpollConfig, accessToken );
+        }
+      } );
+  }
+
+  public static DropboxClientPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the shared client for the given access token, creating it on first use.
+   *
+   * @param accessToken Dropbox OAuth access token
+   */
+  public DbxClientV2 getClient( String accessToken ) {
+    return clients.getUnchecked( accessToken );
+  }
+
+  /**
+   * Returns the shared client for the given access token to use for {@code list_folder/longpoll} calls, whose
+   * responses take longer than the default read timeout allows.
+   *
+   * @param accessToken Dropbox OAuth access token
+   */
+  public DbxClientV2 getLongpollClient( String accessToken ) {
+    return longpollClients.getUnchecked( accessToken );
+  }
+
+  /**
+   * Sends the requests of every client to another server than Dropbox, e.g. a local stand-in serving both the API
+   * and the content routes. The SDK builds its URLs from host names alone, so requests are redirected on their way
+   * out instead.
+   *
+   * @param url base URL of the server, e.g. {@code http://127.0.0.1:8080}, or null to talk to Dropbox again
+   */
+  public void redirectTo( String url ) {
+    server = url != null ? HttpUrl.get( url ) : null;
+  }
+
+  private Request redirect( Request request ) {
+    HttpUrl target = server;
+    if ( target == null ) {
+      return request;
+    }
+    return request.newBuilder()
+      .url( request.url().newBuilder().scheme( target.scheme() ).host( target.host() ).port( target.port() ).build() )
+      .build();
+  }
+}
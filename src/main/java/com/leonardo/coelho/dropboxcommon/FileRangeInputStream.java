@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads a range of a file through a shared {@link FileChannel}, by position.
+ * <p>
+ * Positional reads don't move the channel position, so a file is opened once and any number of ranges can be read
+ * from it, one after another on retries or at the same time for parallel chunks, without reopening the file and
+ * skipping to the start of each range. Reads go through direct buffers taken from a pool and given back on close,
+ * so sending large files keeps allocating nothing once the pool is warm.
+ * <p>
+ * Closing the stream doesn't close the channel, which belongs to the caller.
+ */
+public final class FileRangeInputStream extends InputStream {
+  static final int BUFFER_SIZE = 128 << 10; // 128KiB
+
+  // Buffers beyond this are left to the garbage collector, enough for every transfer thread of a busy JVM.
+  static final int MAX_POOLED_BUFFERS = 64;
+
+  private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+  private final FileChannel channel;
+  private final long end;
+  private long position;
+  private ByteBuffer buffer;
+
+  /**
+   * @param channel file to read from, left open on close
+   * @param position where the range starts within the file
+   * @param length how many bytes the range holds
+   */
+  public FileRangeInputStream( FileChannel channel, long position, long length ) {
+    this.channel = channel;
+    this.position = position;
+    this.end = position + length;
+    ByteBuffer pooled = POOL.poll();
+    buffer = pooled != null ? pooled : ByteBuffer.allocateDirect( BUFFER_SIZE );
+    // Buffer methods are called through Buffer, their ByteBuffer overrides don't exist on Java 8.
+    ( (Buffer) buffer ).limit( 0 );
+  }
+
+  @Override
+  public int read() throws IOException {
+    if ( !fill() ) {
+      return -1;
+    }
+    return buffer.get() & 0xff;
+  }
+
+  @Override
+  public int read( byte[] b, int off, int len ) throws IOException {
+    if ( len == 0 ) {
+      return 0;
+    }
+    if ( !fill() ) {
+      return -1;
+    }
+    int n = Math.min( len, buffer.remaining() );
+    buffer.get( b, off, n );
+    return n;
+  }
+
+  @Override
+  public long skip( long n ) throws IOException {
+    checkOpen();
+    if ( n <= 0 ) {
+      return 0;
+    }
+    long skipped = Math.min( n, buffer.remaining() + ( end - position ) );
+    if ( skipped <= buffer.remaining() ) {
+      ( (Buffer) buffer ).position( buffer.position() + (int) skipped );
+    } else {
+      position += skipped - buffer.remaining();
+      ( (Buffer) buffer ).limit( 0 );
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    checkOpen();
+    return (int) Math.min( Integer.MAX_VALUE, buffer.remaining() + ( end - position ) );
+  }
+
+  @Override
+  public void close() {
+    if ( buffer != null ) {
+      if ( POOL.size() < MAX_POOLED_BUFFERS ) {
+        POOL.offer( buffer );
+      }
+      buffer = null;
+    }
+  }
+
+  /**
+   * Number of buffers waiting in the pool.
+   */
+  static int pooledBuffers() {
+    return POOL.size();
+  }
+
+  /**
+   * Makes sure the buffer holds unread bytes, reading the next part of the range when it doesn't.
+   *
+   * @return false at the end of the range
+   */
+  private boolean fill() throws IOException {
+    checkOpen();
+    if ( buffer.hasRemaining() ) {
+      return true;
+    }
+    if ( position >= end ) {
+      return false;
+    }
+    ( (Buffer) buffer ).clear();
+    ( (Buffer) buffer ).limit( (int) Math.min( buffer.capacity(), end - position ) );
+    int n = 0;
+    while ( n == 0 ) {
+      n = channel.read( buffer, position );
+    }
+    if ( n < 0 ) {
+      throw new EOFException( "Unexpected end of file at offset " + position );
+    }
+    position += n;
+    ( (Buffer) buffer ).flip();
+    return true;
+  }
+
+  private void checkOpen() throws IOException {
+    if ( buffer == null ) {
+      throw new IOException( "Stream closed" );
+    }
+  }
+}
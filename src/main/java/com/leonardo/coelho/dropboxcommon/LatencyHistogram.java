@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of call latencies, precise enough for percentiles.
+ * <p>
+ * Latencies are counted in microseconds, in buckets 8 per power of two wide, so any percentile is within 12.5% of
+ * the actual value whatever the magnitude, with a fixed footprint of a few KiB.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKETS = 8;
+  private static final int SUB_BUCKET_BITS = 3;
+  // Latencies up to 2^40 microseconds, close to 13 days, anything longer lands in the last bucket.
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+
+  void record( long nanos ) {
+    long micros = Math.max( 0, TimeUnit.NANOSECONDS.toMicros( nanos ) );
+    counts.incrementAndGet( bucket( micros ) );
+    count.increment();
+    totalMicros.add( micros );
+  }
+
+  long count() {
+    return count.sum();
+  }
+
+  double meanMillis() {
+    long n = count.sum();
+    return n == 0 ? 0 : totalMicros.sum() / 1000.0 / n;
+  }
+
+  /**
+   * Returns the latency below which the given share of the calls completed, in milliseconds.
+   *
+   * @param quantile between 0 and 1, e.g. 0.95 for the 95th percentile
+   */
+  double percentileMillis( double quantile ) {
+    long total = 0;
+    long[] snapshot = new long[ BUCKETS ];
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      snapshot[ i ] = counts.get( i );
+      total += snapshot[ i ];
+    }
+    if ( total == 0 ) {
+      return 0;
+    }
+    long rank = (long) Math.ceil( quantile * total );
+    long seen = 0;
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      seen += snapshot[ i ];
+      if ( seen >= Math.max( 1, rank ) ) {
+        // The middle of the bucket is at most half a bucket away from any value in it.
+        return ( lowerBound( i ) + lowerBound( i + 1 ) ) / 2.0 / 1000.0;
+      }
+    }
+    return lowerBound( BUCKETS ) / 1000.0;
+  }
+
+  static int bucket( long micros ) {
+    if ( micros < 2 * SUB_BUCKETS ) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros( micros );
+    if ( exponent > MAX_EXPONENT ) {
+      return BUCKETS - 1;
+    }
+    int subBucket = (int) ( micros >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+    return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+  }
+
+  static long lowerBound( int bucket ) {
+    if ( bucket < 2 * SUB_BUCKETS ) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return (long) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << ( exponent - SUB_BUCKET_BITS );
+  }
+}
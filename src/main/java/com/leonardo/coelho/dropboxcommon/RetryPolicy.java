@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryException;
+import com.dropbox.core.ServerException;
+import com.dropbox.core.v2.DbxClientV2;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether and when a Dropbox call that failed on a transient error is tried again. One policy is shared by
+ * every transfer path of a step copy.
+ * <p>
+ * Retries wait for an exponential backoff with jitter, never shorter than the delay Dropbox asked for with
+ * Retry-After. A retry budget caps the retries of the whole run, so a long outage fails rows instead of stalling
+ * the transformation on backoffs. A circuit breaker per client, so per access token with pooled clients, stops
+ * calling Dropbox after too many consecutive failures, letting a single trial call through every cooldown period
+ * until one succeeds.
+ * <p>
+ * Backoffs outside of transfer workers, e.g. of chunk and range workers or of a step thread, wait with
+ * {@link #sleep(long)}, which {@link #cancelRetries()} ends at once when the step is stopped.
+ */
+public final class RetryPolicy {
+  public static final int DEFAULT_MAX_ATTEMPTS = 5;
+  public static final int DEFAULT_BREAKER_THRESHOLD = 10;
+
+  static final long BASE_DELAY_MILLIS = 500;
+  static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+  static final long BREAKER_COOLDOWN_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+
+  /**
+   * Why a call was given up on.
+   */
+  public enum Outcome {
+    RETRIES_EXHAUSTED, BUDGET_SPENT, CIRCUIT_OPEN, INTERRUPTED
+  }
+
+  /**
+   * A single Dropbox call, as retried by {@link #call}.
+   */
+  public interface DropboxCall<T> {
+    T call() throws DbxException;
+  }
+
+  private final int maxAttempts;
+  private final AtomicInteger retriesLeft;
+  private final int breakerThreshold;
+  private final TransferMetrics metrics;
+  private final Set<CompletableFuture<Void>> sleeping = ConcurrentHashMap.newKeySet();
+  private volatile boolean retriesCancelled;
+  // Clients come from the pool, one per token, and are dropped with it.
+  private final LoadingCache<Object, Breaker> breakers = CacheBuilder.newBuilder()
+    .weakKeys()
+    .build( new CacheLoader<Object, Breaker>() {
+      @Override
+      public Breaker load( Object client ) {
+        return new Breaker();
+      }
+    } );
+
+  /**
+   * @param maxAttempts how many times a call is tried, the first one included
+   * @param retryBudget how many retries the whole run may make, 0 for no limit
+   * @param breakerThreshold consecutive failures of a client that pause its calls, 0 to never pause them
+   */
+  public RetryPolicy( int maxAttempts, int retryBudget, int breakerThreshold ) {
+    this( maxAttempts, retryBudget, breakerThreshold, null );
+  }
+
+  /**
+   * @param maxAttempts how many times a call is tried, the first one included
+   * @param retryBudget how many retries the whole run may make, 0 for no limit
+   * @param breakerThreshold consecutive failures of a client that pause its calls, 0 to never pause them
+   * @param metrics where failures, retries and the latency of {@link #call calls} are recorded, or null
+   */
+  public RetryPolicy( int maxAttempts, int retryBudget, int breakerThreshold, TransferMetrics metrics ) {
+    this.maxAttempts = Math.max( 1, maxAttempts );
+    this.retriesLeft = retryBudget > 0 ? new AtomicInteger( retryBudget ) : null;
+    this.breakerThreshold = Math.max( 0, breakerThreshold );
+    this.metrics = metrics;
+  }
+
+  /**
+   * Whether a failure is worth trying again: the network dropped, Dropbox asked to slow down or had an internal
+   * error.
+   */
+  public static boolean isTransient( Throwable ex ) {
+    return ex instanceof RetryException || ex instanceof NetworkIOException || ex instanceof ServerException;
+  }
+
+  /**
+   * Starts tracking the attempts of a call made with the given client.
+   */
+  public Attempts attempts( DbxClientV2 client ) {
+    return new Attempts( breakerThreshold > 0 && client != null ? breakers.getUnchecked( client ) : null );
+  }
+
+  /**
+   * Makes a call, trying it again on transient errors.
+   *
+   * @param client client the call is made with
+   * @param endpoint API route of the call, e.g. {@code files/get_metadata}, its latency is recorded under it
+   * @param call the call
+   * @return what the call returned
+   * @throws DbxException the error of the call when it isn't transient, or once it is given up on
+   */
+  public <T> T call( DbxClientV2 client, String endpoint, DropboxCall<T> call ) throws DbxException {
+    Attempts attempts = attempts( client );
+    while ( attempts.next() ) {
+      try {
+        long start = System.nanoTime();
+        T result = call.call();
+        attempts.succeeded();
+        if ( metrics != null ) {
+          metrics.recordCall( endpoint, start );
+        }
+        return result;
+      } catch ( DbxException ex ) {
+        if ( !isTransient( ex ) ) {
+          throw ex;
+        }
+        attempts.failed( ex );
+      }
+    }
+    throw attempts.gaveUp();
+  }
+
+  /**
+   * Waits like a backoff of this policy: {@link #cancelRetries()} ends the wait right away.
+   *
+   * @param millis how long to wait
+   * @throws InterruptedException when the thread is interrupted or the pending retries were cancelled
+   */
+  public void sleep( long millis ) throws InterruptedException {
+    CompletableFuture<Void> wakeUp = new CompletableFuture<>();
+    sleeping.add( wakeUp );
+    try {
+      // Checked once registered, so a concurrent cancelRetries() either sees the wait or is seen here.
+      if ( retriesCancelled ) {
+        throw new InterruptedException( "Pending retries were cancelled" );
+      }
+      wakeUp.get( millis, TimeUnit.MILLISECONDS );
+    } catch ( TimeoutException ex ) {
+      // Waited the whole time.
+    } catch ( CancellationException | ExecutionException ex ) {
+      throw new InterruptedException( "Pending retries were cancelled" );
+    } finally {
+      sleeping.remove( wakeUp );
+    }
+  }
+
+  /**
+   * Ends every wait of this policy that isn't on a transfer worker right away, the calls waiting fail as
+   * interrupted. Calls that would wait afterwards fail right away too. Waits of transfer workers are cancelled by
+   * {@link TransferExecutor#cancelRetries()}.
+   */
+  public void cancelRetries() {
+    retriesCancelled = true;
+    sleeping.forEach( wakeUp -> wakeUp.cancel( false ) );
+  }
+
+  long backoffMillis( int attempt, Exception error ) {
+    long delay = Math.min( MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min( attempt - 1, 16 ) );
+    // Equal jitter: half of the delay is kept, the other half is random, so clients don't retry in lockstep.
+    delay = delay / 2 + ThreadLocalRandom.current().nextLong( delay / 2 + 1 );
+    if ( error instanceof RetryException ) {
+      delay = Math.max( delay, ( (RetryException) error ).getBackoffMillis() );
+    }
+    return delay;
+  }
+
+  private boolean spendRetry() {
+    if ( retriesLeft == null ) {
+      return true;
+    }
+    // Never goes below 0, so a spent budget stays spent.
+    return retriesLeft.getAndUpdate( left -> Math.max( 0, left - 1 ) ) > 0;
+  }
+
+  /**
+   * Attempts of a single call. The call is made while {@link #next()} allows it, and each attempt reports how it
+   * went.
+   */
+  public final class Attempts {
+    private final Breaker breaker;
+    private int attempt;
+    private long delayMillis = -1;
+    private Exception lastError;
+    private Outcome outcome;
+
+    private Attempts( Breaker breaker ) {
+      this.breaker = breaker;
+    }
+
+    /**
+     * Waits for the backoff of the previous attempt if it failed, then tells whether another attempt may be made.
+     */
+    public boolean next() {
+      if ( outcome != null ) {
+        return false;
+      }
+      if ( attempt > 0 ) {
+        if ( attempt >= maxAttempts ) {
+          outcome = Outcome.RETRIES_EXHAUSTED;
+          return false;
+        }
+        if ( delayMillis >= 0 ) {
+          if ( !spendRetry() ) {
+            outcome = Outcome.BUDGET_SPENT;
+            return false;
+          }
+          if ( metrics != null ) {
+            metrics.recordRetry();
+          }
+          try {
+            // Transfers run by a TransferExecutor give their slot up while they wait.
+            if ( !TransferExecutor.park( delayMillis ) ) {
+              sleep( delayMillis );
+            }
+          } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            outcome = Outcome.INTERRUPTED;
+            return false;
+          }
+        }
+      }
+      if ( breaker != null && !breaker.allow( breakerThreshold ) ) {
+        outcome = Outcome.CIRCUIT_OPEN;
+        return false;
+      }
+      attempt++;
+      delayMillis = -1;
+      return true;
+    }
+
+    /**
+     * The attempt failed on a transient error, the next one waits for a backoff.
+     */
+    public void failed( Exception error ) {
+      lastError = error;
+      delayMillis = backoffMillis( attempt, error );
+      if ( metrics != null ) {
+        metrics.recordFailure( error );
+      }
+      if ( breaker != null ) {
+        breaker.failure( breakerThreshold );
+      }
+    }
+
+    /**
+     * The attempt has to be made again right away, e.g. from the offset Dropbox reported.
+     */
+    public void retryNow( Exception error ) {
+      lastError = error;
+      delayMillis = -1;
+    }
+
+    /**
+     * The call went through.
+     */
+    public void succeeded() {
+      if ( breaker != null ) {
+        breaker.success();
+      }
+    }
+
+    /**
+     * Number of the current attempt, starting at 1.
+     */
+    public int attempt() {
+      return attempt;
+    }
+
+    public int maxAttempts() {
+      return maxAttempts;
+    }
+
+    /**
+     * Error of the most recent failed attempt, null when none failed.
+     */
+    public Exception lastError() {
+      return lastError;
+    }
+
+    /**
+     * Why the call was given up on, null while it wasn't.
+     */
+    public Outcome outcome() {
+      return outcome;
+    }
+
+    /**
+     * Error to report for a call that was given up on: the error of the last attempt when they ran out, otherwise
+     * why no further attempt was made.
+     */
+    public DbxException gaveUp() {
+      if ( outcome == Outcome.RETRIES_EXHAUSTED && lastError instanceof DbxException ) {
+        return (DbxException) lastError;
+      }
+      return new DbxException( describeOutcome(), lastError );
+    }
+
+    private String describeOutcome() {
+      switch ( outcome ) {
+        case BUDGET_SPENT:
+          return "Retry budget of this run is spent";
+        case CIRCUIT_OPEN:
+          return "Too many consecutive failures, calls are paused for a while";
+        case INTERRUPTED:
+          return "Interrupted during backoff";
+        default:
+          return "Maxed out attempts";
+      }
+    }
+  }
+
+  /**
+   * Consecutive failures of a client. Once they reach the threshold, a single call is let through per cooldown
+   * period until one succeeds.
+   */
+  private static final class Breaker {
+    private int failures;
+    private long openUntil;
+
+    synchronized boolean allow( int threshold ) {
+      if ( failures < threshold ) {
+        return true;
+      }
+      long now = System.currentTimeMillis();
+      if ( now < openUntil ) {
+        return false;
+      }
+      openUntil = now + BREAKER_COOLDOWN_MILLIS;
+      return true;
+    }
+
+    synchronized void failure( int threshold ) {
+      if ( ++failures == threshold ) {
+        openUntil = System.currentTimeMillis() + BREAKER_COOLDOWN_MILLIS;
+      }
+    }
+
+    synchronized void success() {
+      failures = 0;
+    }
+  }
+}
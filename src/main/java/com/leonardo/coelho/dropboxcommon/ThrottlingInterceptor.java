@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds every call of the pooled HTTP clients through the {@link TransferThrottle}: a request waits for its token's
+ * request bucket, and request and response bodies are metered as they stream.
+ * <p>
+ * The token of a call is read from its {@code Authorization} header. Calls that don't carry one, like
+ * {@code list_folder/longpoll}, are accounted to the token of the client they are made with.
+ */
+class ThrottlingInterceptor implements Interceptor {
+  static final int TOO_MANY_REQUESTS = 429;
+  private static final String BEARER = "Bearer ";
+
+  private final TransferThrottle throttle;
+  private final String clientAccessToken;
+
+  /**
+   * @param throttle where calls are accounted for
+   * @param clientAccessToken token of the client, for calls without an Authorization header, or null
+   */
+  ThrottlingInterceptor( TransferThrottle throttle, String clientAccessToken ) {
+    this.throttle = throttle;
+    this.clientAccessToken = clientAccessToken;
+  }
+
+  @Override
+  public Response intercept( Chain chain ) throws IOException {
+    Request request = chain.request();
+    if ( !throttle.isActive() ) {
+      return chain.proceed( request );
+    }
+    String accessToken = accessToken( request );
+    throttle.beforeRequest( accessToken );
+    if ( request.body() != null ) {
+      request = request.newBuilder()
+        .method( request.method(), new ThrottledRequestBody( request.body(), accessToken ) )
+        .build();
+    }
+    Response response = chain.proceed( request );
+    if ( response.code() == TOO_MANY_REQUESTS ) {
+      throttle.backOff( accessToken, retryAfterMillis( response ) );
+    }
+    ResponseBody body = response.body();
+    if ( body == null ) {
+      return response;
+    }
+    ForwardingSource source = new ForwardingSource( body.source() ) {
+      @Override
+      public long read( Buffer sink, long byteCount ) throws IOException {
+        long read = super.read( sink, Math.min( byteCount, TransferThrottle.SLICE_SIZE ) );
+        if ( read > 0 ) {
+          throttle.beforeTransfer( accessToken, (int) read );
+        }
+        return read;
+      }
+    };
+    return response.newBuilder()
+      .body( ResponseBody.create( body.contentType(), body.contentLength(), Okio.buffer( source ) ) )
+      .build();
+  }
+
+  private String accessToken( Request request ) {
+    String authorization = request.header( "Authorization" );
+    return authorization != null && authorization.startsWith( BEARER )
+      ? authorization.substring( BEARER.length() ) : clientAccessToken;
+  }
+
+  private static long retryAfterMillis( Response response ) {
+    String retryAfter = response.header( "Retry-After" );
+    if ( retryAfter == null ) {
+      return 0L;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis( Long.parseLong( retryAfter.trim() ) );
+    } catch ( NumberFormatException ex ) {
+      return 0L;
+    }
+  }
+
+  /**
+   * Request body metered as it is written to the connection.
+   */
+  private class ThrottledRequestBody extends RequestBody {
+    private final RequestBody body;
+    private final String accessToken;
+
+    ThrottledRequestBody( RequestBody body, String accessToken ) {
+      this.body = body;
+      this.accessToken = accessToken;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return body.contentLength();
+    }
+
+    @Override
+    public void writeTo( BufferedSink sink ) throws IOException {
+      BufferedSink throttled = Okio.buffer( new ForwardingSink( sink ) {
+        @Override
+        public void write( Buffer source, long byteCount ) throws IOException {
+          while ( byteCount > 0 ) {
+            int slice = (int) Math.min( byteCount, TransferThrottle.SLICE_SIZE );
+            throttle.beforeTransfer( accessToken, slice );
+            super.write( source, slice );
+            byteCount -= slice;
+          }
+        }
+      } );
+      body.writeTo( throttled );
+      // Not closed, the connection's sink belongs to OkHttp.
+      throttled.emit();
+    }
+  }
+}
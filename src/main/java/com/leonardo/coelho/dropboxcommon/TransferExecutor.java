@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.pentaho.di.core.exception.KettleStepException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the transfers of a step on a bounded worker pool.
+ * <p>
+ * Rows are submitted from the step thread as they arrive and handed back to the {@link Listener}, also on the
+ * step thread, as soon as their transfer completes. When order is preserved, a row is only handed back once
+ * every row submitted before it has been handed back too. Transfers can optionally be grouped by a key (e.g. the
+ * access token) with a cap on how many transfers of the same key run at once.
+ * <p>
+ * A transfer waiting to retry a failed call is parked with {@link #park(long)}: it gives its slot up until a
+ * scheduler wakes it, so the rows behind it keep flowing, and {@link #cancelRetries()} ends every such wait at
+ * once.
+ *
+ * @param <T> result of a single transfer
+ */
+public class TransferExecutor<T> {
+
+  /**
+   * Receives finished transfers. Always called from the step thread, so it is safe to put rows from here.
+   */
+  public interface Listener<T> {
+    void transferred( Object[] row, T result ) throws KettleStepException;
+  }
+
+  // Slot of the transfer running on the current thread, null outside of transfer workers.
+  private static final ThreadLocal<TransferExecutor<?>.Slot> CURRENT_SLOT = new ThreadLocal<>();
+
+  private final ExecutorService workers;
+  private final ScheduledExecutorService retryScheduler;
+  private final Deque<PendingTransfer<T>> pending = new ArrayDeque<>();
+  private final ConcurrentMap<String, Semaphore> keyPermits = new ConcurrentHashMap<>();
+  private final Semaphore slots;
+  private final Set<CompletableFuture<Void>> parked = ConcurrentHashMap.newKeySet();
+  // Completed and replaced every time a transfer parks.
+  private final AtomicReference<CompletableFuture<Void>> parkSignal =
+    new AtomicReference<>( new CompletableFuture<>() );
+  private volatile boolean retriesCancelled;
+  private volatile TransferMetrics metrics;
+  private final int maxConcurrentTransfers;
+  private final int maxConcurrentTransfersPerKey;
+  private final boolean preserveOrder;
+  private final Listener<T> listener;
+
+  public TransferExecutor( String name, int maxConcurrentTransfers, boolean preserveOrder, Listener<T> listener ) {
+    this( name, maxConcurrentTransfers, 0, preserveOrder, listener );
+  }
+
+  /**
+   * @param name prefix for the worker thread names
+   * @param maxConcurrentTransfers how many transfers run at once
+   * @param maxConcurrentTransfersPerKey how many transfers sharing a key run at once, 0 for no limit
+   * @param preserveOrder whether rows are handed back in the order they were submitted
+   * @param listener receives the finished transfers
+   */
+  public TransferExecutor( String name, int maxConcurrentTransfers, int maxConcurrentTransfersPerKey,
+                           boolean preserveOrder, Listener<T> listener ) {
+    this.maxConcurrentTransfers = Math.max( 1, maxConcurrentTransfers );
+    this.maxConcurrentTransfersPerKey = Math.max( 0, maxConcurrentTransfersPerKey );
+    this.preserveOrder = preserveOrder;
+    this.listener = listener;
+    this.slots = new Semaphore( this.maxConcurrentTransfers );
+    // Parked transfers keep their thread, so as many more can wait for a retry as can run.
+    this.workers = Executors.newFixedThreadPool( 2 * this.maxConcurrentTransfers, new ThreadFactoryBuilder()
+      .setNameFormat( name + " transfer-%d" )
+      .setDaemon( true )
+      .build() );
+    this.retryScheduler = Executors.newSingleThreadScheduledExecutor( new ThreadFactoryBuilder()
+      .setNameFormat( name + " retry-scheduler" )
+      .setDaemon( true )
+      .build() );
+  }
+
+  /**
+   * Counts the transfers running and waiting to retry in the given metrics.
+   */
+  public void setMetrics( TransferMetrics metrics ) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Waits before a failed call is retried, when called from a transfer worker. The transfer gives its slot up while
+   * it waits, so other transfers run in the meantime.
+   *
+   * @param millis how long to wait
+   * @return whether the current thread is a transfer worker and waited, when it isn't the caller has to wait itself
+   * @throws InterruptedException when the thread is interrupted or the pending retries were cancelled
+   */
+  public static boolean park( long millis ) throws InterruptedException {
+    TransferExecutor<?>.Slot slot = CURRENT_SLOT.get();
+    if ( slot == null ) {
+      return false;
+    }
+    slot.park( millis );
+    return true;
+  }
+
+  /**
+   * Starts a transfer for the given row, blocking while the maximum number of transfers is in flight.
+   *
+   * @param row input row the transfer belongs to
+   * @param transfer the work to be done
+   */
+  public void submit( Object[] row, Callable<T> transfer ) throws KettleStepException {
+    submit( row, null, transfer );
+  }
+
+  /**
+   * Starts a transfer for the given row, blocking while the maximum number of transfers is in flight. The transfer
+   * waits for a free slot of its key before it starts.
+   *
+   * @param row input row the transfer belongs to
+   * @param key groups transfers limited together, or null
+   * @param transfer the work to be done
+   */
+  public void submit( Object[] row, String key, Callable<T> transfer ) throws KettleStepException {
+    while ( true ) {
+      // Taken before looking, so a transfer parking in between still wakes us up.
+      CompletableFuture<Void> parking = parkSignal.get();
+      int running = pending.size() - parked.size();
+      if ( running < maxConcurrentTransfers && pending.size() < 2 * maxConcurrentTransfers ) {
+        break;
+      }
+      awaitCompletion( parking );
+    }
+    Semaphore permits = key != null && maxConcurrentTransfersPerKey > 0
+      ? keyPermits.computeIfAbsent( key, k -> new Semaphore( maxConcurrentTransfersPerKey ) )
+      : null;
+    CompletableFuture<T> future = new CompletableFuture<>();
+    workers.execute( () -> {
+      Slot slot = new Slot( permits );
+      try {
+        slot.acquire();
+        CURRENT_SLOT.set( slot );
+        try {
+          future.complete( transfer.call() );
+        } finally {
+          CURRENT_SLOT.remove();
+          slot.release();
+        }
+      } catch ( Throwable t ) {
+        future.completeExceptionally( t );
+      }
+    } );
+    pending.add( new PendingTransfer<>( row, future ) );
+    emitCompleted();
+  }
+
+  /**
+   * Queues a row whose outcome is already known (e.g. it failed validation), so it keeps its place in the output.
+   */
+  public void submitCompleted( Object[] row, T result ) throws KettleStepException {
+    pending.add( new PendingTransfer<>( row, CompletableFuture.completedFuture( result ) ) );
+    emitCompleted();
+  }
+
+  /**
+   * Hands every finished transfer back to the listener, without waiting for the ones still running.
+   */
+  public void emitCompleted() throws KettleStepException {
+    if ( preserveOrder ) {
+      while ( !pending.isEmpty() && pending.peekFirst().future.isDone() ) {
+        emit( pending.pollFirst() );
+      }
+    } else {
+      Iterator<PendingTransfer<T>> it = pending.iterator();
+      while ( it.hasNext() ) {
+        PendingTransfer<T> transfer = it.next();
+        if ( transfer.future.isDone() ) {
+          it.remove();
+          emit( transfer );
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for every submitted transfer to finish and hands them all back to the listener.
+   */
+  public void drain() throws KettleStepException {
+    while ( !pending.isEmpty() ) {
+      awaitCompletion( null );
+    }
+  }
+
+  /**
+   * Ends every wait for a retry right away, the parked transfers fail as interrupted. Transfers parking afterwards
+   * fail the same way, so a stopped step doesn't sit out backoffs.
+   */
+  public void cancelRetries() {
+    retriesCancelled = true;
+    parked.forEach( wakeUp -> wakeUp.cancel( false ) );
+  }
+
+  /**
+   * Stops the worker threads. Transfers still running are interrupted, and those waiting for a retry cancelled.
+   */
+  public void shutdown() {
+    cancelRetries();
+    retryScheduler.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  /**
+   * Waits until a transfer can be handed back, or until a transfer parks when given a signal to wait on.
+   */
+  private void awaitCompletion( CompletableFuture<Void> parking ) throws KettleStepException {
+    try {
+      if ( preserveOrder && parking == null ) {
+        pending.peekFirst().future.get();
+      } else {
+        int count = preserveOrder ? 1 : pending.size();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[ count + ( parking != null ? 1 : 0 ) ];
+        Iterator<PendingTransfer<T>> it = pending.iterator();
+        for ( int i = 0; i < count; i++ ) {
+          futures[ i ] = it.next().future;
+        }
+        if ( parking != null ) {
+          futures[ count ] = parking;
+        }
+        CompletableFuture.anyOf( futures ).get();
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleStepException( e );
+    } catch ( ExecutionException e ) {
+      // Surfaced by emit() below.
+    }
+    emitCompleted();
+  }
+
+  private void emit( PendingTransfer<T> transfer ) throws KettleStepException {
+    T result;
+    try {
+      result = transfer.future.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleStepException( e );
+    } catch ( ExecutionException e ) {
+      throw new KettleStepException( e.getCause() );
+    }
+    listener.transferred( transfer.row, result );
+  }
+
+  /**
+   * Slot a transfer holds while it runs: one of the transfers running at once, plus one of its key if limited.
+   */
+  private final class Slot {
+    private final Semaphore permits;
+    private boolean held;
+
+    Slot( Semaphore permits ) {
+      this.permits = permits;
+    }
+
+    void acquire() throws InterruptedException {
+      // The key comes first, so a transfer waiting for its key doesn't hold back transfers of other keys.
+      if ( permits != null ) {
+        permits.acquire();
+      }
+      try {
+        slots.acquire();
+      } catch ( InterruptedException ex ) {
+        if ( permits != null ) {
+          permits.release();
+        }
+        throw ex;
+      }
+      held = true;
+      if ( metrics != null ) {
+        metrics.transferStarted();
+      }
+    }
+
+    void release() {
+      if ( held ) {
+        held = false;
+        if ( metrics != null ) {
+          metrics.transferEnded();
+        }
+        slots.release();
+        if ( permits != null ) {
+          permits.release();
+        }
+      }
+    }
+
+    void park( long millis ) throws InterruptedException {
+      CompletableFuture<Void> wakeUp = new CompletableFuture<>();
+      parked.add( wakeUp );
+      ScheduledFuture<?> timer = null;
+      try {
+        if ( retriesCancelled ) {
+          throw new InterruptedException( "Pending retries were cancelled" );
+        }
+        timer = retryScheduler.schedule( () -> wakeUp.complete( null ), millis, TimeUnit.MILLISECONDS );
+        release();
+        parkSignal.getAndSet( new CompletableFuture<>() ).complete( null );
+        if ( metrics != null ) {
+          metrics.transferParked();
+        }
+        try {
+          wakeUp.get();
+        } finally {
+          if ( metrics != null ) {
+            metrics.transferResumed();
+          }
+        }
+      } catch ( CancellationException | ExecutionException | RejectedExecutionException ex ) {
+        throw new InterruptedException( "Pending retries were cancelled" );
+      } finally {
+        parked.remove( wakeUp );
+        if ( timer != null ) {
+          timer.cancel( false );
+        }
+      }
+      acquire();
+    }
+  }
+
+  private static class PendingTransfer<T> {
+    final Object[] row;
+    final CompletableFuture<T> future;
+
+    PendingTransfer( Object[] row, CompletableFuture<T> future ) {
+      this.row = row;
+      this.future = future;
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.dropbox.core.RateLimitException;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the transfers made by a step copy: bytes, files, retries, and latency percentiles per API endpoint.
+ * <p>
+ * Every counter is updated without locking, from whatever thread makes the call. The metrics can be published as
+ * an MBean for the time the step runs, and are summed up in the step log.
+ */
+public final class TransferMetrics implements TransferMetricsMXBean {
+  static final String DOMAIN = "com.leonardo.coelho.dropbox";
+
+  private final long started = System.nanoTime();
+  private final LongAdder bytesUploaded = new LongAdder();
+  private final LongAdder bytesDownloaded = new LongAdder();
+  private final LongAdder filesTransferred = new LongAdder();
+  private final LongAdder filesFailed = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger parked = new AtomicInteger();
+  private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+  private ObjectName objectName;
+
+  /**
+   * Records a successful call to a Dropbox API endpoint.
+   *
+   * @param endpoint route of the call, e.g. {@code files/upload}
+   * @param startNanos {@link System#nanoTime()} when the call was made
+   */
+  public void recordCall( String endpoint, long startNanos ) {
+    latencies.computeIfAbsent( endpoint, e -> new LatencyHistogram() ).record( System.nanoTime() - startNanos );
+  }
+
+  /**
+   * Records a call about to be tried again.
+   */
+  public void recordRetry() {
+    retries.increment();
+  }
+
+  /**
+   * Records a call failing on a transient error, whether or not it is tried again.
+   */
+  public void recordFailure( Exception error ) {
+    if ( error instanceof RateLimitException ) {
+      rateLimited.increment();
+    }
+  }
+
+  public void addBytesUploaded( long bytes ) {
+    bytesUploaded.add( bytes );
+  }
+
+  public void addBytesDownloaded( long bytes ) {
+    bytesDownloaded.add( bytes );
+  }
+
+  /**
+   * Records the outcome of the transfer of a file.
+   */
+  public void fileTransferred( boolean succeeded ) {
+    ( succeeded ? filesTransferred : filesFailed ).increment();
+  }
+
+  void transferStarted() {
+    inFlight.incrementAndGet();
+  }
+
+  void transferEnded() {
+    inFlight.decrementAndGet();
+  }
+
+  void transferParked() {
+    parked.incrementAndGet();
+  }
+
+  void transferResumed() {
+    parked.decrementAndGet();
+  }
+
+  /**
+   * Publishes the metrics as an MBean, until {@link #unregister()}.
+   *
+   * @param transformation name of the transformation running the step
+   * @param step step name
+   * @param copy step copy number
+   * @throws JMException when the MBean can't be registered, e.g. the same step of a same-named transformation
+   *   already runs in this JVM
+   */
+  public void register( String transformation, String step, int copy ) throws JMException {
+    ObjectName name = new ObjectName( DOMAIN + ":type=TransferMetrics,transformation=" + ObjectName.quote(
+      String.valueOf( transformation ) ) + ",step=" + ObjectName.quote( step ) + ",copy=" + copy );
+    ManagementFactory.getPlatformMBeanServer().registerMBean( this, name );
+    objectName = name;
+  }
+
+  /**
+   * Withdraws the MBean, if it was published.
+   */
+  public void unregister() {
+    if ( objectName == null ) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean( objectName );
+    } catch ( JMException ex ) {
+      // Already gone.
+    }
+    objectName = null;
+  }
+
+  /**
+   * One line summary for the step log.
+   */
+  public String summary() {
+    StringBuilder summary = new StringBuilder( String.format( "%.1f KiB/s, %.2f files/s, %d retries (%d rate limited)"
+      + ", %d in flight, %d waiting to retry", getBytesPerSecond() / 1024, getFilesPerSecond(), getRetries(),
+      getRateLimited(), getInFlight(), getParked() ) );
+    for ( Map.Entry<String, LatencyHistogram> e : new TreeMap<>( latencies ).entrySet() ) {
+      LatencyHistogram histogram = e.getValue();
+      summary.append( String.format( "; %s p50=%.0fms p95=%.0fms p99=%.0fms (%d calls)", e.getKey(),
+        histogram.percentileMillis( 0.5 ), histogram.percentileMillis( 0.95 ), histogram.percentileMillis( 0.99 ),
+        histogram.count() ) );
+    }
+    return summary.toString();
+  }
+
+  @Override
+  public long getBytesUploaded() {
+    return bytesUploaded.sum();
+  }
+
+  @Override
+  public long getBytesDownloaded() {
+    return bytesDownloaded.sum();
+  }
+
+  @Override
+  public double getBytesPerSecond() {
+    return ( bytesUploaded.sum() + bytesDownloaded.sum() ) / elapsedSeconds();
+  }
+
+  @Override
+  public long getFilesTransferred() {
+    return filesTransferred.sum();
+  }
+
+  @Override
+  public long getFilesFailed() {
+    return filesFailed.sum();
+  }
+
+  @Override
+  public double getFilesPerSecond() {
+    return filesTransferred.sum() / elapsedSeconds();
+  }
+
+  @Override
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  @Override
+  public long getRateLimited() {
+    return rateLimited.sum();
+  }
+
+  @Override
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  @Override
+  public int getParked() {
+    return parked.get();
+  }
+
+  @Override
+  public Map<String, Long> getCalls() {
+    Map<String, Long> calls = new TreeMap<>();
+    latencies.forEach( ( endpoint, histogram ) -> calls.put( endpoint, histogram.count() ) );
+    return calls;
+  }
+
+  @Override
+  public Map<String, Double> getLatencyP50Millis() {
+    return perEndpoint( histogram -> histogram.percentileMillis( 0.5 ) );
+  }
+
+  @Override
+  public Map<String, Double> getLatencyP95Millis() {
+    return perEndpoint( histogram -> histogram.percentileMillis( 0.95 ) );
+  }
+
+  @Override
+  public Map<String, Double> getLatencyP99Millis() {
+    return perEndpoint( histogram -> histogram.percentileMillis( 0.99 ) );
+  }
+
+  private Map<String, Double> perEndpoint( ToDoubleFunction<LatencyHistogram> value ) {
+    Map<String, Double> values = new TreeMap<>();
+    latencies.forEach( ( endpoint, histogram ) -> values.put( endpoint, value.applyAsDouble( histogram ) ) );
+    return values;
+  }
+
+  private double elapsedSeconds() {
+    // Rates are averaged over a second at least, so they don't spike right after the start.
+    return Math.max( TimeUnit.SECONDS.toNanos( 1 ), System.nanoTime() - started ) / 1e9;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link TransferMetrics}, one MBean per running step copy under the
+ * {@code com.leonardo.coelho.dropbox} domain.
+ */
+public interface TransferMetricsMXBean {
+  long getBytesUploaded();
+
+  long getBytesDownloaded();
+
+  /**
+   * Bytes uploaded and downloaded per second, averaged since the step started.
+   */
+  double getBytesPerSecond();
+
+  long getFilesTransferred();
+
+  long getFilesFailed();
+
+  /**
+   * Files transferred per second, averaged since the step started.
+   */
+  double getFilesPerSecond();
+
+  /**
+   * Calls tried again after a transient error, including those rate limited.
+   */
+  long getRetries();
+
+  /**
+   * Calls Dropbox answered with {@code too_many_requests}, retried or not.
+   */
+  long getRateLimited();
+
+  /**
+   * Transfers running right now, not counting those waiting to retry a call.
+   */
+  int getInFlight();
+
+  /**
+   * Transfers waiting to retry a call.
+   */
+  int getParked();
+
+  /**
+   * Successful calls per API endpoint.
+   */
+  Map<String, Long> getCalls();
+
+  Map<String, Double> getLatencyP50Millis();
+
+  Map<String, Double> getLatencyP95Millis();
+
+  Map<String, Double> getLatencyP99Millis();
+}
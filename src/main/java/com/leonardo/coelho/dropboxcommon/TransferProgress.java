@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a single file transfer, logged at the detailed level at most once per interval or per step of
+ * percentage, and once more when the transfer completes.
+ * <p>
+ * SDK progress listeners fire on every buffer written, so updates only touch primitive counters: nothing is
+ * allocated or formatted unless a line is actually written to the log. Updates may come from several threads when
+ * chunks or ranges of a file are transferred in parallel.
+ */
+public final class TransferProgress {
+  static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos( 5 );
+  static final int REPORT_PERCENT_STEP = 10;
+
+  private final LogChannelInterface log;
+  private final String action;
+  private final long size;
+  private final AtomicLong transferred = new AtomicLong();
+  // Next report is due once either is reached, read without locking on every update.
+  private volatile long nextReportNanos;
+  private volatile long nextReportBytes;
+
+  /**
+   * @param log log of the step making the transfer
+   * @param action what is being done to the bytes, e.g. {@code Uploaded}
+   * @param size file size in bytes
+   */
+  public TransferProgress( LogChannelInterface log, String action, long size ) {
+    this.log = log;
+    this.action = action;
+    this.size = size;
+    this.nextReportNanos = System.nanoTime() + REPORT_INTERVAL_NANOS;
+    this.nextReportBytes = Math.min( size, percentStep() );
+  }
+
+  /**
+   * Sets how many bytes of the file were transferred so far, for transfers made in order. A retry may set it back.
+   */
+  public void update( long bytes ) {
+    transferred.set( bytes );
+    maybeReport( bytes );
+  }
+
+  /**
+   * Adds bytes transferred out of order, e.g. a chunk or a range that went through.
+   */
+  public void add( long bytes ) {
+    maybeReport( transferred.addAndGet( bytes ) );
+  }
+
+  private void maybeReport( long bytes ) {
+    if ( !log.isDetailed() ) {
+      return;
+    }
+    if ( bytes < nextReportBytes && System.nanoTime() < nextReportNanos ) {
+      return;
+    }
+    synchronized ( this ) {
+      // Another thread may have just reported. The last report is due once the whole file is in.
+      long now = System.nanoTime();
+      if ( bytes < nextReportBytes && now < nextReportNanos ) {
+        return;
+      }
+      nextReportNanos = now + REPORT_INTERVAL_NANOS;
+      nextReportBytes = bytes >= size ? Long.MAX_VALUE : Math.min( size, bytes + percentStep() );
+      log.logDetailed( String.format( "%s %12d / %12d bytes (%5.2f%%)", action, bytes, size,
+        size > 0 ? 100 * ( bytes / (double) size ) : 100d ) );
+    }
+  }
+
+  private long percentStep() {
+    return Math.max( 1L, size / 100 * REPORT_PERCENT_STEP );
+  }
+}
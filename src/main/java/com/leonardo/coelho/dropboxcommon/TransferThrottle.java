@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM-wide token buckets shared by every copy of the Dropbox steps, limiting the bytes and requests sent to
+ * Dropbox.
+ * <p>
+ * Each access token has a bucket for bytes per second and one for requests per second, and one more bucket caps
+ * the bytes per second of the whole JVM. Steps {@link #register register} the limits they were configured with;
+ * when several running steps limit the same bucket, the lowest limit wins. Limits go away with the step that set
+ * them, and the buckets of a token with the last step limiting it.
+ * <p>
+ * Buckets are fed by the HTTP clients of {@link DropboxClientPool}, so every call made through a pooled client is
+ * accounted for. While any limit is in place, a {@code too_many_requests} answer holds back the next requests of
+ * its token, from every step, for as long as Dropbox asked. Steps without limits don't register, so when none has
+ * any the HTTP clients skip the accounting altogether.
+ */
+public final class TransferThrottle {
+  // Bytes are accounted for in slices, so a large write doesn't go through in a single burst.
+  static final int SLICE_SIZE = 64 << 10; // 64KiB
+
+  private static final TransferThrottle INSTANCE = new TransferThrottle();
+
+  private final Bucket totalBytes = new Bucket();
+  private final ConcurrentMap<String, TokenBuckets> tokens = new ConcurrentHashMap<>();
+  private final Set<Registration> registrations = Collections.newSetFromMap( new ConcurrentHashMap<>() );
+
+  private TransferThrottle() {
+  }
+
+  public static TransferThrottle getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers the limits of a step. Limits per token only apply to the tokens the step {@link
+   * Registration#applyTo applies} them to.
+   *
+   * @param tokenBytesPerSecond bytes per second each access token may transfer, 0 for no limit
+   * @param tokenRequestsPerSecond requests per second each access token may make, 0 for no limit
+   * @param totalBytesPerSecond bytes per second the whole JVM may transfer, 0 for no limit
+   * @return the registration, to be closed once the step is done
+   */
+  public Registration register( long tokenBytesPerSecond, double tokenRequestsPerSecond, long totalBytesPerSecond ) {
+    Registration registration = new Registration( tokenBytesPerSecond, tokenRequestsPerSecond );
+    if ( tokenBytesPerSecond > 0 || tokenRequestsPerSecond > 0 || totalBytesPerSecond > 0 ) {
+      registrations.add( registration );
+      totalBytes.setRate( registration, totalBytesPerSecond );
+    }
+    return registration;
+  }
+
+  /**
+   * Whether any step registered limits, when none did the HTTP clients skip the accounting altogether.
+   */
+  boolean isActive() {
+    return !registrations.isEmpty();
+  }
+
+  /**
+   * Requests per second the given token is limited to, 0 for no limit, null when the token has no buckets.
+   */
+  Double requestRate( String accessToken ) {
+    TokenBuckets buckets = tokens.get( accessToken );
+    return buckets != null ? buckets.requests.rate() : null;
+  }
+
+  /**
+   * Bytes per second the whole JVM is limited to, 0 for no limit.
+   */
+  double totalByteRate() {
+    return totalBytes.rate();
+  }
+
+  /**
+   * Waits until the given token may make another request.
+   */
+  void beforeRequest( String accessToken ) throws InterruptedIOException {
+    TokenBuckets buckets = accessToken != null ? tokens.get( accessToken ) : null;
+    if ( buckets != null ) {
+      buckets.awaitBackoff();
+      buckets.requests.acquire( 1 );
+      // Buckets no step limits are only kept for a backoff, drop them once it is over.
+      tokens.computeIfPresent( accessToken,
+        ( t, current ) -> current.users == 0 && current.resumeAt <= System.currentTimeMillis() ? null : current );
+    }
+  }
+
+  /**
+   * Waits until the given token may transfer that many more bytes, at most {@link #SLICE_SIZE}.
+   */
+  void beforeTransfer( String accessToken, int bytes ) {
+    totalBytes.acquire( bytes );
+    TokenBuckets buckets = accessToken != null ? tokens.get( accessToken ) : null;
+    if ( buckets != null ) {
+      buckets.bytes.acquire( bytes );
+    }
+  }
+
+  /**
+   * Holds back the next requests of the given token, after Dropbox answered {@code too_many_requests}.
+   */
+  void backOff( String accessToken, long millis ) {
+    if ( accessToken == null || millis <= 0 ) {
+      return;
+    }
+    TokenBuckets buckets = tokens.computeIfAbsent( accessToken, t -> new TokenBuckets() );
+    long resumeAt = System.currentTimeMillis() + millis;
+    buckets.resumeAt = Math.max( buckets.resumeAt, resumeAt );
+  }
+
+  /**
+   * Limits a step has put in place, removed on close.
+   */
+  public final class Registration implements AutoCloseable {
+    private final long tokenBytesPerSecond;
+    private final double tokenRequestsPerSecond;
+    private final Set<String> accessTokens = Collections.newSetFromMap( new ConcurrentHashMap<>() );
+
+    private Registration( long tokenBytesPerSecond, double tokenRequestsPerSecond ) {
+      this.tokenBytesPerSecond = tokenBytesPerSecond;
+      this.tokenRequestsPerSecond = tokenRequestsPerSecond;
+    }
+
+    /**
+     * Applies the limits per token to the given access token, cheap when they already are.
+     */
+    public void applyTo( String accessToken ) {
+      if ( ( tokenBytesPerSecond <= 0 && tokenRequestsPerSecond <= 0 ) || !registrations.contains( this )
+        || !accessTokens.add( accessToken ) ) {
+        return;
+      }
+      // Computed under the lock of the entry, so the buckets can't be dropped in between.
+      tokens.compute( accessToken, ( t, buckets ) -> {
+        TokenBuckets current = buckets != null ? buckets : new TokenBuckets();
+        current.users++;
+        current.bytes.setRate( this, tokenBytesPerSecond );
+        current.requests.setRate( this, tokenRequestsPerSecond );
+        return current;
+      } );
+    }
+
+    @Override
+    public void close() {
+      if ( !registrations.remove( this ) ) {
+        return;
+      }
+      totalBytes.setRate( this, 0 );
+      for ( String accessToken : accessTokens ) {
+        tokens.computeIfPresent( accessToken, ( t, buckets ) -> {
+          buckets.bytes.setRate( this, 0 );
+          buckets.requests.setRate( this, 0 );
+          // The last step limiting the token is done, a pending backoff is kept until it is over.
+          return --buckets.users > 0 || buckets.resumeAt > System.currentTimeMillis() ? buckets : null;
+        } );
+      }
+      accessTokens.clear();
+    }
+  }
+
+  private static final class TokenBuckets {
+    final Bucket bytes = new Bucket();
+    final Bucket requests = new Bucket();
+    volatile long resumeAt;
+    // Registrations limiting the token, only changed while computing the entry of the token.
+    volatile int users;
+
+    void awaitBackoff() throws InterruptedIOException {
+      long wait = resumeAt - System.currentTimeMillis();
+      if ( wait > 0 ) {
+        try {
+          Thread.sleep( wait );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException( ex.getMessage() );
+        }
+      }
+    }
+  }
+
+  /**
+   * Token bucket limited to the lowest rate any registration set on it, unlimited when none did.
+   */
+  private static final class Bucket {
+    private final Map<Registration, Double> rates = new HashMap<>();
+    private volatile RateLimiter limiter;
+
+    synchronized void setRate( Registration owner, double rate ) {
+      if ( rate > 0 ) {
+        rates.put( owner, rate );
+      } else {
+        rates.remove( owner );
+      }
+      if ( rates.isEmpty() ) {
+        limiter = null;
+        return;
+      }
+      double lowest = Collections.min( rates.values() );
+      if ( limiter == null ) {
+        limiter = RateLimiter.create( lowest );
+      } else if ( limiter.getRate() != lowest ) {
+        limiter.setRate( lowest );
+      }
+    }
+
+    double rate() {
+      RateLimiter current = limiter;
+      return current != null ? current.getRate() : 0;
+    }
+
+    void acquire( int permits ) {
+      RateLimiter current = limiter;
+      if ( current != null ) {
+        current.acquire( permits );
+      }
+    }
+  }
+}
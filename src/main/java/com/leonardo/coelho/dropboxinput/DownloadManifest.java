@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxinput;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the files downloaded by previous runs, so unchanged files aren't downloaded again.
+ * <p>
+ * Every local file is recorded with the Dropbox file and revision it was downloaded from, and the size and
+ * modification time it had right after the download. A local file is only trusted while it still has that size and
+ * modification time, which costs a stat instead of reading it back.
+ * <p>
+ * The whole index is held in memory and written back in a single compact binary file, replaced atomically.
+ */
+class DownloadManifest {
+  private static final int MAGIC = 0x44424D46; // DBMF
+  private static final int VERSION = 1;
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private final File file;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean dirty;
+
+  private DownloadManifest( File file ) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the manifest kept in the given file, empty when the file doesn't exist yet.
+   */
+  static DownloadManifest load( File file ) throws IOException {
+    DownloadManifest manifest = new DownloadManifest( file );
+    if ( !file.isFile() ) {
+      return manifest;
+    }
+    try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) ) {
+      if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+        throw new IOException( "Unsupported download manifest " + file );
+      }
+      int count = in.readInt();
+      for ( int i = 0; i < count; i++ ) {
+        String localPath = in.readUTF();
+        String sourcePath = in.readUTF();
+        String rev = in.readUTF();
+        byte[] contentHash = new byte[ in.readUnsignedByte() ];
+        in.readFully( contentHash );
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        manifest.entries.put( localPath, new Entry( sourcePath, rev,
+          contentHash.length > 0 ? HEX.encode( contentHash ) : null, size, lastModified ) );
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * Returns the download the local file is known to hold, or null when it wasn't downloaded by a previous run or
+   * changed since.
+   */
+  Entry find( File localFile, String sourcePath ) {
+    Entry entry = entries.get( localFile.getAbsolutePath() );
+    if ( entry == null || !entry.sourcePath.equals( sourcePath ) ) {
+      return null;
+    }
+    return localFile.length() == entry.size && localFile.lastModified() == entry.lastModified ? entry : null;
+  }
+
+  /**
+   * Records what a local file was just downloaded from.
+   */
+  void record( File localFile, String sourcePath, String rev, String contentHash ) {
+    entries.put( localFile.getAbsolutePath(),
+      new Entry( sourcePath, rev, contentHash, localFile.length(), localFile.lastModified() ) );
+    dirty = true;
+  }
+
+  /**
+   * Writes the manifest back to disk, when it changed since it was loaded.
+   */
+  void save() throws IOException {
+    if ( !dirty ) {
+      return;
+    }
+    dirty = false;
+    Files.createParentDirs( file );
+    File tmp = new File( file.getPath() + ".tmp" );
+    try {
+      write( tmp );
+      java.nio.file.Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE );
+    } catch ( IOException ex ) {
+      dirty = true;
+      throw ex;
+    }
+  }
+
+  private void write( File tmp ) throws IOException {
+    try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) ) ) {
+      out.writeInt( MAGIC );
+      out.writeInt( VERSION );
+      Map<String, Entry> snapshot = new HashMap<>( entries );
+      out.writeInt( snapshot.size() );
+      for ( Map.Entry<String, Entry> e : snapshot.entrySet() ) {
+        Entry entry = e.getValue();
+        out.writeUTF( e.getKey() );
+        out.writeUTF( entry.sourcePath );
+        out.writeUTF( entry.rev );
+        // Hashes are kept as raw bytes, half the size of their hex form.
+        byte[] contentHash = entry.contentHash != null ? HEX.decode( entry.contentHash ) : new byte[ 0 ];
+        out.writeByte( contentHash.length );
+        out.write( contentHash );
+        out.writeLong( entry.size );
+        out.writeLong( entry.lastModified );
+      }
+    }
+  }
+
+  /**
+   * Dropbox file and revision a local file was downloaded from.
+   */
+  static class Entry {
+    final String sourcePath;
+    final String rev;
+    final String contentHash;
+    final long size;
+    final long lastModified;
+
+    Entry( String sourcePath, String rev, String contentHash, long size, long lastModified ) {
+      this.sourcePath = sourcePath;
+      this.rev = rev;
+      this.contentHash = contentHash;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxinput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes a download into a local file through its {@link FileChannel}, by position.
+ * <p>
+ * The body is gathered in a large direct buffer and written once the buffer is full, so a download costs one write
+ * per megabyte instead of one per few kilobytes, and the kernel copies straight from the buffer without the
+ * temporary direct buffer the JDK uses for heap arrays. Buffers come from a pool and are given back on close.
+ * <p>
+ * Writes are positional, so several sinks can write ranges of the same channel at the same time. Closing the sink
+ * doesn't close the channel, which belongs to the caller.
+ */
+class DownloadSink implements AutoCloseable {
+  static final int BUFFER_SIZE = 1 << 20; // 1MiB
+
+  // Every time this much was written, the position is checkpointed, after a sync with the periodic sync policy.
+  static final long SYNC_INTERVAL = 64L << 20; // 64MiB
+
+  // Buffers beyond this are left to the garbage collector.
+  static final int MAX_POOLED_BUFFERS = 16;
+
+  private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+  /**
+   * When downloaded bytes are forced to the storage device.
+   */
+  enum SyncPolicy {
+    // Left to the operating system, the fastest.
+    NONE( "none" ),
+    // Once the file is complete, before it is renamed into place.
+    ON_COMPLETE( "complete" ),
+    // Every SYNC_INTERVAL bytes and once complete, so a download interrupted by a crash of the machine resumes
+    // from the last sync.
+    PERIODIC( "periodic" );
+
+    private final String code;
+
+    SyncPolicy( String code ) {
+      this.code = code;
+    }
+
+    String getCode() {
+      return code;
+    }
+
+    static SyncPolicy fromCode( String code ) {
+      for ( SyncPolicy policy : values() ) {
+        if ( policy.code.equalsIgnoreCase( code ) ) {
+          return policy;
+        }
+      }
+      return NONE;
+    }
+  }
+
+  /**
+   * Told how far the file was written every {@link #SYNC_INTERVAL} bytes, so a killed process resumes from there.
+   * With the periodic sync policy, the bytes before that position were also forced to the storage device.
+   */
+  interface Checkpoint {
+    void reached( long position ) throws IOException;
+  }
+
+  private final FileChannel channel;
+  private final SyncPolicy syncPolicy;
+  private final Checkpoint checkpoint;
+  private long position;
+  private long checkpointPosition;
+  private ByteBuffer buffer;
+
+  /**
+   * @param channel file to write to, left open on close
+   * @param position where the first byte goes within the file
+   * @param syncPolicy when to sync the file while writing
+   * @param checkpoint told how far the file was written, may be null
+   */
+  DownloadSink( FileChannel channel, long position, SyncPolicy syncPolicy, Checkpoint checkpoint ) {
+    this.channel = channel;
+    this.position = position;
+    this.checkpointPosition = position;
+    this.syncPolicy = syncPolicy;
+    this.checkpoint = checkpoint;
+    ByteBuffer pooled = POOL.poll();
+    buffer = pooled != null ? pooled : ByteBuffer.allocateDirect( BUFFER_SIZE );
+    // Buffer methods are called through Buffer, their ByteBuffer overrides don't exist on Java 8.
+    ( (Buffer) buffer ).clear();
+  }
+
+  /**
+   * Opens a .part file for writing, grown upfront to the size it will have once complete so the file system can
+   * lay it out in one go instead of extending it write after write.
+   */
+  static FileChannel open( File file, long size ) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+    try {
+      if ( raf.length() < size ) {
+        raf.setLength( size );
+      }
+    } catch ( IOException ex ) {
+      raf.close();
+      throw ex;
+    }
+    // Closing the channel closes the file as well.
+    return raf.getChannel();
+  }
+
+  /**
+   * Copies a stream into the file until it ends.
+   */
+  void transfer( InputStream in ) throws IOException {
+    transfer( in, Long.MAX_VALUE );
+  }
+
+  /**
+   * Copies a stream into the file until it ends or {@code limit} bytes were copied. Everything read is written
+   * before returning, even when reading fails, so {@link #position()} tells where to resume from.
+   */
+  void transfer( InputStream in, long limit ) throws IOException {
+    checkOpen();
+    ReadableByteChannel source = Channels.newChannel( in );
+    long end = limit == Long.MAX_VALUE ? Long.MAX_VALUE : position + limit;
+    try {
+      while ( position + buffer.position() < end ) {
+        ( (Buffer) buffer ).limit( (int) Math.min( buffer.capacity(), end - position ) );
+        if ( source.read( buffer ) < 0 ) {
+          break;
+        }
+        if ( !buffer.hasRemaining() ) {
+          flush();
+        }
+      }
+    } finally {
+      flush();
+    }
+  }
+
+  /**
+   * Where the next byte goes, everything before it was written to the channel.
+   */
+  long position() {
+    return position;
+  }
+
+  @Override
+  public void close() {
+    if ( buffer != null ) {
+      if ( POOL.size() < MAX_POOLED_BUFFERS ) {
+        POOL.offer( buffer );
+      }
+      buffer = null;
+    }
+  }
+
+  private void flush() throws IOException {
+    ( (Buffer) buffer ).flip();
+    try {
+      while ( buffer.hasRemaining() ) {
+        position += channel.write( buffer, position );
+      }
+    } finally {
+      ( (Buffer) buffer ).clear();
+    }
+    if ( position - checkpointPosition >= SYNC_INTERVAL ) {
+      if ( syncPolicy == SyncPolicy.PERIODIC ) {
+        channel.force( false );
+      }
+      checkpointPosition = position;
+      if ( checkpoint != null ) {
+        checkpoint.reached( position );
+      }
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if ( buffer == null ) {
+      throw new IOException( "Sink closed" );
+    }
+  }
+}
@@ -20,12 +20,25 @@ package com.leonardo.coelho.dropboxinput;
 
 import com.dropbox.core.DbxDownloader;
 import com.dropbox.core.DbxException;
-import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryException;
+import com.dropbox.core.ServerException;
 import com.dropbox.core.v2.DbxClientV2;
 import com.dropbox.core.v2.files.FileMetadata;
+import com.dropbox.core.v2.files.Metadata;
+import com.leonardo.coelho.dropboxcommon.DropboxClientPool;
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferExecutor;
+import com.leonardo.coelho.dropboxcommon.TransferMetrics;
+import com.leonardo.coelho.dropboxcommon.TransferProgress;
+import com.leonardo.coelho.dropboxcommon.TransferThrottle;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -39,10 +52,17 @@ import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
 
 /**
  * Describe your step plugin.
@@ -79,13 +99,52 @@ public class DropboxInput extends BaseStep implements StepInterface {
         logError( BaseMessages.getString( PKG, "DropboxInput.Missing.SourceFiles" ) );
         return false;
       }
-      if ( Utils.isEmpty( meta.getTargetFilesField() ) ) {
+      if ( !meta.isDownloadToField() && Utils.isEmpty( meta.getTargetFilesField() ) ) {
         logError( BaseMessages.getString( PKG, "DropboxInput.Missing.TargetFiles" ) );
         return false;
       }
+      if ( meta.isDownloadToField() && Utils.isEmpty( meta.getContentField() ) ) {
+        logError( BaseMessages.getString( PKG, "DropboxInput.Missing.ContentField" ) );
+        return false;
+      }
+      if ( skipsUnchanged() ) {
+        if ( Utils.isEmpty( meta.getManifestFile() ) ) {
+          logError( BaseMessages.getString( PKG, "DropboxInput.Missing.ManifestFile" ) );
+          return false;
+        }
+        String manifestFile = environmentSubstitute( meta.getManifestFile() );
+        try {
+          data.manifest = DownloadManifest.load( new File( manifestFile ) );
+        } catch ( IOException ex ) {
+          logError( BaseMessages.getString( PKG, "DropboxInput.Log.ManifestError", manifestFile, ex.getMessage() ) );
+          return false;
+        }
+      }
       List<StreamInterface> targetStreams = meta.getStepIOMeta().getTargetStreams();
+      data.syncPolicy = DownloadSink.SyncPolicy.fromCode( meta.getSyncPolicy() );
       data.chosesTargetSteps =
         targetStreams.get( 0 ).getStepMeta() != null || targetStreams.get( 1 ).getStepMeta() != null;
+      data.transfers = new TransferExecutor<>( getStepname() + "." + getCopy(), meta.getMaxConcurrentTransfers(),
+        meta.getMaxConcurrentTransfersPerToken(), meta.isPreserveOrder(), this::routeTransferRow );
+      data.throttle = TransferThrottle.getInstance().register( meta.getTokenBandwidthLimit() * 1024L,
+        meta.getTokenRequestLimit(), meta.getTotalBandwidthLimit() * 1024L );
+      int maxAttempts = meta.getMaxAttempts() > 0 ? meta.getMaxAttempts() : RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+      data.metrics = new TransferMetrics();
+      data.transfers.setMetrics( data.metrics );
+      try {
+        data.metrics.register( getTransMeta().getName(), getStepname(), getCopy() );
+      } catch ( JMException ex ) {
+        logDetailed( "Unable to publish transfer metrics: " + ex.getMessage() );
+      }
+      data.retryPolicy =
+        new RetryPolicy( maxAttempts, meta.getRetryBudget(), meta.getBreakerThreshold(), data.metrics );
+      if ( meta.getParallelRangeStreams() > 1 ) {
+        // Range streams are shared by every file being downloaded at the same time.
+        data.rangeWorkers = Executors.newFixedThreadPool(
+          meta.getParallelRangeStreams() * Math.max( 1, meta.getMaxConcurrentTransfers() ),
+          new ThreadFactoryBuilder().setNameFormat( getStepname() + "." + getCopy() + " range-%d" ).setDaemon( true )
+            .build() );
+      }
       return true;
     } else {
       return false;
@@ -98,7 +157,9 @@ public class DropboxInput extends BaseStep implements StepInterface {
 
     Object[] r = getRow(); // get row, set busy!
     if ( r == null ) {
-      // no more input to be expected...
+      // no more input to be expected, wait for the transfers still in flight...
+      data.transfers.drain();
+      logBasic( BaseMessages.getString( PKG, "DropboxInput.Log.TransferMetrics", data.metrics.summary() ) );
       setOutputDone();
       return false;
     }
@@ -121,15 +182,23 @@ public class DropboxInput extends BaseStep implements StepInterface {
         stopAll();
         return false;
       }
-      // Mapping Target Files field.
-      data.targetFilesIdx = Arrays.binarySearch( getInputRowMeta().getFieldNames( ), meta.getTargetFilesField() );
-      if ( data.targetFilesIdx < 0 ) {
-        logError( BaseMessages.getString( PKG, "DropboxInput.Invalid.TargetFiles" ) );
-        setErrors( 1 );
-        stopAll();
-        return false;
+      // Mapping Target Files field, not needed when the content goes to the row.
+      if ( !meta.isDownloadToField() ) {
+        data.targetFilesIdx = Arrays.binarySearch( getInputRowMeta().getFieldNames( ), meta.getTargetFilesField() );
+        if ( data.targetFilesIdx < 0 ) {
+          logError( BaseMessages.getString( PKG, "DropboxInput.Invalid.TargetFiles" ) );
+          setErrors( 1 );
+          stopAll();
+          return false;
+        }
       }
       data.outputRowMeta = getInputRowMeta().clone();
+      meta.getFields( data.outputRowMeta, getStepname(), null, null, this, getRepository(), getMetaStore() );
+      data.contentIdx = meta.isDownloadToField() ? data.outputRowMeta.indexOfValue( meta.getContentField() ) : -1;
+      data.sizeIdx = indexOfOptionalField( meta.getSizeField() );
+      data.revIdx = indexOfOptionalField( meta.getRevField() );
+      data.contentHashIdx = indexOfOptionalField( meta.getContentHashField() );
+      data.skippedIdx = skipsUnchanged() ? indexOfOptionalField( meta.getSkippedField() ) : -1;
 
       // Cache the position of the RowSet for the output.
       if ( data.chosesTargetSteps ) {
@@ -159,70 +228,552 @@ public class DropboxInput extends BaseStep implements StepInterface {
     // Get Values from Input Row.
     String accessToken = (String) r[data.accessTokenIdx];
     String sourceFile = (String) r[data.sourceFileIdx];
-    String targetFile = (String) r[data.targetFilesIdx ];
+    String targetFile = meta.isDownloadToField() ? null : (String) r[data.targetFilesIdx ];
+
+    // Make room for the content and metadata fields, filled in by the transfer.
+    Object[] outputRow = RowDataUtil.resizeArray( r, data.outputRowMeta.size() );
 
     if ( Utils.isEmpty( accessToken ) ) {
       logError( BaseMessages.getString( PKG, "DropboxInput.Null.AccessToken" ) );
-      putFailedTransferRow( r );
+      data.transfers.submitCompleted( outputRow, false );
       return true;
     }
 
     if ( Utils.isEmpty( sourceFile ) ) {
       logError( BaseMessages.getString( PKG, "DropboxInput.Null.SourceFiles" ) );
-      putFailedTransferRow( r );
+      data.transfers.submitCompleted( outputRow, false );
       return true;
     }
 
-    if ( Utils.isEmpty( targetFile ) ) {
+    if ( !meta.isDownloadToField() && Utils.isEmpty( targetFile ) ) {
       logError( BaseMessages.getString( PKG, "DropboxInput.Null.TargetFiles" ) );
-      putFailedTransferRow( r );
+      data.transfers.submitCompleted( outputRow, false );
       return true;
     }
 
-    // Create a DbxClientV2 to make API calls.
-    DbxRequestConfig requestConfig = new DbxRequestConfig( "examples-download-file" );
-    DbxClientV2 dbxClient = new DbxClientV2( requestConfig, accessToken );
+    // Calls made with this token count towards the limits of this step.
+    data.throttle.applyTo( accessToken );
+
+    // Borrow a DbxClientV2 to make API calls, reusing the connections of previous rows.
+    DbxClientV2 dbxClient = DropboxClientPool.getInstance().getClient( accessToken );
+
+    // Hand the download over to the worker pool, the row is routed once it completes.
+    data.transfers.submit( outputRow, accessToken, () -> transferFile( dbxClient, sourceFile, targetFile, outputRow ) );
+
+    if ( checkFeedback( getLinesRead() ) ) {
+      logBasic( BaseMessages.getString( PKG, "DropboxInput.Log.LineNumber" ) + getLinesRead() );
+    }
+    return true;
+  }
+
+  @Override
+  public void stopRunning( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    // Called from the thread stopping the transformation: transfers waiting to retry a call fail right away
+    // instead of sitting out their backoff, and so do their ranges.
+    TransferExecutor<?> transfers = ( (DropboxInputData) sdi ).transfers;
+    if ( transfers != null ) {
+      transfers.cancelRetries();
+    }
+    RetryPolicy retryPolicy = ( (DropboxInputData) sdi ).retryPolicy;
+    if ( retryPolicy != null ) {
+      retryPolicy.cancelRetries();
+    }
+    super.stopRunning( smi, sdi );
+  }
+
+  @Override
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    data = (DropboxInputData) sdi;
+    if ( data.transfers != null ) {
+      data.transfers.shutdown();
+      data.transfers = null;
+    }
+    if ( data.rangeWorkers != null ) {
+      data.rangeWorkers.shutdownNow();
+      data.rangeWorkers = null;
+    }
+    if ( data.throttle != null ) {
+      data.throttle.close();
+      data.throttle = null;
+    }
+    if ( data.metrics != null ) {
+      data.metrics.unregister();
+    }
+    // Saved once, whether the input ended or the step was stopped.
+    saveManifest();
+    super.dispose( smi, sdi );
+  }
+
+  /**
+   * Downloads a single file from Dropbox, either to the local filesystem or into the row itself.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param sourceFile Dropbox file to download
+   * @param targetFile local file to write to, unused when downloading to a field
+   * @param row output row, receives the content and metadata fields
+   * @return whether the download succeeded
+   */
+  private boolean transferFile( DbxClientV2 dbxClient, String sourceFile, String targetFile, Object[] row ) {
+    if ( meta.isDownloadToField() ) {
+      log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.Downloading", sourceFile ) );
+      return downloadToField( dbxClient, sourceFile, row );
+    }
+    File localFile = new File( targetFile );
+    Metadata metadata = null;
+    if ( data.manifest != null || data.rangeWorkers != null ) {
+      // Only changed files are worth downloading, and only large files are worth splitting, so look first.
+      try {
+        metadata = data.retryPolicy.call( dbxClient, "files/get_metadata",
+          () -> dbxClient.files().getMetadata( sourceFile ) );
+      } catch ( DbxException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getMessage() ) );
+        return false;
+      }
+    }
+    if ( data.manifest != null && metadata instanceof FileMetadata ) {
+      DownloadManifest.Entry entry = data.manifest.find( localFile, sourceFile );
+      if ( entry != null && entry.rev.equals( ( (FileMetadata) metadata ).getRev() ) ) {
+        setMetadataFields( row, (FileMetadata) metadata );
+        setSkippedField( row, true );
+        log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.SkippedUnchanged", targetFile ) );
+        return true;
+      }
+    }
 
     log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.Downloading", sourceFile ) );
-    DbxDownloader<FileMetadata> downloader = null;
+    FileMetadata downloaded;
+    if ( data.rangeWorkers != null && metadata instanceof FileMetadata
+      && ( (FileMetadata) metadata ).getSize() > 2 * data.RANGED_DOWNLOAD_RANGE_SIZE ) {
+      downloaded = rangedDownloadFile( dbxClient, (FileMetadata) metadata, targetFile )
+        ? (FileMetadata) metadata : null;
+      if ( downloaded != null ) {
+        setMetadataFields( row, downloaded );
+        log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.Downloaded", targetFile ) );
+      }
+    } else {
+      downloaded = downloadFile( dbxClient, sourceFile, targetFile, row );
+    }
+    if ( downloaded == null ) {
+      return false;
+    }
+    setSkippedField( row, false );
+    if ( data.manifest != null ) {
+      data.manifest.record( localFile, sourceFile, downloaded.getRev(), downloaded.getContentHash() );
+    }
+    return true;
+  }
+
+  private boolean skipsUnchanged() {
+    return meta.isSkipUnchanged() && !meta.isDownloadToField();
+  }
+
+  private void setSkippedField( Object[] row, boolean skipped ) {
+    if ( data.skippedIdx >= 0 ) {
+      row[ data.skippedIdx ] = skipped;
+    }
+  }
+
+  private void saveManifest() {
+    if ( data.manifest == null ) {
+      return;
+    }
     try {
-      downloader = dbxClient.files().download( sourceFile );
-    } catch ( DbxException ex ) {
-      logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getMessage() ) );
-      putFailedTransferRow( r );
-      return true;
+      data.manifest.save();
+    } catch ( IOException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.ManifestError",
+        environmentSubstitute( meta.getManifestFile() ), ex.getMessage() ) );
     }
+  }
+
+  /**
+   * Downloads a file as a single stream into a .part file next to the target, renamed into place once complete.
+   * The .part file is grown to its final size upfront and written through a {@link DownloadSink}. The revision
+   * being downloaded and how far it got are kept in a sidecar file, so a broken transfer, in this run or a later
+   * one, resumes with a Range request from there as long as the remote file didn't change.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param sourceFile Dropbox file to download
+   * @param targetFile local file to write to
+   * @param row output row, receives the metadata fields
+   * @return metadata of the downloaded file, null when the download failed
+   */
+  private FileMetadata downloadFile( DbxClientV2 dbxClient, String sourceFile, String targetFile, Object[] row ) {
+    File localFile = new File( targetFile );
+    File partFile = new File( targetFile + data.PART_FILE_SUFFIX );
+    File revFile = new File( targetFile + data.PART_REV_FILE_SUFFIX );
+    PartState part;
     try {
       // Create file and all non-existent parent folders.
-      File localFile = new File( targetFile );
       Files.createParentDirs( localFile );
-      FileOutputStream out = new FileOutputStream( localFile );
-      downloader.download( out );
-      out.close();
+      part = resumablePart( dbxClient, sourceFile, partFile, revFile );
     } catch ( DbxException ex ) {
       logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getMessage() ) );
-      putFailedTransferRow( r );
-      return true;
-    } catch ( FileNotFoundException ex ) {
-      logError( BaseMessages.getString( PKG, "DropboxInput.Log.FileNotFound", targetFile ) );
-      putFailedTransferRow( r );
-      return true;
+      return null;
     } catch ( IOException ex ) {
       logError( BaseMessages.getString( PKG, "DropboxInput.Log.ErrorReadingFile", sourceFile, ex.getMessage() ) );
-      putFailedTransferRow( r );
-      return true;
+      return null;
     }
-    log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.Downloaded", targetFile ) );
 
-    putSuccessfulTransferRow( r ); // Transfer has succeeded.
+    String rev = part != null ? part.metadata.getRev() : null;
+    FileMetadata metadata = part != null ? part.metadata : null;
+    long offset = part != null ? part.offset : 0L;
+    boolean complete = false;
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    while ( !complete && attempts.next() ) {
+      DbxDownloader<FileMetadata> downloader = null;
+      long start = System.nanoTime();
+      try {
+        // Once every byte is in the .part file there is nothing left to ask for, Dropbox turns a range starting
+        // at the end of the file down.
+        if ( metadata == null || offset < metadata.getSize() ) {
+          if ( offset > 0 ) {
+            log.logDetailed( String.format( "Resuming download of %s at offset %d (%d / %d attempts)\n", sourceFile,
+              offset, attempts.attempt(), attempts.maxAttempts() ) );
+          }
+          downloader = rev == null
+            ? dbxClient.files().download( sourceFile )
+            : dbxClient.files().downloadBuilder( "rev:" + rev ).range( offset ).start();
+          metadata = downloader.getResult();
+          if ( rev == null ) {
+            // Remember what we are downloading before the first byte lands in the .part file.
+            rev = metadata.getRev();
+            writePartState( revFile, rev, 0L );
+          }
+        }
+        String partRev = rev;
+        try ( FileChannel channel = DownloadSink.open( partFile, metadata.getSize() ) ) {
+          if ( downloader != null && offset < metadata.getSize() ) {
+            try ( DownloadSink sink = new DownloadSink( channel, offset, data.syncPolicy,
+              position -> writePartState( revFile, partRev, position ) ) ) {
+              try {
+                sink.transfer( downloader.getInputStream() );
+              } finally {
+                data.metrics.addBytesDownloaded( sink.position() - offset );
+                offset = sink.position();
+              }
+            }
+          }
+          if ( data.syncPolicy != DownloadSink.SyncPolicy.NONE ) {
+            channel.force( true );
+          }
+        }
+        if ( downloader != null ) {
+          attempts.succeeded();
+          data.metrics.recordCall( "files/download", start );
+        }
+        complete = true;
+      } catch ( RetryException | NetworkIOException | ServerException ex ) {
+        attempts.failed( ex );
+      } catch ( DbxException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getMessage() ) );
+        return null;
+      } catch ( FileNotFoundException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.FileNotFound", targetFile ) );
+        return null;
+      } catch ( IOException ex ) {
+        // Most likely the connection dropped while reading the body, what we got so far stays in the .part file.
+        attempts.failed( ex );
+      } finally {
+        if ( downloader != null ) {
+          downloader.close();
+        }
+      }
+    }
+    if ( complete ) {
+      try {
+        commitPartFile( partFile, revFile, localFile );
+        setMetadataFields( row, metadata );
+        log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.Downloaded", targetFile ) );
+        return metadata;
+      } catch ( IOException ex ) {
+        // The download itself is fine, the complete .part file is moved into place by a later run.
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.ErrorReadingFile", targetFile, ex.getMessage() ) );
+      }
+    } else {
+      logGaveUp( attempts );
+    }
+    if ( rev != null && partFile.isFile() ) {
+      // Let a later run pick up from where this one stopped.
+      try {
+        writePartState( revFile, rev, offset );
+      } catch ( IOException ex ) {
+        logDetailed( "Unable to record download progress of " + sourceFile + ": " + ex.getMessage() );
+      }
+    }
+    return null;
+  }
 
-    if ( checkFeedback( getLinesRead() ) ) {
-      logBasic( BaseMessages.getString( PKG, "DropboxInput.Log.LineNumber" ) + getLinesRead() );
+  /**
+   * Returns where a leftover .part file can be resumed from, or null when it has to start over, in which case the
+   * leftovers are removed.
+   */
+  private PartState resumablePart( DbxClientV2 dbxClient, String sourceFile, File partFile, File revFile )
+    throws DbxException, IOException {
+    if ( partFile.isFile() && revFile.isFile() ) {
+      List<String> lines = java.nio.file.Files.readAllLines( revFile.toPath(), StandardCharsets.UTF_8 );
+      String rev = lines.isEmpty() ? "" : lines.get( 0 ).trim();
+      // Sidecars written before .part files were preallocated only hold the revision, the length is the offset.
+      long offset = lines.size() > 1 ? Const.toLong( lines.get( 1 ).trim(), 0L ) : partFile.length();
+      Metadata metadata = data.retryPolicy.call( dbxClient, "files/get_metadata",
+        () -> dbxClient.files().getMetadata( sourceFile ) );
+      if ( metadata instanceof FileMetadata && rev.equals( ( (FileMetadata) metadata ).getRev() )
+        && partFile.length() <= ( (FileMetadata) metadata ).getSize() && offset <= partFile.length() ) {
+        log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.ResumingDownload", sourceFile, offset ) );
+        return new PartState( (FileMetadata) metadata, offset );
+      }
+    }
+    java.nio.file.Files.deleteIfExists( partFile.toPath() );
+    java.nio.file.Files.deleteIfExists( revFile.toPath() );
+    return null;
+  }
+
+  /**
+   * Records the revision being downloaded into a .part file and how many bytes of it are known to be there. The
+   * .part file is preallocated, so its length doesn't tell.
+   */
+  private void writePartState( File revFile, String rev, long offset ) throws IOException {
+    java.nio.file.Files.write( revFile.toPath(), ( rev + '\n' + offset + '\n' ).getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  /**
+   * Moves a complete .part file into place, so the target never shows up half written.
+   */
+  private void commitPartFile( File partFile, File revFile, File localFile ) throws IOException {
+    java.nio.file.Files.move( partFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE );
+    java.nio.file.Files.deleteIfExists( revFile.toPath() );
+  }
+
+  /**
+   * Reads a Dropbox file straight into the content field of the row, so the next steps don't need a round trip
+   * through the local disk.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param sourceFile Dropbox file to download
+   * @param row output row, receives the content and metadata fields
+   * @return whether the download succeeded
+   */
+  private boolean downloadToField( DbxClientV2 dbxClient, String sourceFile, Object[] row ) {
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    while ( attempts.next() ) {
+      long start = System.nanoTime();
+      try ( DbxDownloader<FileMetadata> downloader = dbxClient.files().download( sourceFile ) ) {
+        FileMetadata metadata = downloader.getResult();
+        if ( metadata.getSize() > data.MAX_FIELD_CONTENT_SIZE ) {
+          logError( BaseMessages.getString( PKG, "DropboxInput.Log.FileTooLarge", sourceFile, metadata.getSize() ) );
+          return false;
+        }
+        // The size is known upfront, so read into an array of the right size instead of a growing buffer.
+        byte[] content = new byte[ (int) metadata.getSize() ];
+        ByteStreams.readFully( downloader.getInputStream(), content );
+        attempts.succeeded();
+        data.metrics.recordCall( "files/download", start );
+        data.metrics.addBytesDownloaded( content.length );
+        row[ data.contentIdx ] = content;
+        setMetadataFields( row, metadata );
+        log.logBasic( BaseMessages.getString( PKG, "DropboxInput.log.DownloadedToField", sourceFile,
+          meta.getContentField() ) );
+        return true;
+      } catch ( RetryException | NetworkIOException | ServerException ex ) {
+        attempts.failed( ex );
+      } catch ( DbxException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getMessage() ) );
+        return false;
+      } catch ( IOException ex ) {
+        // Most likely the connection dropped while reading the body, the content is small enough to read again.
+        attempts.failed( ex );
+      }
+    }
+    logGaveUp( attempts );
+    return false;
+  }
+
+  private void setMetadataFields( Object[] row, FileMetadata metadata ) {
+    if ( data.sizeIdx >= 0 ) {
+      row[ data.sizeIdx ] = metadata.getSize();
+    }
+    if ( data.revIdx >= 0 ) {
+      row[ data.revIdx ] = metadata.getRev();
+    }
+    if ( data.contentHashIdx >= 0 ) {
+      row[ data.contentHashIdx ] = metadata.getContentHash();
+    }
+  }
+
+  private int indexOfOptionalField( String fieldName ) {
+    return Utils.isEmpty( fieldName ) ? -1 : data.outputRowMeta.indexOfValue( fieldName );
+  }
+
+  /**
+   * Downloads a file as byte ranges fetched in parallel. Every range is written straight to its offset in a
+   * preallocated .part file, renamed into place once complete. Each range is retried on its own, so a failed range
+   * doesn't restart the whole file. All ranges are read from the same revision, so the file can't change under our
+   * feet.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param metadata Dropbox file to download
+   * @param targetFile local file to write to
+   * @return whether the download succeeded
+   */
+  private boolean rangedDownloadFile( DbxClientV2 dbxClient, FileMetadata metadata, String targetFile ) {
+    long size = metadata.getSize();
+    long rangeSize = data.RANGED_DOWNLOAD_RANGE_SIZE;
+    int ranges = (int) ( ( size + rangeSize - 1 ) / rangeSize );
+    String revision = "rev:" + metadata.getRev();
+
+    File localFile = new File( targetFile );
+    File partFile = new File( targetFile + data.PART_FILE_SUFFIX );
+    File revFile = new File( targetFile + data.PART_REV_FILE_SUFFIX );
+    try {
+      Files.createParentDirs( localFile );
+      // A preallocated .part file has holes, it must never be taken for a resumable single stream download.
+      java.nio.file.Files.deleteIfExists( revFile.toPath() );
+    } catch ( IOException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.ErrorReadingFile", metadata.getPathDisplay(),
+        ex.getMessage() ) );
+      return false;
+    }
+    boolean succeeded = true;
+    try ( FileChannel channel = DownloadSink.open( partFile, size ) ) {
+      // Keep up to parallelRangeStreams ranges of this file in flight.
+      CompletionService<Boolean> downloads = new ExecutorCompletionService<>( data.rangeWorkers );
+      TransferProgress progress = new TransferProgress( log, "Downloaded", size );
+      int submitted = 0;
+      int completed = 0;
+      while ( completed < ranges ) {
+        while ( succeeded && submitted < ranges && submitted - completed < meta.getParallelRangeStreams() ) {
+          long offset = submitted++ * rangeSize;
+          long length = Math.min( rangeSize, size - offset );
+          downloads.submit( () -> {
+            boolean fetched = downloadRange( dbxClient, revision, channel, offset, length );
+            if ( fetched ) {
+              progress.add( length );
+            }
+            return fetched;
+          } );
+        }
+        if ( completed == submitted ) {
+          break; // a range failed, nothing left in flight.
+        }
+        succeeded &= downloads.take().get();
+        completed++;
+      }
+      if ( succeeded && data.syncPolicy != DownloadSink.SyncPolicy.NONE ) {
+        channel.force( true );
+      }
+    } catch ( FileNotFoundException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.FileNotFound", targetFile ) );
+      return false;
+    } catch ( IOException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.ErrorReadingFile", metadata.getPathDisplay(),
+        ex.getMessage() ) );
+      return false;
+    } catch ( InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.Error.Interrupted" ) );
+      return false;
+    } catch ( ExecutionException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getCause().getMessage() ) );
+      return false;
+    }
+    if ( !succeeded ) {
+      return false;
+    }
+    try {
+      commitPartFile( partFile, revFile, localFile );
+    } catch ( IOException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxInput.Log.ErrorReadingFile", metadata.getPathDisplay(),
+        ex.getMessage() ) );
+      return false;
     }
     return true;
   }
 
+  /**
+   * Fetches a single byte range and writes it at its offset in the local file. When a transfer breaks, only the
+   * bytes not yet written are requested again.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param revision Dropbox file revision to read from
+   * @param channel local file to write to
+   * @param offset where the range starts within the file
+   * @param length range length
+   */
+  private boolean downloadRange( DbxClientV2 dbxClient, String revision, FileChannel channel, long offset,
+                                 long length ) {
+    long end = offset + length;
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    // The file is synced once every range is in, a range on its own isn't worth syncing.
+    try ( DownloadSink sink = new DownloadSink( channel, offset, DownloadSink.SyncPolicy.NONE, null ) ) {
+      while ( attempts.next() ) {
+        long position = sink.position();
+        if ( attempts.attempt() > 1 ) {
+          log.logDetailed( String.format( "Retrying range at offset %d (%d / %d attempts)\n", position,
+            attempts.attempt(), attempts.maxAttempts() ) );
+        }
+        DbxDownloader<FileMetadata> downloader = null;
+        long start = System.nanoTime();
+        try {
+          downloader = dbxClient.files().downloadBuilder( revision ).range( position, end - position ).start();
+          sink.transfer( downloader.getInputStream(), end - position );
+          if ( sink.position() == end ) {
+            attempts.succeeded();
+            data.metrics.recordCall( "files/download", start );
+            return true;
+          }
+          // The server closed the stream early, ask for the rest.
+          attempts.failed(
+            new IOException( String.format( "Range ended at offset %d instead of %d", sink.position(), end ) ) );
+        } catch ( RetryException | NetworkIOException | ServerException ex ) {
+          attempts.failed( ex );
+        } catch ( DbxException ex ) {
+          logError( BaseMessages.getString( PKG, "DropboxInput.Log.DownloadError", ex.getMessage() ) );
+          return false;
+        } catch ( IOException ex ) {
+          // Most likely the connection dropped while reading the body.
+          attempts.failed( ex );
+        } finally {
+          data.metrics.addBytesDownloaded( sink.position() - position );
+          if ( downloader != null ) {
+            downloader.close();
+          }
+        }
+      }
+    }
+    logGaveUp( attempts );
+    return false;
+  }
+
+  /**
+   * Logs why the retry policy stopped trying a call.
+   */
+  private void logGaveUp( RetryPolicy.Attempts attempts ) {
+    String cause = attempts.lastError() != null ? attempts.lastError().getMessage() : "";
+    switch ( attempts.outcome() ) {
+      case BUDGET_SPENT:
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.RetryBudgetSpent", cause ) );
+        break;
+      case CIRCUIT_OPEN:
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.CircuitOpen", cause ) );
+        break;
+      case INTERRUPTED:
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.Error.Interrupted" ) );
+        break;
+      default:
+        logError( BaseMessages.getString( PKG, "DropboxInput.Log.TooManyAttempts", cause ) );
+    }
+  }
+
+  private void routeTransferRow( Object[] r, boolean succeeded ) throws KettleStepException {
+    if ( succeeded ) {
+      putSuccessfulTransferRow( r ); // Transfer has succeeded.
+    } else {
+      putFailedTransferRow( r );
+    }
+  }
+
   private void putFailedTransferRow( Object[] r ) throws KettleStepException {
+    data.metrics.fileTransferred( false );
     if ( !data.chosesTargetSteps ) {
       putRow( data.outputRowMeta, r );
     } else {
@@ -231,10 +782,25 @@ public class DropboxInput extends BaseStep implements StepInterface {
   }
 
   private void putSuccessfulTransferRow( Object[] r ) throws KettleStepException {
+    data.metrics.fileTransferred( true );
+    incrementLinesInput();
     if ( !data.chosesTargetSteps ) {
       putRow( data.outputRowMeta, r );
     } else {
       putRowTo( data.outputRowMeta, r, data.successfulRowSet );
     }
   }
+
+  /**
+   * Revision a .part file is being downloaded from and how many of its bytes are on disk.
+   */
+  private static class PartState {
+    final FileMetadata metadata;
+    final long offset;
+
+    PartState( FileMetadata metadata, long offset ) {
+      this.metadata = metadata;
+      this.offset = offset;
+    }
+  }
 }
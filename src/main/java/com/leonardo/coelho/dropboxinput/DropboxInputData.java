@@ -18,22 +18,65 @@
  */
 package com.leonardo.coelho.dropboxinput;
 
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferExecutor;
+import com.leonardo.coelho.dropboxcommon.TransferMetrics;
+import com.leonardo.coelho.dropboxcommon.TransferThrottle;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import java.util.concurrent.ExecutorService;
 
 public class DropboxInputData extends BaseStepData implements StepDataInterface {
   int accessTokenIdx;
   int sourceFileIdx;
   int targetFilesIdx;
 
+  // Positions of the fields added to the output row, -1 when not added.
+  int contentIdx = -1;
+  int sizeIdx = -1;
+  int revIdx = -1;
+  int contentHashIdx = -1;
+  int skippedIdx = -1;
+
   RowMetaInterface outputRowMeta;
   public RowSet successfulRowSet;
   public RowSet failedRowSet;
   public boolean chosesTargetSteps;
 
+  // Downloads in flight, routed to the output row sets as they complete.
+  TransferExecutor<Boolean> transfers;
+
+  // Limits this step put on the JVM-wide transfer throttle, released on dispose.
+  TransferThrottle.Registration throttle;
+
+  // Fetches ranges of large files in parallel, null when files are downloaded as a single stream.
+  ExecutorService rangeWorkers;
+
+  // Files downloaded by previous runs, null when every file is downloaded.
+  DownloadManifest manifest;
+
+  // When downloaded files are forced to the storage device.
+  DownloadSink.SyncPolicy syncPolicy = DownloadSink.SyncPolicy.NONE;
+
+  // How calls failing on transient errors are retried, downloads resume from what already made it to disk.
+  RetryPolicy retryPolicy;
+
+  // Counters and latencies of the transfers, published as an MBean while the step runs.
+  TransferMetrics metrics;
+
+  // Files bigger than two ranges are split when ranged downloads are enabled.
+  static final long RANGED_DOWNLOAD_RANGE_SIZE = 8L << 20; // 8MiB
+
+  // Downloads land in a .part file, the revision being downloaded and how far it got are kept next to it.
+  static final String PART_FILE_SUFFIX = ".part";
+  static final String PART_REV_FILE_SUFFIX = ".part.rev";
+
+  // Content put in the row has to fit in a byte array.
+  static final long MAX_FIELD_CONTENT_SIZE = Integer.MAX_VALUE - 8;
+
   /**
    * 
    */
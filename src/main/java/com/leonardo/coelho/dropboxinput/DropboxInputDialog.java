@@ -18,6 +18,7 @@
  */
 package com.leonardo.coelho.dropboxinput;
 
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.custom.ScrolledComposite;
@@ -90,6 +91,69 @@ public class DropboxInputDialog extends BaseStepDialog implements StepDialogInte
   private Label wTargetFilesLabel;
   private CCombo wTargetFilesComboBox;
 
+  // Put the file content in the row instead of the local filesystem.
+  private Label wDownloadToFieldLabel;
+  private Button wDownloadToFieldButton;
+
+  // Field receiving the file content.
+  private Label wContentFieldLabel;
+  private Text wContentFieldField;
+
+  // Fields receiving the file metadata.
+  private Label wSizeFieldLabel;
+  private Text wSizeFieldField;
+  private Label wRevFieldLabel;
+  private Text wRevFieldField;
+  private Label wContentHashFieldLabel;
+  private Text wContentHashFieldField;
+
+  // Skip files already downloaded by a previous run.
+  private Label wSkipUnchangedLabel;
+  private Button wSkipUnchangedButton;
+  private Label wManifestFileLabel;
+  private Text wManifestFileField;
+  private Label wSkippedFieldLabel;
+  private Text wSkippedFieldField;
+
+  // Group performance content.
+  private Group performanceGroup;
+
+  // Number of files downloaded at the same time.
+  private Label wMaxConcurrentTransfersLabel;
+  private Text wMaxConcurrentTransfersField;
+
+  // Number of files downloaded at the same time with the same access token.
+  private Label wMaxConcurrentTransfersPerTokenLabel;
+  private Text wMaxConcurrentTransfersPerTokenField;
+
+  // Keep output rows in input order.
+  private Label wPreserveOrderLabel;
+  private Button wPreserveOrderButton;
+
+  // Ranges of a single large file downloaded at once.
+  private Label wParallelRangeStreamsLabel;
+  private Text wParallelRangeStreamsField;
+
+  // When downloaded files are forced to disk.
+  private Label wSyncPolicyLabel;
+  private CCombo wSyncPolicyField;
+
+  // Limits shared with the other Dropbox steps of the JVM.
+  private Label wTokenBandwidthLimitLabel;
+  private Text wTokenBandwidthLimitField;
+  private Label wTokenRequestLimitLabel;
+  private Text wTokenRequestLimitField;
+  private Label wTotalBandwidthLimitLabel;
+  private Text wTotalBandwidthLimitField;
+
+  // Retry policy
+  private Label wMaxAttemptsLabel;
+  private Text wMaxAttemptsField;
+  private Label wRetryBudgetLabel;
+  private Text wRetryBudgetField;
+  private Label wBreakerThresholdLabel;
+  private Text wBreakerThresholdField;
+
   // Footer Buttons
   private Button wCancel;
   private Button wOK;
@@ -276,6 +340,398 @@ public class DropboxInputDialog extends BaseStepDialog implements StepDialogInte
       .result();
     wTargetFilesComboBox.setLayoutData( fdTransformation3 );
 
+    // Download To Field label/checkbox
+    wDownloadToFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wDownloadToFieldLabel );
+    wDownloadToFieldLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.DownloadToField.Label" ) );
+    FormData fdlDownloadToField = new FormDataBuilder().left()
+      .top( wTargetFilesComboBox, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wDownloadToFieldLabel.setLayoutData( fdlDownloadToField );
+
+    wDownloadToFieldButton = new Button( transferGroup, SWT.CHECK );
+    props.setLook( wDownloadToFieldButton );
+    wDownloadToFieldButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setDownloadToFieldEnabled();
+      }
+    } );
+    FormData fdDownloadToField = new FormDataBuilder().left( middle, 0 )
+      .top( wTargetFilesComboBox, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wDownloadToFieldButton.setLayoutData( fdDownloadToField );
+
+    // Content Field label/field
+    wContentFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wContentFieldLabel );
+    wContentFieldLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.ContentField.Label" ) );
+    FormData fdlContentField = new FormDataBuilder().left()
+      .top( wDownloadToFieldButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wContentFieldLabel.setLayoutData( fdlContentField );
+
+    wContentFieldField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wContentFieldField );
+    wContentFieldField.addModifyListener( lsMod );
+    FormData fdContentField = new FormDataBuilder().left( middle, 0 )
+      .top( wDownloadToFieldButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wContentFieldField.setLayoutData( fdContentField );
+
+    // Size Field label/field
+    wSizeFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wSizeFieldLabel );
+    wSizeFieldLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.SizeField.Label" ) );
+    FormData fdlSizeField = new FormDataBuilder().left()
+      .top( wContentFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSizeFieldLabel.setLayoutData( fdlSizeField );
+
+    wSizeFieldField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSizeFieldField );
+    wSizeFieldField.addModifyListener( lsMod );
+    FormData fdSizeField = new FormDataBuilder().left( middle, 0 )
+      .top( wContentFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSizeFieldField.setLayoutData( fdSizeField );
+
+    // Rev Field label/field
+    wRevFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wRevFieldLabel );
+    wRevFieldLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.RevField.Label" ) );
+    FormData fdlRevField = new FormDataBuilder().left()
+      .top( wSizeFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wRevFieldLabel.setLayoutData( fdlRevField );
+
+    wRevFieldField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wRevFieldField );
+    wRevFieldField.addModifyListener( lsMod );
+    FormData fdRevField = new FormDataBuilder().left( middle, 0 )
+      .top( wSizeFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wRevFieldField.setLayoutData( fdRevField );
+
+    // Content Hash Field label/field
+    wContentHashFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wContentHashFieldLabel );
+    wContentHashFieldLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.ContentHashField.Label" ) );
+    FormData fdlContentHashField = new FormDataBuilder().left()
+      .top( wRevFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wContentHashFieldLabel.setLayoutData( fdlContentHashField );
+
+    wContentHashFieldField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wContentHashFieldField );
+    wContentHashFieldField.addModifyListener( lsMod );
+    FormData fdContentHashField = new FormDataBuilder().left( middle, 0 )
+      .top( wRevFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wContentHashFieldField.setLayoutData( fdContentHashField );
+
+    // Skip Unchanged label/checkbox
+    wSkipUnchangedLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wSkipUnchangedLabel );
+    wSkipUnchangedLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.SkipUnchanged.Label" ) );
+    FormData fdlSkipUnchanged = new FormDataBuilder().left()
+      .top( wContentHashFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSkipUnchangedLabel.setLayoutData( fdlSkipUnchanged );
+
+    wSkipUnchangedButton = new Button( transferGroup, SWT.CHECK );
+    props.setLook( wSkipUnchangedButton );
+    wSkipUnchangedButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setDownloadToFieldEnabled();
+      }
+    } );
+    FormData fdSkipUnchanged = new FormDataBuilder().left( middle, 0 )
+      .top( wContentHashFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSkipUnchangedButton.setLayoutData( fdSkipUnchanged );
+
+    // Manifest File label/field
+    wManifestFileLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wManifestFileLabel );
+    wManifestFileLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.ManifestFile.Label" ) );
+    FormData fdlManifestFile = new FormDataBuilder().left()
+      .top( wSkipUnchangedButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wManifestFileLabel.setLayoutData( fdlManifestFile );
+
+    wManifestFileField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wManifestFileField );
+    wManifestFileField.addModifyListener( lsMod );
+    FormData fdManifestFile = new FormDataBuilder().left( middle, 0 )
+      .top( wSkipUnchangedButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wManifestFileField.setLayoutData( fdManifestFile );
+
+    // Skipped Field label/field
+    wSkippedFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wSkippedFieldLabel );
+    wSkippedFieldLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.SkippedField.Label" ) );
+    FormData fdlSkippedField = new FormDataBuilder().left()
+      .top( wManifestFileField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSkippedFieldLabel.setLayoutData( fdlSkippedField );
+
+    wSkippedFieldField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSkippedFieldField );
+    wSkippedFieldField.addModifyListener( lsMod );
+    FormData fdSkippedField = new FormDataBuilder().left( middle, 0 )
+      .top( wManifestFileField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSkippedFieldField.setLayoutData( fdSkippedField );
+
+    // Group for Performance Fields.
+    performanceGroup = new Group( contentComposite, SWT.SHADOW_ETCHED_IN );
+    performanceGroup.setText( BaseMessages.getString( PKG, "DropboxInputDialog.Performance.GroupText" ) );
+    FormLayout performanceGroupLayout = new FormLayout();
+    performanceGroupLayout.marginWidth = MARGIN_SIZE;
+    performanceGroupLayout.marginHeight = MARGIN_SIZE;
+    performanceGroup.setLayout( performanceGroupLayout );
+    FormData performanceGroupLayoutData = new FormDataBuilder().fullWidth()
+      .top( transferGroup, MARGIN_SIZE )
+      .result();
+    performanceGroup.setLayoutData( performanceGroupLayoutData );
+    props.setLook( performanceGroup );
+
+    // Max Concurrent Transfers label/field
+    wMaxConcurrentTransfersLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wMaxConcurrentTransfersLabel );
+    wMaxConcurrentTransfersLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.MaxConcurrentTransfers.Label" ) );
+    FormData fdlMaxConcurrentTransfers = new FormDataBuilder().left()
+      .top()
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wMaxConcurrentTransfersLabel.setLayoutData( fdlMaxConcurrentTransfers );
+
+    wMaxConcurrentTransfersField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxConcurrentTransfersField );
+    wMaxConcurrentTransfersField.addModifyListener( lsMod );
+    FormData fdMaxConcurrentTransfers = new FormDataBuilder().left( middle, 0 )
+      .top()
+      .right( 100, 0 )
+      .result();
+    wMaxConcurrentTransfersField.setLayoutData( fdMaxConcurrentTransfers );
+
+    // Max Concurrent Transfers Per Token label/field
+    wMaxConcurrentTransfersPerTokenLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wMaxConcurrentTransfersPerTokenLabel );
+    wMaxConcurrentTransfersPerTokenLabel.setText(
+      BaseMessages.getString( PKG, "DropboxInputDialog.MaxConcurrentTransfersPerToken.Label" ) );
+    FormData fdlMaxConcurrentTransfersPerToken = new FormDataBuilder().left()
+      .top( wMaxConcurrentTransfersField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wMaxConcurrentTransfersPerTokenLabel.setLayoutData( fdlMaxConcurrentTransfersPerToken );
+
+    wMaxConcurrentTransfersPerTokenField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxConcurrentTransfersPerTokenField );
+    wMaxConcurrentTransfersPerTokenField.addModifyListener( lsMod );
+    FormData fdMaxConcurrentTransfersPerToken = new FormDataBuilder().left( middle, 0 )
+      .top( wMaxConcurrentTransfersField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wMaxConcurrentTransfersPerTokenField.setLayoutData( fdMaxConcurrentTransfersPerToken );
+
+    // Preserve Order label/checkbox
+    wPreserveOrderLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wPreserveOrderLabel );
+    wPreserveOrderLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.PreserveOrder.Label" ) );
+    FormData fdlPreserveOrder = new FormDataBuilder().left()
+      .top( wMaxConcurrentTransfersPerTokenField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wPreserveOrderLabel.setLayoutData( fdlPreserveOrder );
+
+    wPreserveOrderButton = new Button( performanceGroup, SWT.CHECK );
+    props.setLook( wPreserveOrderButton );
+    wPreserveOrderButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdPreserveOrder = new FormDataBuilder().left( middle, 0 )
+      .top( wMaxConcurrentTransfersPerTokenField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wPreserveOrderButton.setLayoutData( fdPreserveOrder );
+
+    // Parallel Range Streams label/field
+    wParallelRangeStreamsLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wParallelRangeStreamsLabel );
+    wParallelRangeStreamsLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.ParallelRangeStreams.Label" ) );
+    FormData fdlParallelRangeStreams = new FormDataBuilder().left()
+      .top( wPreserveOrderButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wParallelRangeStreamsLabel.setLayoutData( fdlParallelRangeStreams );
+
+    wParallelRangeStreamsField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wParallelRangeStreamsField );
+    wParallelRangeStreamsField.addModifyListener( lsMod );
+    FormData fdParallelRangeStreams = new FormDataBuilder().left( middle, 0 )
+      .top( wPreserveOrderButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wParallelRangeStreamsField.setLayoutData( fdParallelRangeStreams );
+
+    // Sync Policy label/field
+    wSyncPolicyLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wSyncPolicyLabel );
+    wSyncPolicyLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.SyncPolicy.Label" ) );
+    FormData fdlSyncPolicy = new FormDataBuilder().left()
+      .top( wParallelRangeStreamsField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSyncPolicyLabel.setLayoutData( fdlSyncPolicy );
+
+    wSyncPolicyField = new CCombo( performanceGroup, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( wSyncPolicyField );
+    for ( DownloadSink.SyncPolicy policy : DownloadSink.SyncPolicy.values() ) {
+      wSyncPolicyField.add( BaseMessages.getString( PKG, "DropboxInputDialog.SyncPolicy." + policy.getCode() ) );
+    }
+    wSyncPolicyField.addModifyListener( lsMod );
+    FormData fdSyncPolicy = new FormDataBuilder().left( middle, 0 )
+      .top( wParallelRangeStreamsField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSyncPolicyField.setLayoutData( fdSyncPolicy );
+
+    // Token Bandwidth Limit label/field
+    wTokenBandwidthLimitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wTokenBandwidthLimitLabel );
+    wTokenBandwidthLimitLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.TokenBandwidthLimit.Label" ) );
+    FormData fdlTokenBandwidthLimit = new FormDataBuilder().left()
+      .top( wSyncPolicyField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTokenBandwidthLimitLabel.setLayoutData( fdlTokenBandwidthLimit );
+
+    wTokenBandwidthLimitField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTokenBandwidthLimitField );
+    wTokenBandwidthLimitField.addModifyListener( lsMod );
+    FormData fdTokenBandwidthLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wSyncPolicyField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTokenBandwidthLimitField.setLayoutData( fdTokenBandwidthLimit );
+
+    // Token Request Limit label/field
+    wTokenRequestLimitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wTokenRequestLimitLabel );
+    wTokenRequestLimitLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.TokenRequestLimit.Label" ) );
+    FormData fdlTokenRequestLimit = new FormDataBuilder().left()
+      .top( wTokenBandwidthLimitField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTokenRequestLimitLabel.setLayoutData( fdlTokenRequestLimit );
+
+    wTokenRequestLimitField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTokenRequestLimitField );
+    wTokenRequestLimitField.addModifyListener( lsMod );
+    FormData fdTokenRequestLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wTokenBandwidthLimitField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTokenRequestLimitField.setLayoutData( fdTokenRequestLimit );
+
+    // Total Bandwidth Limit label/field
+    wTotalBandwidthLimitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wTotalBandwidthLimitLabel );
+    wTotalBandwidthLimitLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.TotalBandwidthLimit.Label" ) );
+    FormData fdlTotalBandwidthLimit = new FormDataBuilder().left()
+      .top( wTokenRequestLimitField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTotalBandwidthLimitLabel.setLayoutData( fdlTotalBandwidthLimit );
+
+    wTotalBandwidthLimitField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTotalBandwidthLimitField );
+    wTotalBandwidthLimitField.addModifyListener( lsMod );
+    FormData fdTotalBandwidthLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wTokenRequestLimitField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTotalBandwidthLimitField.setLayoutData( fdTotalBandwidthLimit );
+
+    // Max Attempts label/field
+    wMaxAttemptsLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wMaxAttemptsLabel );
+    wMaxAttemptsLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.MaxAttempts.Label" ) );
+    FormData fdlMaxAttempts = new FormDataBuilder().left()
+      .top( wTotalBandwidthLimitField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wMaxAttemptsLabel.setLayoutData( fdlMaxAttempts );
+
+    wMaxAttemptsField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxAttemptsField );
+    wMaxAttemptsField.addModifyListener( lsMod );
+    FormData fdMaxAttempts = new FormDataBuilder().left( middle, 0 )
+      .top( wTotalBandwidthLimitField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wMaxAttemptsField.setLayoutData( fdMaxAttempts );
+
+    // Retry Budget label/field
+    wRetryBudgetLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wRetryBudgetLabel );
+    wRetryBudgetLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.RetryBudget.Label" ) );
+    FormData fdlRetryBudget = new FormDataBuilder().left()
+      .top( wMaxAttemptsField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wRetryBudgetLabel.setLayoutData( fdlRetryBudget );
+
+    wRetryBudgetField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wRetryBudgetField );
+    wRetryBudgetField.addModifyListener( lsMod );
+    FormData fdRetryBudget = new FormDataBuilder().left( middle, 0 )
+      .top( wMaxAttemptsField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wRetryBudgetField.setLayoutData( fdRetryBudget );
+
+    // Breaker Threshold label/field
+    wBreakerThresholdLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wBreakerThresholdLabel );
+    wBreakerThresholdLabel.setText( BaseMessages.getString( PKG, "DropboxInputDialog.BreakerThreshold.Label" ) );
+    FormData fdlBreakerThreshold = new FormDataBuilder().left()
+      .top( wRetryBudgetField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wBreakerThresholdLabel.setLayoutData( fdlBreakerThreshold );
+
+    wBreakerThresholdField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBreakerThresholdField );
+    wBreakerThresholdField.addModifyListener( lsMod );
+    FormData fdBreakerThreshold = new FormDataBuilder().left( middle, 0 )
+      .top( wRetryBudgetField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wBreakerThresholdField.setLayoutData( fdBreakerThreshold );
+
     // Cancel, action and OK buttons for the bottom of the window.
     wCancel = new Button( shell, SWT.PUSH );
     wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
@@ -400,6 +856,30 @@ public class DropboxInputDialog extends BaseStepDialog implements StepDialogInte
     if ( targetFolderField != null ) {
       wTargetFilesComboBox.setText( meta.getTargetFilesField() );
     }
+
+    // Get output fields values.
+    wDownloadToFieldButton.setSelection( meta.isDownloadToField() );
+    wContentFieldField.setText( Const.NVL( meta.getContentField(), "" ) );
+    wSizeFieldField.setText( Const.NVL( meta.getSizeField(), "" ) );
+    wRevFieldField.setText( Const.NVL( meta.getRevField(), "" ) );
+    wContentHashFieldField.setText( Const.NVL( meta.getContentHashField(), "" ) );
+    wSkipUnchangedButton.setSelection( meta.isSkipUnchanged() );
+    wManifestFileField.setText( Const.NVL( meta.getManifestFile(), "" ) );
+    wSkippedFieldField.setText( Const.NVL( meta.getSkippedField(), "" ) );
+    setDownloadToFieldEnabled();
+
+    // Get performance fields values.
+    wMaxConcurrentTransfersField.setText( String.valueOf( meta.getMaxConcurrentTransfers() ) );
+    wMaxConcurrentTransfersPerTokenField.setText( String.valueOf( meta.getMaxConcurrentTransfersPerToken() ) );
+    wPreserveOrderButton.setSelection( meta.isPreserveOrder() );
+    wParallelRangeStreamsField.setText( String.valueOf( meta.getParallelRangeStreams() ) );
+    wSyncPolicyField.select( DownloadSink.SyncPolicy.fromCode( meta.getSyncPolicy() ).ordinal() );
+    wTokenBandwidthLimitField.setText( String.valueOf( meta.getTokenBandwidthLimit() ) );
+    wTokenRequestLimitField.setText( String.valueOf( meta.getTokenRequestLimit() ) );
+    wTotalBandwidthLimitField.setText( String.valueOf( meta.getTotalBandwidthLimit() ) );
+    wMaxAttemptsField.setText( String.valueOf( meta.getMaxAttempts() ) );
+    wRetryBudgetField.setText( String.valueOf( meta.getRetryBudget() ) );
+    wBreakerThresholdField.setText( String.valueOf( meta.getBreakerThreshold() ) );
   }
 
   /**
@@ -419,6 +899,40 @@ public class DropboxInputDialog extends BaseStepDialog implements StepDialogInte
     meta.setAccessTokenField( wAccessTokenField.getText() );
     meta.setSourceFilesField( wSourceFilesComboBox.getText() );
     meta.setTargetFilesField( wTargetFilesComboBox.getText() );
+
+    // Set output fields.
+    meta.setDownloadToField( wDownloadToFieldButton.getSelection() );
+    meta.setContentField( wContentFieldField.getText() );
+    meta.setSizeField( wSizeFieldField.getText() );
+    meta.setRevField( wRevFieldField.getText() );
+    meta.setContentHashField( wContentHashFieldField.getText() );
+    meta.setSkipUnchanged( wSkipUnchangedButton.getSelection() );
+    meta.setManifestFile( wManifestFileField.getText() );
+    meta.setSkippedField( wSkippedFieldField.getText() );
+
+    // Set performance fields.
+    meta.setMaxConcurrentTransfers( Const.toInt( wMaxConcurrentTransfersField.getText(), 1 ) );
+    meta.setMaxConcurrentTransfersPerToken( Const.toInt( wMaxConcurrentTransfersPerTokenField.getText(), 0 ) );
+    meta.setPreserveOrder( wPreserveOrderButton.getSelection() );
+    meta.setParallelRangeStreams( Const.toInt( wParallelRangeStreamsField.getText(), 1 ) );
+    int syncPolicy = Math.max( 0, wSyncPolicyField.getSelectionIndex() );
+    meta.setSyncPolicy( DownloadSink.SyncPolicy.values()[ syncPolicy ].getCode() );
+    meta.setTokenBandwidthLimit( Const.toInt( wTokenBandwidthLimitField.getText(), 0 ) );
+    meta.setTokenRequestLimit( Const.toInt( wTokenRequestLimitField.getText(), 0 ) );
+    meta.setTotalBandwidthLimit( Const.toInt( wTotalBandwidthLimitField.getText(), 0 ) );
+    meta.setMaxAttempts( Const.toInt( wMaxAttemptsField.getText(), RetryPolicy.DEFAULT_MAX_ATTEMPTS ) );
+    meta.setRetryBudget( Const.toInt( wRetryBudgetField.getText(), 0 ) );
+    meta.setBreakerThreshold( Const.toInt( wBreakerThresholdField.getText(), RetryPolicy.DEFAULT_BREAKER_THRESHOLD ) );
+  }
+
+  private void setDownloadToFieldEnabled() {
+    boolean downloadToField = wDownloadToFieldButton.getSelection();
+    wTargetFilesComboBox.setEnabled( !downloadToField );
+    wContentFieldField.setEnabled( downloadToField );
+    boolean skipUnchanged = !downloadToField && wSkipUnchangedButton.getSelection();
+    wSkipUnchangedButton.setEnabled( !downloadToField );
+    wManifestFileField.setEnabled( skipUnchanged );
+    wSkippedFieldField.setEnabled( skipUnchanged );
   }
 
   private void cancel() {
@@ -18,7 +18,9 @@
  */
 package com.leonardo.coelho.dropboxinput;
 
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
 import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -26,6 +28,12 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
@@ -106,10 +114,191 @@ public class DropboxInputMeta extends BaseStepMeta implements StepMetaInterface
     this.targetFilesField = targetFilesField;
   }
 
+  public boolean isDownloadToField() {
+    return downloadToField;
+  }
+
+  public void setDownloadToField( boolean downloadToField ) {
+    this.downloadToField = downloadToField;
+  }
+
+  public String getContentField() {
+    return contentField;
+  }
+
+  public void setContentField( String contentField ) {
+    this.contentField = contentField;
+  }
+
+  public String getSizeField() {
+    return sizeField;
+  }
+
+  public void setSizeField( String sizeField ) {
+    this.sizeField = sizeField;
+  }
+
+  public String getRevField() {
+    return revField;
+  }
+
+  public void setRevField( String revField ) {
+    this.revField = revField;
+  }
+
+  public String getContentHashField() {
+    return contentHashField;
+  }
+
+  public void setContentHashField( String contentHashField ) {
+    this.contentHashField = contentHashField;
+  }
+
+  public boolean isSkipUnchanged() {
+    return skipUnchanged;
+  }
+
+  public void setSkipUnchanged( boolean skipUnchanged ) {
+    this.skipUnchanged = skipUnchanged;
+  }
+
+  public String getManifestFile() {
+    return manifestFile;
+  }
+
+  public void setManifestFile( String manifestFile ) {
+    this.manifestFile = manifestFile;
+  }
+
+  public String getSkippedField() {
+    return skippedField;
+  }
+
+  public void setSkippedField( String skippedField ) {
+    this.skippedField = skippedField;
+  }
+
+  public int getMaxConcurrentTransfers() {
+    return maxConcurrentTransfers;
+  }
+
+  public void setMaxConcurrentTransfers( int maxConcurrentTransfers ) {
+    this.maxConcurrentTransfers = maxConcurrentTransfers;
+  }
+
+  public int getMaxConcurrentTransfersPerToken() {
+    return maxConcurrentTransfersPerToken;
+  }
+
+  public void setMaxConcurrentTransfersPerToken( int maxConcurrentTransfersPerToken ) {
+    this.maxConcurrentTransfersPerToken = maxConcurrentTransfersPerToken;
+  }
+
+  public int getParallelRangeStreams() {
+    return parallelRangeStreams;
+  }
+
+  public void setParallelRangeStreams( int parallelRangeStreams ) {
+    this.parallelRangeStreams = parallelRangeStreams;
+  }
+
+  public String getSyncPolicy() {
+    return syncPolicy;
+  }
+
+  public void setSyncPolicy( String syncPolicy ) {
+    this.syncPolicy = syncPolicy;
+  }
+
+  public int getTokenBandwidthLimit() {
+    return tokenBandwidthLimit;
+  }
+
+  public void setTokenBandwidthLimit( int tokenBandwidthLimit ) {
+    this.tokenBandwidthLimit = tokenBandwidthLimit;
+  }
+
+  public int getTokenRequestLimit() {
+    return tokenRequestLimit;
+  }
+
+  public void setTokenRequestLimit( int tokenRequestLimit ) {
+    this.tokenRequestLimit = tokenRequestLimit;
+  }
+
+  public int getTotalBandwidthLimit() {
+    return totalBandwidthLimit;
+  }
+
+  public void setTotalBandwidthLimit( int totalBandwidthLimit ) {
+    this.totalBandwidthLimit = totalBandwidthLimit;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public void setMaxAttempts( int maxAttempts ) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public int getRetryBudget() {
+    return retryBudget;
+  }
+
+  public void setRetryBudget( int retryBudget ) {
+    this.retryBudget = retryBudget;
+  }
+
+  public int getBreakerThreshold() {
+    return breakerThreshold;
+  }
+
+  public void setBreakerThreshold( int breakerThreshold ) {
+    this.breakerThreshold = breakerThreshold;
+  }
+
+  public boolean isPreserveOrder() {
+    return preserveOrder;
+  }
+
+  public void setPreserveOrder( boolean preserveOrder ) {
+    this.preserveOrder = preserveOrder;
+  }
+
   private String accessTokenField;
   private String sourceFilesField;
   private String targetFilesField;
 
+  // Output fields.
+  private boolean downloadToField;
+  private String contentField;
+  private String sizeField;
+  private String revField;
+  private String contentHashField;
+
+  // Skip files already downloaded by a previous run.
+  private boolean skipUnchanged;
+  private String manifestFile;
+  private String skippedField;
+
+  // Performance tuning.
+  private int maxConcurrentTransfers;
+  private int maxConcurrentTransfersPerToken;
+  private boolean preserveOrder;
+  private int parallelRangeStreams;
+  private String syncPolicy;
+
+  // Limits shared with the other Dropbox steps of the JVM, 0 for no limit.
+  private int tokenBandwidthLimit;
+  private int tokenRequestLimit;
+  private int totalBandwidthLimit;
+
+  // How failed calls are retried, see RetryPolicy.
+  private int maxAttempts;
+  private int retryBudget;
+  private int breakerThreshold;
+
   public DropboxInputMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -129,9 +318,45 @@ public class DropboxInputMeta extends BaseStepMeta implements StepMetaInterface
     accessTokenField = XMLHandler.getTagValue( stepnode, "accessTokenField" );
     sourceFilesField = XMLHandler.getTagValue( stepnode, "sourceFilesField" );
     targetFilesField = XMLHandler.getTagValue( stepnode, "targetFilesField" );
+    downloadToField = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "downloadToField" ) );
+    contentField = XMLHandler.getTagValue( stepnode, "contentField" );
+    sizeField = XMLHandler.getTagValue( stepnode, "sizeField" );
+    revField = XMLHandler.getTagValue( stepnode, "revField" );
+    contentHashField = XMLHandler.getTagValue( stepnode, "contentHashField" );
+    skipUnchanged = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "skipUnchanged" ) );
+    manifestFile = XMLHandler.getTagValue( stepnode, "manifestFile" );
+    skippedField = XMLHandler.getTagValue( stepnode, "skippedField" );
+    maxConcurrentTransfers = Const.toInt( XMLHandler.getTagValue( stepnode, "maxConcurrentTransfers" ), 1 );
+    maxConcurrentTransfersPerToken =
+      Const.toInt( XMLHandler.getTagValue( stepnode, "maxConcurrentTransfersPerToken" ), 0 );
+    preserveOrder = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "preserveOrder" ) );
+    parallelRangeStreams = Const.toInt( XMLHandler.getTagValue( stepnode, "parallelRangeStreams" ), 1 );
+    syncPolicy = Const.NVL( XMLHandler.getTagValue( stepnode, "syncPolicy" ), DownloadSink.SyncPolicy.NONE.getCode() );
+    tokenBandwidthLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "tokenBandwidthLimit" ), 0 );
+    tokenRequestLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "tokenRequestLimit" ), 0 );
+    totalBandwidthLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "totalBandwidthLimit" ), 0 );
+    maxAttempts = Const.toInt( XMLHandler.getTagValue( stepnode, "maxAttempts" ), RetryPolicy.DEFAULT_MAX_ATTEMPTS );
+    retryBudget = Const.toInt( XMLHandler.getTagValue( stepnode, "retryBudget" ), 0 );
+    breakerThreshold =
+      Const.toInt( XMLHandler.getTagValue( stepnode, "breakerThreshold" ), RetryPolicy.DEFAULT_BREAKER_THRESHOLD );
   }
 
   public void setDefault() {
+    downloadToField = false;
+    contentField = "content";
+    skipUnchanged = false;
+    skippedField = "skipped";
+    maxConcurrentTransfers = 1;
+    maxConcurrentTransfersPerToken = 0;
+    preserveOrder = false;
+    parallelRangeStreams = 1;
+    syncPolicy = DownloadSink.SyncPolicy.NONE.getCode();
+    tokenBandwidthLimit = 0;
+    tokenRequestLimit = 0;
+    totalBandwidthLimit = 0;
+    maxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+    retryBudget = 0;
+    breakerThreshold = RetryPolicy.DEFAULT_BREAKER_THRESHOLD;
   }
 
   public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases ) throws KettleException {
@@ -141,12 +366,44 @@ public class DropboxInputMeta extends BaseStepMeta implements StepMetaInterface
       accessTokenField = rep.getStepAttributeString( id_step, "accessTokenField" );
       sourceFilesField = rep.getStepAttributeString( id_step, "sourceFilesField" );
       targetFilesField = rep.getStepAttributeString( id_step, "targetFilesField" );
+      downloadToField = rep.getStepAttributeBoolean( id_step, "downloadToField" );
+      contentField = rep.getStepAttributeString( id_step, "contentField" );
+      sizeField = rep.getStepAttributeString( id_step, "sizeField" );
+      revField = rep.getStepAttributeString( id_step, "revField" );
+      contentHashField = rep.getStepAttributeString( id_step, "contentHashField" );
+      skipUnchanged = rep.getStepAttributeBoolean( id_step, "skipUnchanged" );
+      manifestFile = rep.getStepAttributeString( id_step, "manifestFile" );
+      skippedField = rep.getStepAttributeString( id_step, "skippedField" );
+      maxConcurrentTransfers = (int) rep.getStepAttributeInteger( id_step, "maxConcurrentTransfers" );
+      maxConcurrentTransfersPerToken = (int) rep.getStepAttributeInteger( id_step, "maxConcurrentTransfersPerToken" );
+      preserveOrder = rep.getStepAttributeBoolean( id_step, "preserveOrder" );
+      parallelRangeStreams = (int) rep.getStepAttributeInteger( id_step, "parallelRangeStreams" );
+      syncPolicy = Const.NVL( rep.getStepAttributeString( id_step, "syncPolicy" ),
+        DownloadSink.SyncPolicy.NONE.getCode() );
+      tokenBandwidthLimit = (int) rep.getStepAttributeInteger( id_step, "tokenBandwidthLimit" );
+      tokenRequestLimit = (int) rep.getStepAttributeInteger( id_step, "tokenRequestLimit" );
+      totalBandwidthLimit = (int) rep.getStepAttributeInteger( id_step, "totalBandwidthLimit" );
+      maxAttempts = readRepInteger( rep, id_step, "maxAttempts", RetryPolicy.DEFAULT_MAX_ATTEMPTS );
+      retryBudget = (int) rep.getStepAttributeInteger( id_step, "retryBudget" );
+      breakerThreshold = readRepInteger( rep, id_step, "breakerThreshold", RetryPolicy.DEFAULT_BREAKER_THRESHOLD );
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
         PKG, "DropboxInputMeta.Exception.UnexpectedErrorInReadingStepInfoFromRepository" ), e );
     }
   }
 
+  /**
+   * Reads an integer attribute, falling back to its default for steps saved before the attribute existed: the
+   * repository reads a missing attribute as 0.
+   */
+  private static int readRepInteger( Repository rep, ObjectId id_step, String code, int defaultValue )
+    throws KettleException {
+    if ( rep.countNrStepAttributes( id_step, code ) == 0 ) {
+      return defaultValue;
+    }
+    return (int) rep.getStepAttributeInteger( id_step, code );
+  }
+
   @Override
   public String getXML() {
     StringBuilder retval = new StringBuilder();
@@ -155,6 +412,25 @@ public class DropboxInputMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " + XMLHandler.addTagValue( "accessTokenField", accessTokenField ) );
     retval.append( "    " + XMLHandler.addTagValue( "sourceFilesField", sourceFilesField ) );
     retval.append( "    " + XMLHandler.addTagValue( "targetFilesField", targetFilesField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "downloadToField", downloadToField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "contentField", contentField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "sizeField", sizeField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "revField", revField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "contentHashField", contentHashField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "skipUnchanged", skipUnchanged ) );
+    retval.append( "    " + XMLHandler.addTagValue( "manifestFile", manifestFile ) );
+    retval.append( "    " + XMLHandler.addTagValue( "skippedField", skippedField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "maxConcurrentTransfers", maxConcurrentTransfers ) );
+    retval.append( "    " + XMLHandler.addTagValue( "maxConcurrentTransfersPerToken", maxConcurrentTransfersPerToken ) );
+    retval.append( "    " + XMLHandler.addTagValue( "preserveOrder", preserveOrder ) );
+    retval.append( "    " + XMLHandler.addTagValue( "parallelRangeStreams", parallelRangeStreams ) );
+    retval.append( "    " + XMLHandler.addTagValue( "syncPolicy", syncPolicy ) );
+    retval.append( "    " + XMLHandler.addTagValue( "tokenBandwidthLimit", tokenBandwidthLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "tokenRequestLimit", tokenRequestLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "totalBandwidthLimit", totalBandwidthLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "maxAttempts", maxAttempts ) );
+    retval.append( "    " + XMLHandler.addTagValue( "retryBudget", retryBudget ) );
+    retval.append( "    " + XMLHandler.addTagValue( "breakerThreshold", breakerThreshold ) );
     return retval.toString();
   }
   
@@ -166,6 +442,26 @@ public class DropboxInputMeta extends BaseStepMeta implements StepMetaInterface
       rep.saveStepAttribute( id_transformation, id_step, "accessTokenField", accessTokenField );
       rep.saveStepAttribute( id_transformation, id_step, "sourceFilesField", sourceFilesField );
       rep.saveStepAttribute( id_transformation, id_step, "targetFilesField", targetFilesField );
+      rep.saveStepAttribute( id_transformation, id_step, "downloadToField", downloadToField );
+      rep.saveStepAttribute( id_transformation, id_step, "contentField", contentField );
+      rep.saveStepAttribute( id_transformation, id_step, "sizeField", sizeField );
+      rep.saveStepAttribute( id_transformation, id_step, "revField", revField );
+      rep.saveStepAttribute( id_transformation, id_step, "contentHashField", contentHashField );
+      rep.saveStepAttribute( id_transformation, id_step, "skipUnchanged", skipUnchanged );
+      rep.saveStepAttribute( id_transformation, id_step, "manifestFile", manifestFile );
+      rep.saveStepAttribute( id_transformation, id_step, "skippedField", skippedField );
+      rep.saveStepAttribute( id_transformation, id_step, "maxConcurrentTransfers", maxConcurrentTransfers );
+      rep.saveStepAttribute( id_transformation, id_step, "maxConcurrentTransfersPerToken",
+        maxConcurrentTransfersPerToken );
+      rep.saveStepAttribute( id_transformation, id_step, "preserveOrder", preserveOrder );
+      rep.saveStepAttribute( id_transformation, id_step, "parallelRangeStreams", parallelRangeStreams );
+      rep.saveStepAttribute( id_transformation, id_step, "syncPolicy", syncPolicy );
+      rep.saveStepAttribute( id_transformation, id_step, "tokenBandwidthLimit", tokenBandwidthLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "tokenRequestLimit", tokenRequestLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "totalBandwidthLimit", totalBandwidthLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "maxAttempts", maxAttempts );
+      rep.saveStepAttribute( id_transformation, id_step, "retryBudget", retryBudget );
+      rep.saveStepAttribute( id_transformation, id_step, "breakerThreshold", breakerThreshold );
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
         PKG, "DropboxInputMeta.Exception.UnableToSaveStepInfoToRepository", id_step ), e );
@@ -174,7 +470,27 @@ public class DropboxInputMeta extends BaseStepMeta implements StepMetaInterface
   
   public void getFields( RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
       VariableSpace space, Repository repository, IMetaStore metaStore ) throws KettleStepException {
+    if ( downloadToField && !Utils.isEmpty( contentField ) ) {
+      addField( rowMeta, new ValueMetaBinary( contentField ), origin );
+    }
+    if ( !Utils.isEmpty( sizeField ) ) {
+      addField( rowMeta, new ValueMetaInteger( sizeField ), origin );
+    }
+    if ( !Utils.isEmpty( revField ) ) {
+      addField( rowMeta, new ValueMetaString( revField ), origin );
+    }
+    if ( !Utils.isEmpty( contentHashField ) ) {
+      addField( rowMeta, new ValueMetaString( contentHashField ), origin );
+    }
+    // Content put in the row is always downloaded.
+    if ( skipUnchanged && !downloadToField && !Utils.isEmpty( skippedField ) ) {
+      addField( rowMeta, new ValueMetaBoolean( skippedField ), origin );
+    }
+  }
 
+  private void addField( RowMetaInterface rowMeta, ValueMetaInterface valueMeta, String origin ) {
+    valueMeta.setOrigin( origin );
+    rowMeta.addValueMeta( valueMeta );
   }
   
   public void check( List<CheckResultInterface> remarks, TransMeta transMeta,
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxlistfolder;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * On-disk record of the {@code list_folder} cursors reached by previous runs, so a folder is only listed in full
+ * once and later runs just ask for what changed since.
+ * <p>
+ * Cursors are kept in a properties file, keyed by a hash of the access token, folder and listing options, so
+ * tokens are never written to disk. The file is replaced atomically, a crash while writing it never leaves it half
+ * written. Step copies and steps sharing a file each record their own keys: every write merges into what the file
+ * holds at that moment, one writer at a time per file within the JVM.
+ */
+class CursorStore {
+  // Writers of the same file take turns, whichever CursorStore they go through.
+  private static final Striped<Lock> FILE_LOCKS = Striped.lazyWeakLock( 64 );
+
+  private final File file;
+  private final Properties cursors = new Properties();
+
+  private CursorStore( File file ) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the cursors kept in the given file, none when the file doesn't exist yet.
+   */
+  static CursorStore load( File file ) throws IOException {
+    CursorStore store = new CursorStore( file );
+    if ( file.isFile() ) {
+      try ( InputStream in = new FileInputStream( file ) ) {
+        store.cursors.load( in );
+      }
+    }
+    return store;
+  }
+
+  /**
+   * Identifies a listing of a given folder, as seen by a given access token.
+   */
+  static String key( String accessToken, String path, boolean recursive ) {
+    String identity = accessToken + '\n' + path.toLowerCase() + '\n' + recursive;
+    return Hashing.sha1().hashString( identity, StandardCharsets.UTF_8 ).toString();
+  }
+
+  /**
+   * Returns the cursor reached by the last run for the given key, or null when the folder was never listed.
+   */
+  synchronized String find( String key ) {
+    return cursors.getProperty( key );
+  }
+
+  /**
+   * Records the cursor reached for the given key and writes the store back to disk.
+   */
+  synchronized void record( String key, String cursor ) throws IOException {
+    cursors.setProperty( key, cursor );
+    File folder = file.getAbsoluteFile().getParentFile();
+    if ( !folder.isDirectory() && !folder.mkdirs() ) {
+      throw new IOException( "Unable to create folder " + folder );
+    }
+    Lock lock = FILE_LOCKS.get( file.getCanonicalPath() );
+    lock.lock();
+    try {
+      // Read the file again, so the cursors others recorded since it was loaded are kept.
+      Properties merged = new Properties();
+      if ( file.isFile() ) {
+        try ( InputStream in = new FileInputStream( file ) ) {
+          merged.load( in );
+        }
+      }
+      merged.setProperty( key, cursor );
+      Path tmp = Files.createTempFile( folder.toPath(), file.getName(), ".tmp" );
+      try {
+        try ( OutputStream out = Files.newOutputStream( tmp ) ) {
+          merged.store( out, null );
+        }
+        Files.move( tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      } finally {
+        Files.deleteIfExists( tmp );
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxlistfolder;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryException;
+import com.dropbox.core.ServerException;
+import com.dropbox.core.v2.DbxClientV2;
+import com.dropbox.core.v2.files.DbxUserListFolderBuilder;
+import com.dropbox.core.v2.files.DeletedMetadata;
+import com.dropbox.core.v2.files.FileMetadata;
+import com.dropbox.core.v2.files.FolderMetadata;
+import com.dropbox.core.v2.files.ListFolderContinueErrorException;
+import com.dropbox.core.v2.files.ListFolderLongpollError;
+import com.dropbox.core.v2.files.ListFolderLongpollErrorException;
+import com.dropbox.core.v2.files.ListFolderLongpollResult;
+import com.dropbox.core.v2.files.ListFolderResult;
+import com.dropbox.core.v2.files.Metadata;
+import com.leonardo.coelho.dropboxcommon.DropboxClientPool;
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferThrottle;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the Dropbox folder of every input row, emitting one row per entry.
+ * <p>
+ * Entries are emitted page by page as {@code list_folder} and {@code list_folder/continue} return them, so the
+ * listing is never held in memory as a whole. The next page is fetched while the current one is being emitted, which
+ * hides the round trip without holding more than two pages at a time.
+ * <p>
+ * In incremental mode the cursor reached by each listing is kept on disk, and later runs only emit what changed
+ * since, optionally waiting on {@code list_folder/longpoll} for something to emit. A folder without changes once
+ * the wait times out emits nothing, so the next rows aren't held up by it.
+ */
+public class DropboxListFolder extends BaseStep implements StepInterface {
+  private static Class<?> PKG = DropboxListFolderMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+  private DropboxListFolderMeta meta;
+  private DropboxListFolderData data;
+
+  public DropboxListFolder( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
+    Trans trans ) {
+    super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
+  }
+
+  /**
+   * Initialize and do work where other steps need to wait for...
+   *
+   * @param stepMetaInterface
+   *          The metadata to work with
+   * @param stepDataInterface
+   *          The data to initialize
+   */
+  public boolean init( StepMetaInterface stepMetaInterface, StepDataInterface stepDataInterface ) {
+    meta = (DropboxListFolderMeta) stepMetaInterface;
+    data = (DropboxListFolderData) stepDataInterface;
+
+    if ( super.init( stepMetaInterface, stepDataInterface ) ) {
+      if ( Utils.isEmpty( meta.getAccessTokenField() ) ) {
+        logError( BaseMessages.getString( PKG, "DropboxListFolder.Missing.AccessToken" ) );
+        return false;
+      }
+      if ( Utils.isEmpty( meta.getFolderField() ) ) {
+        logError( BaseMessages.getString( PKG, "DropboxListFolder.Missing.Folder" ) );
+        return false;
+      }
+      if ( meta.isIncremental() ) {
+        if ( Utils.isEmpty( meta.getCursorFile() ) ) {
+          logError( BaseMessages.getString( PKG, "DropboxListFolder.Missing.CursorFile" ) );
+          return false;
+        }
+        String cursorFile = environmentSubstitute( meta.getCursorFile() );
+        try {
+          data.cursors = CursorStore.load( new File( cursorFile ) );
+        } catch ( IOException ex ) {
+          logError( BaseMessages.getString( PKG, "DropboxListFolder.Log.CursorError", cursorFile, ex.getMessage() ) );
+          return false;
+        }
+      }
+      data.prefetcher = Executors.newSingleThreadExecutor( new ThreadFactoryBuilder()
+        .setNameFormat( getStepname() + "." + getCopy() + " prefetch-%d" ).setDaemon( true ).build() );
+      data.throttle = TransferThrottle.getInstance().register( 0L, meta.getTokenRequestLimit(), 0L );
+      data.retryPolicy = new RetryPolicy( RetryPolicy.DEFAULT_MAX_ATTEMPTS, 0, RetryPolicy.DEFAULT_BREAKER_THRESHOLD );
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    meta = (DropboxListFolderMeta) smi;
+    data = (DropboxListFolderData) sdi;
+
+    Object[] r = getRow(); // get row, set busy!
+    if ( r == null ) {
+      // no more input to be expected...
+      setOutputDone();
+      return false;
+    }
+
+    if ( first ) {
+      first = false;
+      // Mapping Access Token field.
+      data.accessTokenIdx = getInputRowMeta().indexOfValue( meta.getAccessTokenField() );
+      if ( data.accessTokenIdx < 0 ) {
+        logError( BaseMessages.getString( PKG, "DropboxListFolder.Invalid.AccessToken" ) );
+        setErrors( 1 );
+        stopAll();
+        return false;
+      }
+      // Mapping Folder field.
+      data.folderIdx = getInputRowMeta().indexOfValue( meta.getFolderField() );
+      if ( data.folderIdx < 0 ) {
+        logError( BaseMessages.getString( PKG, "DropboxListFolder.Invalid.Folder" ) );
+        setErrors( 1 );
+        stopAll();
+        return false;
+      }
+      data.outputRowMeta = getInputRowMeta().clone();
+      meta.getFields( data.outputRowMeta, getStepname(), null, null, this, getRepository(), getMetaStore() );
+      data.pathIdx = indexOfOptionalField( meta.getPathField() );
+      data.nameIdx = indexOfOptionalField( meta.getNameField() );
+      data.typeIdx = indexOfOptionalField( meta.getTypeField() );
+      data.sizeIdx = indexOfOptionalField( meta.getSizeField() );
+      data.revIdx = indexOfOptionalField( meta.getRevField() );
+      data.modifiedIdx = indexOfOptionalField( meta.getModifiedField() );
+      data.contentHashIdx = indexOfOptionalField( meta.getContentHashField() );
+    }
+
+    // Get Values from Input Row.
+    String accessToken = (String) r[data.accessTokenIdx];
+    String folder = (String) r[data.folderIdx];
+
+    if ( Utils.isEmpty( accessToken ) ) {
+      return rejectRow( r, BaseMessages.getString( PKG, "DropboxListFolder.Null.AccessToken" ) );
+    }
+
+    // Calls made with this token count towards the limits of this step.
+    data.throttle.applyTo( accessToken );
+
+    // Borrow a DbxClientV2 to make API calls, reusing the connections of previous rows.
+    DbxClientV2 dbxClient = DropboxClientPool.getInstance().getClient( accessToken );
+
+    try {
+      listFolder( dbxClient, accessToken, folder, r );
+    } catch ( DbxException ex ) {
+      return rejectRow( r, BaseMessages.getString( PKG, "DropboxListFolder.Log.ListError", folder, ex.getMessage() ) );
+    } catch ( IOException ex ) {
+      return rejectRow( r, BaseMessages.getString( PKG, "DropboxListFolder.Log.CursorError",
+        environmentSubstitute( meta.getCursorFile() ), ex.getMessage() ) );
+    } catch ( InterruptedException ex ) {
+      if ( isStopped() ) {
+        // Stopping the step cancelled a wait, nothing went wrong.
+        return false;
+      }
+      Thread.currentThread().interrupt();
+      logError( BaseMessages.getString( PKG, "DropboxListFolder.Log.Error.Interrupted" ) );
+      setErrors( 1 );
+      stopAll();
+      return false;
+    }
+
+    if ( checkFeedback( getLinesRead() ) ) {
+      logBasic( BaseMessages.getString( PKG, "DropboxListFolder.Log.LineNumber" ) + getLinesRead() );
+    }
+    return true;
+  }
+
+  @Override
+  public void stopRunning( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    super.stopRunning( smi, sdi );
+    // Called from the thread stopping the transformation, after the step is flagged as stopped: a pending wait for
+    // changes and the backoffs of listing calls end right away.
+    DropboxListFolderData data = (DropboxListFolderData) sdi;
+    Future<?> longpoll = data.longpoll;
+    if ( longpoll != null ) {
+      longpoll.cancel( true );
+    }
+    if ( data.retryPolicy != null ) {
+      data.retryPolicy.cancelRetries();
+    }
+  }
+
+  @Override
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    data = (DropboxListFolderData) sdi;
+    if ( data.prefetcher != null ) {
+      data.prefetcher.shutdownNow();
+      data.prefetcher = null;
+    }
+    if ( data.throttle != null ) {
+      data.throttle.close();
+      data.throttle = null;
+    }
+    super.dispose( smi, sdi );
+  }
+
+  /**
+   * Lists a Dropbox folder, emitting the entries of each page before the following page is needed.
+   * <p>
+   * In incremental mode, a folder listed by a previous run is continued from the cursor that run reached, so only
+   * the entries changed since are emitted.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param accessToken access token of the client, identifies the cursors of its listings
+   * @param folder Dropbox folder to list, empty or "/" for the root folder
+   * @param r input row, copied into every output row
+   */
+  private void listFolder( DbxClientV2 dbxClient, String accessToken, String folder, Object[] r )
+    throws DbxException, InterruptedException, IOException, KettleException {
+    // The root folder is known to the API as the empty path.
+    String path = Utils.isEmpty( folder ) || "/".equals( folder ) ? "" : folder;
+
+    String key = null;
+    ListFolderResult page = null;
+    if ( data.cursors != null ) {
+      key = CursorStore.key( accessToken, path, meta.isRecursive() );
+      String cursor = data.cursors.find( key );
+      if ( cursor != null ) {
+        if ( meta.isLongpoll() && !waitForChanges( accessToken, path, cursor ) ) {
+          // Nothing changed before the wait timed out, or the step was stopped: the cursor stays where it was.
+          return;
+        }
+        page = continueListing( dbxClient, path, cursor );
+      }
+    }
+    if ( page == null ) {
+      log.logDetailed( BaseMessages.getString( PKG, "DropboxListFolder.log.Listing", displayPath( path ) ) );
+      DbxUserListFolderBuilder builder =
+        dbxClient.files().listFolderBuilder( path ).withRecursive( meta.isRecursive() );
+      if ( meta.getPageSize() > 0 ) {
+        builder = builder.withLimit( (long) Math.min( meta.getPageSize(), data.MAX_PAGE_SIZE ) );
+      }
+      DbxUserListFolderBuilder request = builder;
+      page = fetchPage( dbxClient, request::start );
+    }
+
+    String cursor = emitPages( dbxClient, page, r );
+    if ( key != null && cursor != null ) {
+      // Only a listing emitted to the end moves the cursor forward.
+      data.cursors.record( key, cursor );
+    }
+  }
+
+  /**
+   * Continues a listing from the cursor reached by a previous run.
+   *
+   * @return the first page of changes, or null when the cursor expired
+   */
+  private ListFolderResult continueListing( DbxClientV2 dbxClient, String path, String cursor )
+    throws DbxException, InterruptedException {
+    try {
+      log.logDetailed( BaseMessages.getString( PKG, "DropboxListFolder.log.Continuing", displayPath( path ) ) );
+      return fetchPage( dbxClient, () -> dbxClient.files().listFolderContinue( cursor ) );
+    } catch ( ListFolderContinueErrorException ex ) {
+      if ( !ex.errorValue.isReset() ) {
+        throw ex;
+      }
+    }
+    // Dropbox invalidates cursors from time to time, the folder has to be listed again.
+    logBasic( BaseMessages.getString( PKG, "DropboxListFolder.log.CursorReset", displayPath( path ) ) );
+    return null;
+  }
+
+  /**
+   * Waits once for the listing behind the cursor to have changes to report, for at most the longpoll timeout. The
+   * call runs on the prefetch thread, so stopping the step cancels it right away.
+   *
+   * @return true when there are changes, or when the cursor expired and the listing has to be continued to find it
+   *         out; false when nothing changed before the timeout or the step was stopped first
+   */
+  private boolean waitForChanges( String accessToken, String path, String cursor )
+    throws DbxException, InterruptedException {
+    // Longpoll calls outlive the read timeout of the regular clients.
+    DbxClientV2 longpollClient = DropboxClientPool.getInstance().getLongpollClient( accessToken );
+    long timeout =
+      Math.max( data.MIN_LONGPOLL_TIMEOUT, Math.min( meta.getLongpollTimeout(), data.MAX_LONGPOLL_TIMEOUT ) );
+    log.logDetailed( BaseMessages.getString( PKG, "DropboxListFolder.log.WaitingForChanges", displayPath( path ) ) );
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( longpollClient );
+    while ( attempts.next() ) {
+      ListFolderLongpollResult result;
+      Future<ListFolderLongpollResult> poll =
+        data.prefetcher.submit( () -> longpollClient.files().listFolderLongpoll( cursor, timeout ) );
+      data.longpoll = poll;
+      try {
+        // Checked once the call is visible to stopRunning, so either of them cancels it.
+        if ( isStopped() ) {
+          return false;
+        }
+        result = poll.get();
+      } catch ( CancellationException ex ) {
+        return false;
+      } catch ( ExecutionException ex ) {
+        Throwable cause = ex.getCause();
+        if ( cause instanceof ListFolderLongpollErrorException
+          && ( (ListFolderLongpollErrorException) cause ).errorValue == ListFolderLongpollError.RESET ) {
+          return true;
+        }
+        if ( RetryPolicy.isTransient( cause ) ) {
+          // Long held connections get dropped too, those are polled again after a backoff.
+          attempts.failed( (Exception) cause );
+          continue;
+        }
+        throw cause instanceof DbxException ? (DbxException) cause : new DbxException( cause.getMessage(), cause );
+      } finally {
+        data.longpoll = null;
+        poll.cancel( true );
+      }
+      attempts.succeeded();
+      if ( result.getBackoff() != null ) {
+        // Dropbox asks for a pause before this folder is polled again.
+        data.retryPolicy.sleep( TimeUnit.SECONDS.toMillis( result.getBackoff() ) );
+      }
+      if ( !result.getChanges() ) {
+        log.logDetailed( BaseMessages.getString( PKG, "DropboxListFolder.log.NoChanges", displayPath( path ) ) );
+      }
+      return result.getChanges();
+    }
+    if ( attempts.outcome() == RetryPolicy.Outcome.INTERRUPTED ) {
+      return false;
+    }
+    throw attempts.gaveUp();
+  }
+
+  /**
+   * Emits the entries of a listing, page by page, fetching each page while the previous one is being emitted.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param page first page of the listing
+   * @param r input row, copied into every output row
+   * @return the cursor reached at the end of the listing, or null if the step was stopped before
+   */
+  private String emitPages( DbxClientV2 dbxClient, ListFolderResult page, Object[] r )
+    throws DbxException, InterruptedException, KettleException {
+    String cursor = null;
+    while ( page != null ) {
+      cursor = page.getCursor();
+      Future<ListFolderResult> next = null;
+      if ( page.getHasMore() ) {
+        String pageCursor = cursor;
+        next = data.prefetcher.submit(
+          () -> fetchPage( dbxClient, () -> dbxClient.files().listFolderContinue( pageCursor ) ) );
+      }
+      try {
+        for ( Metadata entry : page.getEntries() ) {
+          if ( isStopped() ) {
+            return null;
+          }
+          if ( isEmitted( entry ) ) {
+            putRow( data.outputRowMeta, entryRow( r, entry ) );
+          }
+        }
+        page = next != null ? next.get() : null;
+        next = null;
+      } catch ( ExecutionException ex ) {
+        throw ex.getCause() instanceof DbxException
+          ? (DbxException) ex.getCause() : new DbxException( ex.getCause().getMessage(), ex.getCause() );
+      } finally {
+        if ( next != null ) {
+          next.cancel( true );
+        }
+      }
+    }
+    return cursor;
+  }
+
+  private String displayPath( String path ) {
+    return path.isEmpty() ? "/" : path;
+  }
+
+  private boolean isEmitted( Metadata entry ) {
+    return entry instanceof FileMetadata
+      || ( entry instanceof FolderMetadata && meta.isIncludeFolders() )
+      || ( entry instanceof DeletedMetadata && meta.isIncludeDeleted() );
+  }
+
+  /**
+   * Calls the listing endpoint, retrying on transient errors as the retry policy allows.
+   */
+  private ListFolderResult fetchPage( DbxClientV2 dbxClient, RetryPolicy.DropboxCall<ListFolderResult> request )
+    throws DbxException, InterruptedException {
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    while ( attempts.next() ) {
+      try {
+        ListFolderResult page = request.call();
+        attempts.succeeded();
+        return page;
+      } catch ( RetryException | NetworkIOException | ServerException ex ) {
+        attempts.failed( ex );
+      }
+    }
+    if ( attempts.outcome() == RetryPolicy.Outcome.INTERRUPTED ) {
+      throw new InterruptedException( "Interrupted while listing a folder" );
+    }
+    throw attempts.gaveUp();
+  }
+
+  private Object[] entryRow( Object[] r, Metadata entry ) {
+    // Every entry gets its own copy, the input row is shared by the whole listing.
+    Object[] outputRow = RowDataUtil.createResizedCopy( r, data.outputRowMeta.size() );
+    setField( outputRow, data.pathIdx, entry.getPathDisplay() );
+    setField( outputRow, data.nameIdx, entry.getName() );
+    if ( entry instanceof FileMetadata ) {
+      FileMetadata file = (FileMetadata) entry;
+      setField( outputRow, data.typeIdx, data.TYPE_FILE );
+      setField( outputRow, data.sizeIdx, file.getSize() );
+      setField( outputRow, data.revIdx, file.getRev() );
+      setField( outputRow, data.modifiedIdx, file.getServerModified() );
+      setField( outputRow, data.contentHashIdx, file.getContentHash() );
+    } else if ( entry instanceof FolderMetadata ) {
+      setField( outputRow, data.typeIdx, data.TYPE_FOLDER );
+    } else {
+      setField( outputRow, data.typeIdx, data.TYPE_DELETED );
+    }
+    return outputRow;
+  }
+
+  private void setField( Object[] row, int idx, Object value ) {
+    if ( idx >= 0 ) {
+      row[idx] = value;
+    }
+  }
+
+  private int indexOfOptionalField( String fieldName ) {
+    return Utils.isEmpty( fieldName ) ? -1 : data.outputRowMeta.indexOfValue( fieldName );
+  }
+
+  /**
+   * Sends a row that couldn't be listed to the error hop, or stops the transformation when there is none.
+   */
+  private boolean rejectRow( Object[] r, String message ) throws KettleException {
+    if ( getStepMeta().isDoingErrorHandling() ) {
+      putError( getInputRowMeta(), r, 1, message, meta.getFolderField(), "DBXLIST001" );
+      return true;
+    }
+    logError( message );
+    setErrors( 1 );
+    stopAll();
+    return false;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxlistfolder;
+
+import com.dropbox.core.v2.files.ListFolderLongpollResult;
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferThrottle;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.step.BaseStepData;
+import org.pentaho.di.trans.step.StepDataInterface;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class DropboxListFolderData extends BaseStepData implements StepDataInterface {
+  int accessTokenIdx;
+  int folderIdx;
+
+  // Positions of the fields added to the output row, -1 when not added.
+  int pathIdx = -1;
+  int nameIdx = -1;
+  int typeIdx = -1;
+  int sizeIdx = -1;
+  int revIdx = -1;
+  int modifiedIdx = -1;
+  int contentHashIdx = -1;
+
+  RowMetaInterface outputRowMeta;
+
+  // Fetches the next page of a listing while the current one is being emitted.
+  ExecutorService prefetcher;
+
+  // Pending wait for changes, cancelled when the step is stopped.
+  volatile Future<ListFolderLongpollResult> longpoll;
+
+  // Limits this step put on the JVM-wide transfer throttle, released on dispose.
+  TransferThrottle.Registration throttle;
+
+  // How listing calls failing on transient errors are retried.
+  RetryPolicy retryPolicy;
+
+  // Cursors reached by previous runs, null when folders are listed in full.
+  CursorStore cursors;
+
+  // Dropbox accepts page sizes between 1 and 2000 entries.
+  static final int MAX_PAGE_SIZE = 2000;
+
+  static final String TYPE_FILE = "file";
+  static final String TYPE_FOLDER = "folder";
+  static final String TYPE_DELETED = "deleted";
+
+  // Dropbox accepts longpoll timeouts between 30 and 480 seconds.
+  static final int MIN_LONGPOLL_TIMEOUT = 30;
+  static final int MAX_LONGPOLL_TIMEOUT = 480;
+
+  /**
+   * 
+   */
+  public DropboxListFolderData() {
+    super();
+  }
+}
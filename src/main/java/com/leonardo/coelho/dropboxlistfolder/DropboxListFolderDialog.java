@@ -0,0 +1,760 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxlistfolder;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
+import org.eclipse.swt.custom.ScrolledComposite;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.ShellAdapter;
+import org.eclipse.swt.events.ShellEvent;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Group;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.di.trans.step.StepDialogInterface;
+import org.pentaho.di.ui.core.FormDataBuilder;
+import org.pentaho.di.ui.trans.step.BaseStepDialog;
+
+import java.util.Arrays;
+
+public class DropboxListFolderDialog extends BaseStepDialog implements StepDialogInterface {
+  private static Class<?> PKG = DropboxListFolderMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+  private static final int MARGIN_SIZE = 15;
+  private static final int ELEMENT_SPACING = Const.MARGIN;
+
+  private DropboxListFolderMeta meta;
+
+  private ScrolledComposite scrolledComposite;
+  private Composite contentComposite;
+
+  // Step name.
+  private Label wStepNameLabel;
+  private Text wStepNameField;
+
+  // Group listing content.
+  private Group listingGroup;
+
+  // OAuth access token.
+  private Label wAccessTokenLabel;
+  private CCombo wAccessTokenField;
+
+  // Folders to be listed.
+  private Label wFolderLabel;
+  private CCombo wFolderField;
+
+  // List the content of sub-folders too.
+  private Label wRecursiveLabel;
+  private Button wRecursiveButton;
+
+  // Emit a row for folders as well as files.
+  private Label wIncludeFoldersLabel;
+  private Button wIncludeFoldersButton;
+
+  // Entries returned by each listing call.
+  private Label wPageSizeLabel;
+  private Text wPageSizeField;
+
+  // Only emit what changed since the previous run.
+  private Label wIncrementalLabel;
+  private Button wIncrementalButton;
+  private Label wCursorFileLabel;
+  private Text wCursorFileField;
+  private Label wIncludeDeletedLabel;
+  private Button wIncludeDeletedButton;
+
+  // Wait for changes when there are none yet.
+  private Label wLongpollLabel;
+  private Button wLongpollButton;
+  private Label wLongpollTimeoutLabel;
+  private Text wLongpollTimeoutField;
+
+  // Limit shared with the other Dropbox steps of the JVM.
+  private Label wTokenRequestLimitLabel;
+  private Text wTokenRequestLimitField;
+
+  // Group output fields content.
+  private Group outputGroup;
+
+  // Fields receiving the entry metadata.
+  private Label wPathFieldLabel;
+  private Text wPathFieldField;
+  private Label wNameFieldLabel;
+  private Text wNameFieldField;
+  private Label wTypeFieldLabel;
+  private Text wTypeFieldField;
+  private Label wSizeFieldLabel;
+  private Text wSizeFieldField;
+  private Label wRevFieldLabel;
+  private Text wRevFieldField;
+  private Label wModifiedFieldLabel;
+  private Text wModifiedFieldField;
+  private Label wContentHashFieldLabel;
+  private Text wContentHashFieldField;
+
+  // Footer Buttons
+  private Button wCancel;
+  private Button wOK;
+
+  // Listeners
+  private ModifyListener lsMod;
+  private Listener lsCancel;
+  private Listener lsOK;
+  private SelectionAdapter lsDef;
+  private boolean changed;
+
+  public DropboxListFolderDialog( Shell parent, Object in, TransMeta tr, String sname ) {
+    super( parent, (BaseStepMeta) in, tr, sname );
+    meta = (DropboxListFolderMeta) in;
+  }
+
+  public String open() {
+    // Set up window
+    Shell parent = getParent();
+    Display display = parent.getDisplay();
+
+    shell = new Shell( parent, SWT.DIALOG_TRIM | SWT.RESIZE | SWT.MIN | SWT.MAX );
+    props.setLook( shell );
+    setShellImage( shell, meta );
+    int middle = props.getMiddlePct();
+
+    lsMod = new ModifyListener() {
+      public void modifyText( ModifyEvent e ) {
+        meta.setChanged();
+      }
+    };
+    changed = meta.hasChanged();
+
+    // 15 pixel margins
+    FormLayout formLayout = new FormLayout();
+    formLayout.marginLeft = MARGIN_SIZE;
+    formLayout.marginHeight = MARGIN_SIZE;
+    shell.setLayout( formLayout );
+    shell.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Shell.Title" ) );
+
+    // Build a scrolling composite and a composite for holding all content
+    scrolledComposite = new ScrolledComposite( shell, SWT.V_SCROLL );
+    contentComposite = new Composite( scrolledComposite, SWT.NONE );
+    FormLayout contentLayout = new FormLayout();
+    contentLayout.marginRight = MARGIN_SIZE;
+    contentComposite.setLayout( contentLayout );
+    FormData compositeLayoutData = new FormDataBuilder().fullSize()
+      .result();
+    contentComposite.setLayoutData( compositeLayoutData );
+    props.setLook( contentComposite );
+
+    // Step name label and text field.
+    wStepNameLabel = new Label( contentComposite, SWT.RIGHT );
+    wStepNameLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Stepname.Label" ) );
+    props.setLook( wStepNameLabel );
+    FormData fdStepNameLabel = new FormDataBuilder().left()
+      .top()
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wStepNameLabel.setLayoutData( fdStepNameLabel );
+
+    wStepNameField = new Text( contentComposite, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wStepNameField.setText( stepname );
+    props.setLook( wStepNameField );
+    wStepNameField.addModifyListener( lsMod );
+    FormData fdStepName = new FormDataBuilder().left( middle, 0 )
+      .top( )
+      .right( 100, 0 )
+      .result();
+    wStepNameField.setLayoutData( fdStepName );
+
+    // Spacer between entry info and content.
+    Label topSpacer = new Label( contentComposite, SWT.HORIZONTAL | SWT.SEPARATOR );
+    FormData fdSpacer = new FormDataBuilder().fullWidth()
+      .top( wStepNameField, MARGIN_SIZE )
+      .result();
+    topSpacer.setLayoutData( fdSpacer );
+
+    // Group for Listing Fields.
+    listingGroup = new Group( contentComposite, SWT.SHADOW_ETCHED_IN );
+    listingGroup.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Listing.GroupText" ) );
+    FormLayout groupLayout = new FormLayout();
+    groupLayout.marginWidth = MARGIN_SIZE;
+    groupLayout.marginHeight = MARGIN_SIZE;
+    listingGroup.setLayout( groupLayout );
+    FormData groupLayoutData = new FormDataBuilder().fullWidth()
+      .top( topSpacer, MARGIN_SIZE )
+      .result();
+    listingGroup.setLayoutData( groupLayoutData );
+    props.setLook( listingGroup );
+
+    // Access Token label/field
+    wAccessTokenLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wAccessTokenLabel );
+    wAccessTokenLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.AccessToken.Label" ) );
+    FormData fdlAccessToken = new FormDataBuilder().left()
+      .top()
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wAccessTokenLabel.setLayoutData( fdlAccessToken );
+
+    wAccessTokenField = new CCombo( listingGroup, SWT.BORDER );
+    props.setLook( wAccessTokenField );
+    wAccessTokenField.addModifyListener( lsMod );
+    FormData fdAccessToken = new FormDataBuilder().left( middle, 0 )
+      .top()
+      .right( 100, 0 )
+      .result();
+    wAccessTokenField.setLayoutData( fdAccessToken );
+
+    // Folder label/field
+    wFolderLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wFolderLabel );
+    wFolderLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Folder.Label" ) );
+    FormData fdlFolder = new FormDataBuilder().left()
+      .top( wAccessTokenField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wFolderLabel.setLayoutData( fdlFolder );
+
+    wFolderField = new CCombo( listingGroup, SWT.BORDER );
+    props.setLook( wFolderField );
+    wFolderField.addModifyListener( lsMod );
+    FormData fdFolder = new FormDataBuilder().left( middle, 0 )
+      .top( wAccessTokenField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wFolderField.setLayoutData( fdFolder );
+
+    // Recursive label/checkbox
+    wRecursiveLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wRecursiveLabel );
+    wRecursiveLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Recursive.Label" ) );
+    FormData fdlRecursive = new FormDataBuilder().left()
+      .top( wFolderField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wRecursiveLabel.setLayoutData( fdlRecursive );
+
+    wRecursiveButton = new Button( listingGroup, SWT.CHECK );
+    props.setLook( wRecursiveButton );
+    wRecursiveButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdRecursive = new FormDataBuilder().left( middle, 0 )
+      .top( wFolderField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wRecursiveButton.setLayoutData( fdRecursive );
+
+    // Include Folders label/checkbox
+    wIncludeFoldersLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wIncludeFoldersLabel );
+    wIncludeFoldersLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.IncludeFolders.Label" ) );
+    FormData fdlIncludeFolders = new FormDataBuilder().left()
+      .top( wRecursiveButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wIncludeFoldersLabel.setLayoutData( fdlIncludeFolders );
+
+    wIncludeFoldersButton = new Button( listingGroup, SWT.CHECK );
+    props.setLook( wIncludeFoldersButton );
+    wIncludeFoldersButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdIncludeFolders = new FormDataBuilder().left( middle, 0 )
+      .top( wRecursiveButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wIncludeFoldersButton.setLayoutData( fdIncludeFolders );
+
+    // Page Size label/field
+    wPageSizeLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wPageSizeLabel );
+    wPageSizeLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.PageSize.Label" ) );
+    FormData fdlPageSize = new FormDataBuilder().left()
+      .top( wIncludeFoldersButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wPageSizeLabel.setLayoutData( fdlPageSize );
+
+    wPageSizeField = new Text( listingGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wPageSizeField );
+    wPageSizeField.addModifyListener( lsMod );
+    FormData fdPageSize = new FormDataBuilder().left( middle, 0 )
+      .top( wIncludeFoldersButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wPageSizeField.setLayoutData( fdPageSize );
+
+    // Incremental label/checkbox
+    wIncrementalLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wIncrementalLabel );
+    wIncrementalLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Incremental.Label" ) );
+    FormData fdlIncremental = new FormDataBuilder().left()
+      .top( wPageSizeField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wIncrementalLabel.setLayoutData( fdlIncremental );
+
+    wIncrementalButton = new Button( listingGroup, SWT.CHECK );
+    props.setLook( wIncrementalButton );
+    wIncrementalButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setIncrementalEnabled();
+      }
+    } );
+    FormData fdIncremental = new FormDataBuilder().left( middle, 0 )
+      .top( wPageSizeField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wIncrementalButton.setLayoutData( fdIncremental );
+
+    // Cursor File label/field
+    wCursorFileLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wCursorFileLabel );
+    wCursorFileLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.CursorFile.Label" ) );
+    FormData fdlCursorFile = new FormDataBuilder().left()
+      .top( wIncrementalButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wCursorFileLabel.setLayoutData( fdlCursorFile );
+
+    wCursorFileField = new Text( listingGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCursorFileField );
+    wCursorFileField.addModifyListener( lsMod );
+    FormData fdCursorFile = new FormDataBuilder().left( middle, 0 )
+      .top( wIncrementalButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wCursorFileField.setLayoutData( fdCursorFile );
+
+    // Include Deleted label/checkbox
+    wIncludeDeletedLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wIncludeDeletedLabel );
+    wIncludeDeletedLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.IncludeDeleted.Label" ) );
+    FormData fdlIncludeDeleted = new FormDataBuilder().left()
+      .top( wCursorFileField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wIncludeDeletedLabel.setLayoutData( fdlIncludeDeleted );
+
+    wIncludeDeletedButton = new Button( listingGroup, SWT.CHECK );
+    props.setLook( wIncludeDeletedButton );
+    wIncludeDeletedButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdIncludeDeleted = new FormDataBuilder().left( middle, 0 )
+      .top( wCursorFileField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wIncludeDeletedButton.setLayoutData( fdIncludeDeleted );
+
+    // Longpoll label/checkbox
+    wLongpollLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wLongpollLabel );
+    wLongpollLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Longpoll.Label" ) );
+    FormData fdlLongpoll = new FormDataBuilder().left()
+      .top( wIncludeDeletedButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wLongpollLabel.setLayoutData( fdlLongpoll );
+
+    wLongpollButton = new Button( listingGroup, SWT.CHECK );
+    props.setLook( wLongpollButton );
+    wLongpollButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setIncrementalEnabled();
+      }
+    } );
+    FormData fdLongpoll = new FormDataBuilder().left( middle, 0 )
+      .top( wIncludeDeletedButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wLongpollButton.setLayoutData( fdLongpoll );
+
+    // Longpoll Timeout label/field
+    wLongpollTimeoutLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wLongpollTimeoutLabel );
+    wLongpollTimeoutLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.LongpollTimeout.Label" ) );
+    FormData fdlLongpollTimeout = new FormDataBuilder().left()
+      .top( wLongpollButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wLongpollTimeoutLabel.setLayoutData( fdlLongpollTimeout );
+
+    wLongpollTimeoutField = new Text( listingGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wLongpollTimeoutField );
+    wLongpollTimeoutField.addModifyListener( lsMod );
+    FormData fdLongpollTimeout = new FormDataBuilder().left( middle, 0 )
+      .top( wLongpollButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wLongpollTimeoutField.setLayoutData( fdLongpollTimeout );
+
+    // Token Request Limit label/field
+    wTokenRequestLimitLabel = new Label( listingGroup, SWT.RIGHT );
+    props.setLook( wTokenRequestLimitLabel );
+    wTokenRequestLimitLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.TokenRequestLimit.Label" ) );
+    FormData fdlTokenRequestLimit = new FormDataBuilder().left()
+      .top( wLongpollTimeoutField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTokenRequestLimitLabel.setLayoutData( fdlTokenRequestLimit );
+
+    wTokenRequestLimitField = new Text( listingGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTokenRequestLimitField );
+    wTokenRequestLimitField.addModifyListener( lsMod );
+    FormData fdTokenRequestLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wLongpollTimeoutField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTokenRequestLimitField.setLayoutData( fdTokenRequestLimit );
+
+    // Group for Output Fields.
+    outputGroup = new Group( contentComposite, SWT.SHADOW_ETCHED_IN );
+    outputGroup.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.Output.GroupText" ) );
+    FormLayout outputGroupLayout = new FormLayout();
+    outputGroupLayout.marginWidth = MARGIN_SIZE;
+    outputGroupLayout.marginHeight = MARGIN_SIZE;
+    outputGroup.setLayout( outputGroupLayout );
+    FormData outputGroupLayoutData = new FormDataBuilder().fullWidth()
+      .top( listingGroup, MARGIN_SIZE )
+      .result();
+    outputGroup.setLayoutData( outputGroupLayoutData );
+    props.setLook( outputGroup );
+
+    // Path Field label/field
+    wPathFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wPathFieldLabel );
+    wPathFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.PathField.Label" ) );
+    FormData fdlPathField = new FormDataBuilder().left()
+      .top()
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wPathFieldLabel.setLayoutData( fdlPathField );
+
+    wPathFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wPathFieldField );
+    wPathFieldField.addModifyListener( lsMod );
+    FormData fdPathField = new FormDataBuilder().left( middle, 0 )
+      .top()
+      .right( 100, 0 )
+      .result();
+    wPathFieldField.setLayoutData( fdPathField );
+
+    // Name Field label/field
+    wNameFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wNameFieldLabel );
+    wNameFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.NameField.Label" ) );
+    FormData fdlNameField = new FormDataBuilder().left()
+      .top( wPathFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wNameFieldLabel.setLayoutData( fdlNameField );
+
+    wNameFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wNameFieldField );
+    wNameFieldField.addModifyListener( lsMod );
+    FormData fdNameField = new FormDataBuilder().left( middle, 0 )
+      .top( wPathFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wNameFieldField.setLayoutData( fdNameField );
+
+    // Type Field label/field
+    wTypeFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wTypeFieldLabel );
+    wTypeFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.TypeField.Label" ) );
+    FormData fdlTypeField = new FormDataBuilder().left()
+      .top( wNameFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTypeFieldLabel.setLayoutData( fdlTypeField );
+
+    wTypeFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTypeFieldField );
+    wTypeFieldField.addModifyListener( lsMod );
+    FormData fdTypeField = new FormDataBuilder().left( middle, 0 )
+      .top( wNameFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTypeFieldField.setLayoutData( fdTypeField );
+
+    // Size Field label/field
+    wSizeFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wSizeFieldLabel );
+    wSizeFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.SizeField.Label" ) );
+    FormData fdlSizeField = new FormDataBuilder().left()
+      .top( wTypeFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSizeFieldLabel.setLayoutData( fdlSizeField );
+
+    wSizeFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSizeFieldField );
+    wSizeFieldField.addModifyListener( lsMod );
+    FormData fdSizeField = new FormDataBuilder().left( middle, 0 )
+      .top( wTypeFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSizeFieldField.setLayoutData( fdSizeField );
+
+    // Rev Field label/field
+    wRevFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wRevFieldLabel );
+    wRevFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.RevField.Label" ) );
+    FormData fdlRevField = new FormDataBuilder().left()
+      .top( wSizeFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wRevFieldLabel.setLayoutData( fdlRevField );
+
+    wRevFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wRevFieldField );
+    wRevFieldField.addModifyListener( lsMod );
+    FormData fdRevField = new FormDataBuilder().left( middle, 0 )
+      .top( wSizeFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wRevFieldField.setLayoutData( fdRevField );
+
+    // Modified Field label/field
+    wModifiedFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wModifiedFieldLabel );
+    wModifiedFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.ModifiedField.Label" ) );
+    FormData fdlModifiedField = new FormDataBuilder().left()
+      .top( wRevFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wModifiedFieldLabel.setLayoutData( fdlModifiedField );
+
+    wModifiedFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wModifiedFieldField );
+    wModifiedFieldField.addModifyListener( lsMod );
+    FormData fdModifiedField = new FormDataBuilder().left( middle, 0 )
+      .top( wRevFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wModifiedFieldField.setLayoutData( fdModifiedField );
+
+    // Content Hash Field label/field
+    wContentHashFieldLabel = new Label( outputGroup, SWT.RIGHT );
+    props.setLook( wContentHashFieldLabel );
+    wContentHashFieldLabel.setText( BaseMessages.getString( PKG, "DropboxListFolderDialog.ContentHashField.Label" ) );
+    FormData fdlContentHashField = new FormDataBuilder().left()
+      .top( wModifiedFieldField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wContentHashFieldLabel.setLayoutData( fdlContentHashField );
+
+    wContentHashFieldField = new Text( outputGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wContentHashFieldField );
+    wContentHashFieldField.addModifyListener( lsMod );
+    FormData fdContentHashField = new FormDataBuilder().left( middle, 0 )
+      .top( wModifiedFieldField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wContentHashFieldField.setLayoutData( fdContentHashField );
+
+    // Cancel, action and OK buttons for the bottom of the window.
+    wCancel = new Button( shell, SWT.PUSH );
+    wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
+    FormData fdCancel = new FormDataBuilder().right( 100, -MARGIN_SIZE )
+      .bottom()
+      .result();
+    wCancel.setLayoutData( fdCancel );
+
+    wOK = new Button( shell, SWT.PUSH );
+    wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
+    FormData fdOk = new FormDataBuilder().right( wCancel, -ELEMENT_SPACING )
+      .bottom()
+      .result();
+    wOK.setLayoutData( fdOk );
+
+    // Space between bottom buttons and and group content.
+    Label bottomSpacer = new Label( shell, SWT.HORIZONTAL | SWT.SEPARATOR );
+    FormData fdhSpacer = new FormDataBuilder().left()
+      .right( 100, -MARGIN_SIZE )
+      .bottom( wCancel, -MARGIN_SIZE )
+      .result();
+    bottomSpacer.setLayoutData( fdhSpacer );
+
+    // Add everything to the scrolling composite
+    scrolledComposite.setContent( contentComposite );
+    scrolledComposite.setExpandVertical( true );
+    scrolledComposite.setExpandHorizontal( true );
+    scrolledComposite.setMinSize( contentComposite.computeSize( SWT.DEFAULT, SWT.DEFAULT ) );
+
+    scrolledComposite.setLayout( new FormLayout() );
+    FormData fdScrolledComposite = new FormDataBuilder().fullWidth()
+      .top()
+      .bottom( bottomSpacer, -MARGIN_SIZE )
+      .result();
+    scrolledComposite.setLayoutData( fdScrolledComposite );
+    props.setLook( scrolledComposite );
+
+    // Listeners
+    lsCancel = new Listener() {
+      public void handleEvent( Event e ) {
+        cancel();
+      }
+    };
+    lsOK = new Listener() {
+      public void handleEvent( Event e ) {
+        ok();
+      }
+    };
+
+    wOK.addListener( SWT.Selection, lsOK );
+    wCancel.addListener( SWT.Selection, lsCancel );
+
+    lsDef = new SelectionAdapter() {
+      public void widgetDefaultSelected( SelectionEvent e ) {
+        ok();
+      }
+    };
+    wStepNameField.addSelectionListener( lsDef );
+
+    shell.addShellListener( new ShellAdapter() {
+      public void shellClosed( ShellEvent e ) {
+        cancel();
+      }
+    } );
+
+    // Show shell
+    setSize();
+
+    // Populate Window.
+    getData();
+    meta.setChanged( changed );
+
+    shell.open();
+    while ( !shell.isDisposed() ) {
+      if ( !display.readAndDispatch() ) {
+        display.sleep();
+      }
+    }
+    return stepname;
+  }
+
+  /**
+   * Copy information from the meta-data input to the dialog fields.
+   */
+  public void getData() {
+    // Add previous fields to listing combo box options.
+    try {
+      String[] prevFields = transMeta.getPrevStepFields( stepname ).getFieldNames();
+      Arrays.stream( prevFields ).forEach( field -> {
+        wAccessTokenField.add( field );
+        wFolderField.add( field );
+      } );
+    } catch ( KettleStepException e ) {
+      e.printStackTrace();
+    }
+
+    // Get listing fields values.
+    wAccessTokenField.setText( Const.NVL( meta.getAccessTokenField(), "" ) );
+    wFolderField.setText( Const.NVL( meta.getFolderField(), "" ) );
+    wRecursiveButton.setSelection( meta.isRecursive() );
+    wIncludeFoldersButton.setSelection( meta.isIncludeFolders() );
+    wPageSizeField.setText( String.valueOf( meta.getPageSize() ) );
+    wIncrementalButton.setSelection( meta.isIncremental() );
+    wCursorFileField.setText( Const.NVL( meta.getCursorFile(), "" ) );
+    wIncludeDeletedButton.setSelection( meta.isIncludeDeleted() );
+    wLongpollButton.setSelection( meta.isLongpoll() );
+    wLongpollTimeoutField.setText( String.valueOf( meta.getLongpollTimeout() ) );
+    wTokenRequestLimitField.setText( String.valueOf( meta.getTokenRequestLimit() ) );
+    setIncrementalEnabled();
+
+    // Get output fields values.
+    wPathFieldField.setText( Const.NVL( meta.getPathField(), "" ) );
+    wNameFieldField.setText( Const.NVL( meta.getNameField(), "" ) );
+    wTypeFieldField.setText( Const.NVL( meta.getTypeField(), "" ) );
+    wSizeFieldField.setText( Const.NVL( meta.getSizeField(), "" ) );
+    wRevFieldField.setText( Const.NVL( meta.getRevField(), "" ) );
+    wModifiedFieldField.setText( Const.NVL( meta.getModifiedField(), "" ) );
+    wContentHashFieldField.setText( Const.NVL( meta.getContentHashField(), "" ) );
+  }
+
+  /**
+   * Save information from dialog fields to the meta-data input.
+   */
+  private void getMeta( DropboxListFolderMeta meta ) {
+    // Set listing fields.
+    meta.setAccessTokenField( wAccessTokenField.getText() );
+    meta.setFolderField( wFolderField.getText() );
+    meta.setRecursive( wRecursiveButton.getSelection() );
+    meta.setIncludeFolders( wIncludeFoldersButton.getSelection() );
+    meta.setPageSize( Const.toInt( wPageSizeField.getText(), 2000 ) );
+    meta.setIncremental( wIncrementalButton.getSelection() );
+    meta.setCursorFile( wCursorFileField.getText() );
+    meta.setIncludeDeleted( wIncludeDeletedButton.getSelection() );
+    meta.setLongpoll( wLongpollButton.getSelection() );
+    meta.setLongpollTimeout( Const.toInt( wLongpollTimeoutField.getText(), 30 ) );
+    meta.setTokenRequestLimit( Const.toInt( wTokenRequestLimitField.getText(), 0 ) );
+
+    // Set output fields.
+    meta.setPathField( wPathFieldField.getText() );
+    meta.setNameField( wNameFieldField.getText() );
+    meta.setTypeField( wTypeFieldField.getText() );
+    meta.setSizeField( wSizeFieldField.getText() );
+    meta.setRevField( wRevFieldField.getText() );
+    meta.setModifiedField( wModifiedFieldField.getText() );
+    meta.setContentHashField( wContentHashFieldField.getText() );
+  }
+
+  private void setIncrementalEnabled() {
+    boolean incremental = wIncrementalButton.getSelection();
+    wCursorFileField.setEnabled( incremental );
+    wIncludeDeletedButton.setEnabled( incremental );
+    wLongpollButton.setEnabled( incremental );
+    wLongpollTimeoutField.setEnabled( incremental && wLongpollButton.getSelection() );
+  }
+
+  private void cancel() {
+    meta.setChanged( changed );
+    dispose();
+  }
+
+  private void ok() {
+    getMeta( meta );
+    stepname = wStepNameField.getText();
+    dispose();
+  }
+}
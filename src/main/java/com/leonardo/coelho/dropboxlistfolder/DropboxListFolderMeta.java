@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxlistfolder;
+
+import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.CheckResult;
+import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.metastore.api.IMetaStore;
+import org.w3c.dom.Node;
+
+import java.util.List;
+
+/**
+ * Lists the content of Dropbox folders, one output row per entry.
+ */
+@Step( id = "DropboxListFolder", image = "DropboxListFolder.svg", name = "Dropbox List Folder",
+    description = "Lists the content of Dropbox folders.", categoryDescription = "Input" )
+public class DropboxListFolderMeta extends BaseStepMeta implements StepMetaInterface {
+  private static Class<?> PKG = DropboxListFolder.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+  private String accessTokenField;
+  private String folderField;
+  private boolean recursive;
+  private boolean includeFolders;
+  private int pageSize;
+
+  // Incremental listing.
+  private boolean incremental;
+  private String cursorFile;
+  private boolean includeDeleted;
+  private boolean longpoll;
+  private int longpollTimeout;
+
+  // Limit shared with the other Dropbox steps of the JVM, 0 for no limit.
+  private int tokenRequestLimit;
+
+  // Output fields.
+  private String pathField;
+  private String nameField;
+  private String typeField;
+  private String sizeField;
+  private String revField;
+  private String modifiedField;
+  private String contentHashField;
+
+  public DropboxListFolderMeta() {
+    super(); // allocate BaseStepMeta
+  }
+
+  public String getAccessTokenField() {
+    return accessTokenField;
+  }
+
+  public void setAccessTokenField( String accessTokenField ) {
+    this.accessTokenField = accessTokenField;
+  }
+
+  public String getFolderField() {
+    return folderField;
+  }
+
+  public void setFolderField( String folderField ) {
+    this.folderField = folderField;
+  }
+
+  public boolean isRecursive() {
+    return recursive;
+  }
+
+  public void setRecursive( boolean recursive ) {
+    this.recursive = recursive;
+  }
+
+  public boolean isIncludeFolders() {
+    return includeFolders;
+  }
+
+  public void setIncludeFolders( boolean includeFolders ) {
+    this.includeFolders = includeFolders;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize( int pageSize ) {
+    this.pageSize = pageSize;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental( boolean incremental ) {
+    this.incremental = incremental;
+  }
+
+  public String getCursorFile() {
+    return cursorFile;
+  }
+
+  public void setCursorFile( String cursorFile ) {
+    this.cursorFile = cursorFile;
+  }
+
+  public boolean isIncludeDeleted() {
+    return includeDeleted;
+  }
+
+  public void setIncludeDeleted( boolean includeDeleted ) {
+    this.includeDeleted = includeDeleted;
+  }
+
+  public boolean isLongpoll() {
+    return longpoll;
+  }
+
+  public void setLongpoll( boolean longpoll ) {
+    this.longpoll = longpoll;
+  }
+
+  public int getLongpollTimeout() {
+    return longpollTimeout;
+  }
+
+  public void setLongpollTimeout( int longpollTimeout ) {
+    this.longpollTimeout = longpollTimeout;
+  }
+
+  public int getTokenRequestLimit() {
+    return tokenRequestLimit;
+  }
+
+  public void setTokenRequestLimit( int tokenRequestLimit ) {
+    this.tokenRequestLimit = tokenRequestLimit;
+  }
+
+  public String getPathField() {
+    return pathField;
+  }
+
+  public void setPathField( String pathField ) {
+    this.pathField = pathField;
+  }
+
+  public String getNameField() {
+    return nameField;
+  }
+
+  public void setNameField( String nameField ) {
+    this.nameField = nameField;
+  }
+
+  public String getTypeField() {
+    return typeField;
+  }
+
+  public void setTypeField( String typeField ) {
+    this.typeField = typeField;
+  }
+
+  public String getSizeField() {
+    return sizeField;
+  }
+
+  public void setSizeField( String sizeField ) {
+    this.sizeField = sizeField;
+  }
+
+  public String getRevField() {
+    return revField;
+  }
+
+  public void setRevField( String revField ) {
+    this.revField = revField;
+  }
+
+  public String getModifiedField() {
+    return modifiedField;
+  }
+
+  public void setModifiedField( String modifiedField ) {
+    this.modifiedField = modifiedField;
+  }
+
+  public String getContentHashField() {
+    return contentHashField;
+  }
+
+  public void setContentHashField( String contentHashField ) {
+    this.contentHashField = contentHashField;
+  }
+
+  public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
+    readData( stepnode );
+  }
+
+  public Object clone() {
+    Object retval = super.clone();
+    return retval;
+  }
+
+  private void readData( Node stepnode ) {
+    accessTokenField = XMLHandler.getTagValue( stepnode, "accessTokenField" );
+    folderField = XMLHandler.getTagValue( stepnode, "folderField" );
+    recursive = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "recursive" ) );
+    includeFolders = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "includeFolders" ) );
+    pageSize = Const.toInt( XMLHandler.getTagValue( stepnode, "pageSize" ), 2000 );
+    incremental = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "incremental" ) );
+    cursorFile = XMLHandler.getTagValue( stepnode, "cursorFile" );
+    includeDeleted = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "includeDeleted" ) );
+    longpoll = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "longpoll" ) );
+    longpollTimeout = Const.toInt( XMLHandler.getTagValue( stepnode, "longpollTimeout" ), 30 );
+    tokenRequestLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "tokenRequestLimit" ), 0 );
+    pathField = XMLHandler.getTagValue( stepnode, "pathField" );
+    nameField = XMLHandler.getTagValue( stepnode, "nameField" );
+    typeField = XMLHandler.getTagValue( stepnode, "typeField" );
+    sizeField = XMLHandler.getTagValue( stepnode, "sizeField" );
+    revField = XMLHandler.getTagValue( stepnode, "revField" );
+    modifiedField = XMLHandler.getTagValue( stepnode, "modifiedField" );
+    contentHashField = XMLHandler.getTagValue( stepnode, "contentHashField" );
+  }
+
+  public void setDefault() {
+    recursive = false;
+    includeFolders = false;
+    pageSize = 2000;
+    incremental = false;
+    includeDeleted = false;
+    longpoll = false;
+    longpollTimeout = 30;
+    tokenRequestLimit = 0;
+    pathField = "path";
+    nameField = "name";
+    typeField = "type";
+    sizeField = "size";
+    revField = "rev";
+    modifiedField = "modified";
+  }
+
+  public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases )
+    throws KettleException {
+    try {
+      accessTokenField = rep.getStepAttributeString( id_step, "accessTokenField" );
+      folderField = rep.getStepAttributeString( id_step, "folderField" );
+      recursive = rep.getStepAttributeBoolean( id_step, "recursive" );
+      includeFolders = rep.getStepAttributeBoolean( id_step, "includeFolders" );
+      pageSize = (int) rep.getStepAttributeInteger( id_step, "pageSize" );
+      incremental = rep.getStepAttributeBoolean( id_step, "incremental" );
+      cursorFile = rep.getStepAttributeString( id_step, "cursorFile" );
+      includeDeleted = rep.getStepAttributeBoolean( id_step, "includeDeleted" );
+      longpoll = rep.getStepAttributeBoolean( id_step, "longpoll" );
+      longpollTimeout = (int) rep.getStepAttributeInteger( id_step, "longpollTimeout" );
+      tokenRequestLimit = (int) rep.getStepAttributeInteger( id_step, "tokenRequestLimit" );
+      pathField = rep.getStepAttributeString( id_step, "pathField" );
+      nameField = rep.getStepAttributeString( id_step, "nameField" );
+      typeField = rep.getStepAttributeString( id_step, "typeField" );
+      sizeField = rep.getStepAttributeString( id_step, "sizeField" );
+      revField = rep.getStepAttributeString( id_step, "revField" );
+      modifiedField = rep.getStepAttributeString( id_step, "modifiedField" );
+      contentHashField = rep.getStepAttributeString( id_step, "contentHashField" );
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString(
+        PKG, "DropboxListFolderMeta.Exception.UnexpectedErrorInReadingStepInfoFromRepository" ), e );
+    }
+  }
+
+  @Override
+  public String getXML() {
+    StringBuilder retval = new StringBuilder();
+    retval.append( "    " + XMLHandler.addTagValue( "accessTokenField", accessTokenField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "folderField", folderField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "recursive", recursive ) );
+    retval.append( "    " + XMLHandler.addTagValue( "includeFolders", includeFolders ) );
+    retval.append( "    " + XMLHandler.addTagValue( "pageSize", pageSize ) );
+    retval.append( "    " + XMLHandler.addTagValue( "incremental", incremental ) );
+    retval.append( "    " + XMLHandler.addTagValue( "cursorFile", cursorFile ) );
+    retval.append( "    " + XMLHandler.addTagValue( "includeDeleted", includeDeleted ) );
+    retval.append( "    " + XMLHandler.addTagValue( "longpoll", longpoll ) );
+    retval.append( "    " + XMLHandler.addTagValue( "longpollTimeout", longpollTimeout ) );
+    retval.append( "    " + XMLHandler.addTagValue( "tokenRequestLimit", tokenRequestLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "pathField", pathField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "nameField", nameField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "typeField", typeField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "sizeField", sizeField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "revField", revField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "modifiedField", modifiedField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "contentHashField", contentHashField ) );
+    return retval.toString();
+  }
+
+  public void saveRep( Repository rep, IMetaStore metaStore, ObjectId id_transformation, ObjectId id_step )
+    throws KettleException {
+    try {
+      rep.saveStepAttribute( id_transformation, id_step, "accessTokenField", accessTokenField );
+      rep.saveStepAttribute( id_transformation, id_step, "folderField", folderField );
+      rep.saveStepAttribute( id_transformation, id_step, "recursive", recursive );
+      rep.saveStepAttribute( id_transformation, id_step, "includeFolders", includeFolders );
+      rep.saveStepAttribute( id_transformation, id_step, "pageSize", pageSize );
+      rep.saveStepAttribute( id_transformation, id_step, "incremental", incremental );
+      rep.saveStepAttribute( id_transformation, id_step, "cursorFile", cursorFile );
+      rep.saveStepAttribute( id_transformation, id_step, "includeDeleted", includeDeleted );
+      rep.saveStepAttribute( id_transformation, id_step, "longpoll", longpoll );
+      rep.saveStepAttribute( id_transformation, id_step, "longpollTimeout", longpollTimeout );
+      rep.saveStepAttribute( id_transformation, id_step, "tokenRequestLimit", tokenRequestLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "pathField", pathField );
+      rep.saveStepAttribute( id_transformation, id_step, "nameField", nameField );
+      rep.saveStepAttribute( id_transformation, id_step, "typeField", typeField );
+      rep.saveStepAttribute( id_transformation, id_step, "sizeField", sizeField );
+      rep.saveStepAttribute( id_transformation, id_step, "revField", revField );
+      rep.saveStepAttribute( id_transformation, id_step, "modifiedField", modifiedField );
+      rep.saveStepAttribute( id_transformation, id_step, "contentHashField", contentHashField );
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString(
+        PKG, "DropboxListFolderMeta.Exception.UnableToSaveStepInfoToRepository", id_step ), e );
+    }
+  }
+
+  public void getFields( RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
+      VariableSpace space, Repository repository, IMetaStore metaStore ) throws KettleStepException {
+    if ( !Utils.isEmpty( pathField ) ) {
+      addField( rowMeta, new ValueMetaString( pathField ), origin );
+    }
+    if ( !Utils.isEmpty( nameField ) ) {
+      addField( rowMeta, new ValueMetaString( nameField ), origin );
+    }
+    if ( !Utils.isEmpty( typeField ) ) {
+      addField( rowMeta, new ValueMetaString( typeField ), origin );
+    }
+    if ( !Utils.isEmpty( sizeField ) ) {
+      addField( rowMeta, new ValueMetaInteger( sizeField ), origin );
+    }
+    if ( !Utils.isEmpty( revField ) ) {
+      addField( rowMeta, new ValueMetaString( revField ), origin );
+    }
+    if ( !Utils.isEmpty( modifiedField ) ) {
+      addField( rowMeta, new ValueMetaDate( modifiedField ), origin );
+    }
+    if ( !Utils.isEmpty( contentHashField ) ) {
+      addField( rowMeta, new ValueMetaString( contentHashField ), origin );
+    }
+  }
+
+  private void addField( RowMetaInterface rowMeta, ValueMetaInterface valueMeta, String origin ) {
+    valueMeta.setOrigin( origin );
+    rowMeta.addValueMeta( valueMeta );
+  }
+
+  public void check( List<CheckResultInterface> remarks, TransMeta transMeta,
+    StepMeta stepMeta, RowMetaInterface prev, String[] input, String[] output,
+    RowMetaInterface info, VariableSpace space, Repository repository,
+    IMetaStore metaStore ) {
+    CheckResult cr;
+    if ( prev == null || prev.size() == 0 ) {
+      cr = new CheckResult( CheckResultInterface.TYPE_RESULT_WARNING, BaseMessages.getString( PKG,
+        "DropboxListFolderMeta.CheckResult.NotReceivingFields" ), stepMeta );
+      remarks.add( cr );
+    } else {
+      cr = new CheckResult( CheckResultInterface.TYPE_RESULT_OK, BaseMessages.getString( PKG,
+        "DropboxListFolderMeta.CheckResult.StepRecevingData", prev.size() + "" ), stepMeta );
+      remarks.add( cr );
+    }
+
+    // See if we have input streams leading to this step!
+    if ( input.length > 0 ) {
+      cr = new CheckResult( CheckResultInterface.TYPE_RESULT_OK, BaseMessages.getString( PKG,
+        "DropboxListFolderMeta.CheckResult.StepRecevingData2" ), stepMeta );
+      remarks.add( cr );
+    } else {
+      cr = new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString( PKG,
+        "DropboxListFolderMeta.CheckResult.NoInputReceivedFromOtherSteps" ), stepMeta );
+      remarks.add( cr );
+    }
+  }
+
+  public StepInterface getStep( StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr, TransMeta tr,
+    Trans trans ) {
+    return new DropboxListFolder( stepMeta, stepDataInterface, cnr, tr, trans );
+  }
+
+  public StepDataInterface getStepData() {
+    return new DropboxListFolderData();
+  }
+
+  @Override
+  public boolean supportsErrorHandling() {
+    return true;
+  }
+
+  public String getDialogClassName() {
+    return "com.leonardo.coelho.dropboxlistfolder.DropboxListFolderDialog";
+  }
+}
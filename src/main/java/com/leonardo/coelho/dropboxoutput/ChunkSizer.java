@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the size of the chunks appended to upload sessions.
+ * <p>
+ * Chunks are always a multiple of 4MiB, as concurrent upload sessions require, and stay below the 150MB Dropbox
+ * accepts per request. With a fixed size every chunk has the configured size. In adaptive mode the size follows the
+ * measured throughput, aiming at chunks that take about {@link #TARGET_CHUNK_NANOS} to send: big enough for the
+ * per-request round trip to be negligible on fast links, small enough on slow links for a failed chunk to be cheap
+ * to send again. Failed chunks halve the size right away.
+ * <p>
+ * One sizer is shared by every upload of a step copy, so what was learned from a file carries over to the next.
+ */
+class ChunkSizer {
+  static final long CHUNK_SIZE_UNIT = 4L << 20; // 4MiB
+  static final long MIN_CHUNK_SIZE = CHUNK_SIZE_UNIT;
+  static final long MAX_CHUNK_SIZE = 35 * CHUNK_SIZE_UNIT; // 140MiB, under the 150MB request limit
+  static final long TARGET_CHUNK_NANOS = TimeUnit.SECONDS.toNanos( 8 );
+
+  // Weight of the last chunk in the measured throughput.
+  private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+  private final boolean adaptive;
+  private long chunkSize;
+  private double bytesPerNano;
+
+  /**
+   * @param chunkSize configured chunk size in bytes, rounded down to a multiple of 4MiB
+   * @param adaptive whether the size follows the measured throughput, starting from the configured size
+   */
+  ChunkSizer( long chunkSize, boolean adaptive ) {
+    this.chunkSize = clamp( chunkSize );
+    this.adaptive = adaptive;
+  }
+
+  /**
+   * Size of the next chunk to send.
+   */
+  synchronized long chunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Reports a chunk that made it to Dropbox.
+   *
+   * @param bytes chunk length
+   * @param nanos time it took to send it, retries included
+   */
+  synchronized void succeeded( long bytes, long nanos ) {
+    if ( !adaptive || nanos <= 0 || bytes < MIN_CHUNK_SIZE ) {
+      // Short last chunks say more about request overhead than about throughput.
+      return;
+    }
+    double sample = bytes / (double) nanos;
+    bytesPerNano = bytesPerNano == 0
+      ? sample : THROUGHPUT_SMOOTHING * sample + ( 1 - THROUGHPUT_SMOOTHING ) * bytesPerNano;
+    // Grow at most twofold at a time, the throughput of bigger chunks is only an estimate.
+    long target = (long) ( bytesPerNano * TARGET_CHUNK_NANOS );
+    chunkSize = clamp( Math.min( target, 2 * chunkSize ) );
+  }
+
+  /**
+   * Reports a chunk that had to be sent again.
+   */
+  synchronized void failed() {
+    if ( adaptive ) {
+      chunkSize = clamp( chunkSize / 2 );
+    }
+  }
+
+  private static long clamp( long size ) {
+    long rounded = size / CHUNK_SIZE_UNIT * CHUNK_SIZE_UNIT;
+    return Math.max( MIN_CHUNK_SIZE, Math.min( MAX_CHUNK_SIZE, rounded ) );
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Serializes rows as delimited text, one line per row, the way the Text File Output step does.
+ * <p>
+ * Values are formatted with the format of their field. They are only enclosed when they contain the separator,
+ * the enclosure or a line break; enclosures inside enclosed values are doubled.
+ */
+class DelimitedRowWriter {
+  private final Writer out;
+  private final String separator;
+  private final String enclosure;
+  private final int[] fields;
+
+  /**
+   * @param out where to write the lines to
+   * @param separator written between values
+   * @param enclosure written around values that need it, may be empty
+   * @param fields positions of the fields to write, in order
+   */
+  DelimitedRowWriter( Writer out, String separator, String enclosure, int[] fields ) {
+    this.out = out;
+    this.separator = separator;
+    this.enclosure = enclosure;
+    this.fields = fields;
+  }
+
+  void writeHeader( RowMetaInterface rowMeta ) throws IOException {
+    for ( int i = 0; i < fields.length; i++ ) {
+      if ( i > 0 ) {
+        out.write( separator );
+      }
+      writeValue( rowMeta.getValueMeta( fields[ i ] ).getName() );
+    }
+    out.write( Const.CR );
+  }
+
+  void writeRow( RowMetaInterface rowMeta, Object[] row ) throws IOException, KettleValueException {
+    for ( int i = 0; i < fields.length; i++ ) {
+      if ( i > 0 ) {
+        out.write( separator );
+      }
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( fields[ i ] );
+      Object value = row[ fields[ i ] ];
+      if ( !valueMeta.isNull( value ) ) {
+        writeValue( valueMeta.getString( value ) );
+      }
+    }
+    out.write( Const.CR );
+  }
+
+  /**
+   * Flushes the encoded text down to the upload, the upload itself is finished by its owner.
+   */
+  void flush() throws IOException {
+    out.flush();
+  }
+
+  private void writeValue( String value ) throws IOException {
+    boolean enclose = !enclosure.isEmpty() && ( ( !separator.isEmpty() && value.contains( separator ) )
+      || value.contains( enclosure )
+      || value.indexOf( '\n' ) >= 0 || value.indexOf( '\r' ) >= 0 );
+    if ( !enclose ) {
+      out.write( value );
+      return;
+    }
+    out.write( enclosure );
+    out.write( value.replace( enclosure, enclosure + enclosure ) );
+    out.write( enclosure );
+  }
+}
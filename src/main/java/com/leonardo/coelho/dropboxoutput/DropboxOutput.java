@@ -19,28 +19,55 @@
 package com.leonardo.coelho.dropboxoutput;
 
 import com.dropbox.core.DbxException;
-import com.dropbox.core.DbxRequestConfig;
 import com.dropbox.core.NetworkIOException;
 import com.dropbox.core.RetryException;
+import com.dropbox.core.ServerException;
 import com.dropbox.core.util.IOUtil.ProgressListener;
 import com.dropbox.core.v2.DbxClientV2;
 import com.dropbox.core.v2.files.CommitInfo;
 import com.dropbox.core.v2.files.FileMetadata;
+import com.dropbox.core.v2.files.GetMetadataErrorException;
+import com.dropbox.core.v2.files.Metadata;
 import com.dropbox.core.v2.files.UploadErrorException;
+import com.dropbox.core.v2.files.UploadSessionAppendErrorException;
 import com.dropbox.core.v2.files.UploadSessionCursor;
+import com.dropbox.core.v2.files.UploadSessionFinishArg;
+import com.dropbox.core.v2.files.UploadSessionFinishBatchJobStatus;
+import com.dropbox.core.v2.files.UploadSessionFinishBatchLaunch;
+import com.dropbox.core.v2.files.UploadSessionFinishBatchResultEntry;
 import com.dropbox.core.v2.files.UploadSessionFinishErrorException;
-import com.dropbox.core.v2.files.UploadSessionLookupErrorException;
+import com.dropbox.core.v2.files.UploadSessionType;
 import com.dropbox.core.v2.files.WriteMode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.leonardo.coelho.dropboxcommon.ContentHasher;
+import com.leonardo.coelho.dropboxcommon.DropboxClientPool;
+import com.leonardo.coelho.dropboxcommon.FileRangeInputStream;
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferExecutor;
+import com.leonardo.coelho.dropboxcommon.TransferMetrics;
+import com.leonardo.coelho.dropboxcommon.TransferProgress;
+import com.leonardo.coelho.dropboxcommon.TransferThrottle;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -54,6 +81,9 @@ import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.management.JMException;
 
 /**
  * Describe your step plugin.
@@ -86,17 +116,64 @@ public class DropboxOutput extends BaseStep implements StepInterface {
         logError( BaseMessages.getString( PKG, "DropboxOutput.Missing.AccessToken" ) );
         return false;
       }
-      if ( Utils.isEmpty( meta.getSourceFilesField() ) ) {
+      if ( uploadsLocalFiles() && Utils.isEmpty( meta.getSourceFilesField() ) ) {
         logError( BaseMessages.getString( PKG, "DropboxOutput.Missing.SourceFiles" ) );
         return false;
       }
+      if ( !meta.isWriteRowsToFile() && meta.isUploadFromField() && Utils.isEmpty( meta.getContentField() ) ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Missing.ContentField" ) );
+        return false;
+      }
+      if ( meta.isWriteRowsToFile() && !Charset.isSupported( Const.NVL( meta.getEncoding(), "UTF-8" ) ) ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Invalid.Encoding", meta.getEncoding() ) );
+        return false;
+      }
       if ( Utils.isEmpty( meta.getTargetFilesField() ) ) {
         logError( BaseMessages.getString( PKG, "DropboxOutput.Missing.TargetFiles" ) );
         return false;
       }
+      if ( meta.isBatchCommit() && meta.isPreserveOrder() ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Invalid.PreserveOrderWithBatchCommit" ) );
+        return false;
+      }
       List<StreamInterface> targetStreams = meta.getStepIOMeta().getTargetStreams();
       data.chosesTargetSteps =
         targetStreams.get( 0 ).getStepMeta() != null || targetStreams.get( 1 ).getStepMeta() != null;
+      data.transfers = new TransferExecutor<>( getStepname() + "." + getCopy(), meta.getMaxConcurrentTransfers(),
+        meta.isPreserveOrder(), this::routeTransferRow );
+      data.throttle = TransferThrottle.getInstance().register( meta.getTokenBandwidthLimit() * 1024L,
+        meta.getTokenRequestLimit(), meta.getTotalBandwidthLimit() * 1024L );
+      int maxAttempts = meta.getMaxAttempts() > 0 ? meta.getMaxAttempts() : RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+      data.metrics = new TransferMetrics();
+      data.transfers.setMetrics( data.metrics );
+      try {
+        data.metrics.register( getTransMeta().getName(), getStepname(), getCopy() );
+      } catch ( JMException ex ) {
+        logDetailed( "Unable to publish transfer metrics: " + ex.getMessage() );
+      }
+      data.retryPolicy =
+        new RetryPolicy( maxAttempts, meta.getRetryBudget(), meta.getBreakerThreshold(), data.metrics );
+      data.batchSize = Math.max( 1, Math.min( meta.getBatchSize(), data.UPLOAD_BATCH_MAX_ENTRIES ) );
+      if ( !Utils.isEmpty( meta.getJournalFolder() ) ) {
+        data.journal = new UploadJournal( new File( environmentSubstitute( meta.getJournalFolder() ) ) );
+      }
+      int chunkSizeMib = meta.getChunkSize() > 0 ? meta.getChunkSize() : data.DEFAULT_CHUNK_SIZE_MIB;
+      data.chunkSizer = new ChunkSizer( (long) chunkSizeMib << 20, meta.isAdaptiveChunkSize() );
+      // Simple uploads are limited to 150MB, like chunks.
+      data.simpleUploadMaxSize = Math.min( 2 * data.chunkSizer.chunkSize(), ChunkSizer.MAX_CHUNK_SIZE );
+      if ( meta.getParallelChunkStreams() > 1 ) {
+        // Chunk streams are shared by every file being uploaded at the same time.
+        data.chunkWorkers = Executors.newFixedThreadPool(
+          meta.getParallelChunkStreams() * Math.max( 1, meta.getMaxConcurrentTransfers() ),
+          new ThreadFactoryBuilder().setNameFormat( getStepname() + "." + getCopy() + " chunk-%d" ).setDaemon( true )
+            .build() );
+      }
+      if ( meta.isBatchCommit() ) {
+        // Batches are committed one at a time, off the step thread so the other uploads keep flowing meanwhile.
+        data.batchCommitter = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setNameFormat( getStepname() + "." + getCopy() + " batch-commit" )
+            .setDaemon( true ).build() );
+      }
       return true;
     } else {
       return false;
@@ -109,7 +186,12 @@ public class DropboxOutput extends BaseStep implements StepInterface {
 
     Object[] r = getRow(); // get row, set busy!
     if ( r == null ) {
-      // no more input to be expected...
+      // no more input to be expected, wait for the transfers still in flight...
+      finishRowsFile();
+      finishContentGroup();
+      data.transfers.drain();
+      commitBatches();
+      logBasic( BaseMessages.getString( PKG, "DropboxOutput.Log.TransferMetrics", data.metrics.summary() ) );
       setOutputDone();
       return false;
     }
@@ -125,13 +207,24 @@ public class DropboxOutput extends BaseStep implements StepInterface {
         stopAll();
         return false;
       }
-      // Mapping Source Files field.
-      data.sourceFileIdx = Arrays.binarySearch( getInputRowMeta().getFieldNames( ), meta.getSourceFilesField() );
-      if ( data.sourceFileIdx < 0 ) {
-        logError( BaseMessages.getString( PKG, "DropboxOutput.Invalid.SourceFiles" ) );
-        setErrors( 1 );
-        stopAll();
-        return false;
+      if ( meta.isUploadFromField() && !meta.isWriteRowsToFile() ) {
+        // Mapping Content field.
+        data.contentIdx = getInputRowMeta().indexOfValue( meta.getContentField() );
+        if ( data.contentIdx < 0 ) {
+          logError( BaseMessages.getString( PKG, "DropboxOutput.Invalid.ContentField" ) );
+          setErrors( 1 );
+          stopAll();
+          return false;
+        }
+      } else if ( uploadsLocalFiles() ) {
+        // Mapping Source Files field.
+        data.sourceFileIdx = Arrays.binarySearch( getInputRowMeta().getFieldNames( ), meta.getSourceFilesField() );
+        if ( data.sourceFileIdx < 0 ) {
+          logError( BaseMessages.getString( PKG, "DropboxOutput.Invalid.SourceFiles" ) );
+          setErrors( 1 );
+          stopAll();
+          return false;
+        }
       }
       // Mapping Target Files field.
       data.targetFilesIdx = Arrays.binarySearch( getInputRowMeta().getFieldNames( ), meta.getTargetFilesField() );
@@ -141,8 +234,18 @@ public class DropboxOutput extends BaseStep implements StepInterface {
         stopAll();
         return false;
       }
+      if ( meta.isWriteRowsToFile() ) {
+        // Every field but the access token and the target file goes to the file.
+        data.rowsFileFields = IntStream.range( 0, getInputRowMeta().size() )
+          .filter( i -> i != data.accessTokenIdx && i != data.targetFilesIdx )
+          .toArray();
+      }
 
       data.outputRowMeta = getInputRowMeta().clone();
+      meta.getFields( data.outputRowMeta, getStepname(), null, null, this, getRepository(), getMetaStore() );
+      if ( meta.isSkipUnchanged() && uploadsLocalFiles() && !Utils.isEmpty( meta.getSkippedField() ) ) {
+        data.skippedIdx = data.outputRowMeta.indexOfValue( meta.getSkippedField() );
+      }
 
       // Cache the position of the RowSet for the output.
       if ( data.chosesTargetSteps ) {
@@ -169,26 +272,46 @@ public class DropboxOutput extends BaseStep implements StepInterface {
       }
     }
 
+    if ( data.outputRowMeta.size() > getInputRowMeta().size() ) {
+      r = RowDataUtil.resizeArray( r, data.outputRowMeta.size() );
+    }
+
     // Get Values from Input Row.
     String accessToken = (String) r[data.accessTokenIdx];
-    String sourceFile = (String) r[data.sourceFileIdx];
+    String sourceFile = uploadsLocalFiles() ? (String) r[data.sourceFileIdx] : null;
     String targetFile = (String) r[data.targetFilesIdx ];
 
     if ( Utils.isEmpty( accessToken ) ) {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Null.AccessToken" ) );
-      putFailedTransferRow( r );
+      failRow( r );
       return true;
     }
 
-    if ( Utils.isEmpty( sourceFile ) ) {
+    if ( uploadsLocalFiles() && Utils.isEmpty( sourceFile ) ) {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Null.SourceFiles" ) );
-      putFailedTransferRow( r );
+      failRow( r );
       return true;
     }
 
     if ( Utils.isEmpty( targetFile ) ) {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Null.TargetFiles" ) );
-      putFailedTransferRow( r );
+      failRow( r );
+      return true;
+    }
+
+    if ( meta.isWriteRowsToFile() ) {
+      writeRowToFile( r, accessToken, targetFile );
+      if ( checkFeedback( getLinesRead() ) ) {
+        logBasic( BaseMessages.getString( PKG, "DropboxOutput.Log.LineNumber" ) + getLinesRead() );
+      }
+      return true;
+    }
+
+    if ( meta.isUploadFromField() ) {
+      uploadContent( r, accessToken, targetFile );
+      if ( checkFeedback( getLinesRead() ) ) {
+        logBasic( BaseMessages.getString( PKG, "DropboxOutput.Log.LineNumber" ) + getLinesRead() );
+      }
       return true;
     }
 
@@ -196,45 +319,473 @@ public class DropboxOutput extends BaseStep implements StepInterface {
     File localFile = new File( sourceFile );
     if ( !localFile.exists() ) {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Log.InvalidSourceFile.NotExist", sourceFile ) );
-      putFailedTransferRow( r );
+      failRow( r );
       return true;
     }
     if ( !localFile.isFile() ) {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Log.InvalidSourceFile.NotAFile", sourceFile ) );
-      putFailedTransferRow( r );
+      failRow( r );
       return true;
     }
 
-    // Create a DbxClientV2 to make API calls.
-    DbxRequestConfig requestConfig = new DbxRequestConfig( "examples-upload-file" );
-    DbxClientV2 dbxClient = new DbxClientV2( requestConfig, accessToken );
+    // Calls made with this token count towards the limits of this step.
+    data.throttle.applyTo( accessToken );
 
-    // upload the file with simple upload API if it is small enough, otherwise use chunked
-    // upload API for better performance. Arbitrarily chose 2 times our chunk size as the
-    // deciding factor. This should really depend on your network.
-    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploading", sourceFile ) );
-    if ( localFile.length() <= ( 2 * data.CHUNKED_UPLOAD_CHUNK_SIZE ) ) {
-      if ( !uploadFile( dbxClient, localFile, targetFile ) ) {
-        putFailedTransferRow( r );
-        return true;
+    // Borrow a DbxClientV2 to make API calls, reusing the connections of previous rows.
+    DbxClientV2 dbxClient = DropboxClientPool.getInstance().getClient( accessToken );
+
+    // Hand the upload over to the worker pool, the row is routed once it completes.
+    data.transfers.submit( r, () -> transferFile( dbxClient, localFile, targetFile ) );
+
+    if ( checkFeedback( getLinesRead() ) ) {
+      logBasic( BaseMessages.getString( PKG, "DropboxOutput.Log.LineNumber" ) + getLinesRead() );
+    }
+    return true;
+  }
+
+  @Override
+  public void stopRunning( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    // Called from the thread stopping the transformation: transfers waiting to retry a call fail right away
+    // instead of sitting out their backoff, and so do their chunks and batch commits.
+    TransferExecutor<?> transfers = ( (DropboxOutputData) sdi ).transfers;
+    if ( transfers != null ) {
+      transfers.cancelRetries();
+    }
+    RetryPolicy retryPolicy = ( (DropboxOutputData) sdi ).retryPolicy;
+    if ( retryPolicy != null ) {
+      retryPolicy.cancelRetries();
+    }
+    super.stopRunning( smi, sdi );
+  }
+
+  @Override
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    data = (DropboxOutputData) sdi;
+    if ( data.transfers != null ) {
+      data.transfers.shutdown();
+      data.transfers = null;
+    }
+    if ( data.chunkWorkers != null ) {
+      data.chunkWorkers.shutdownNow();
+      data.chunkWorkers = null;
+    }
+    if ( data.batchCommitter != null ) {
+      data.batchCommitter.shutdownNow();
+      data.batchCommitter = null;
+    }
+    if ( data.throttle != null ) {
+      data.throttle.close();
+      data.throttle = null;
+    }
+    if ( data.metrics != null ) {
+      data.metrics.unregister();
+    }
+    super.dispose( smi, sdi );
+  }
+
+  /**
+   * Uploads a single file, picking the simple or the chunked upload API based on its size.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param localFile local file to upload
+   * @param targetFile Where to upload the file to within Dropbox
+   * @return the outcome of the upload
+   */
+  private UploadResult transferFile( DbxClientV2 dbxClient, File localFile, String targetFile ) {
+    WriteMode mode = WriteMode.ADD;
+    if ( meta.isSkipUnchanged() ) {
+      FileMetadata remote;
+      try {
+        remote = getRemoteFile( dbxClient, targetFile );
+        if ( remote != null && isUnchanged( localFile, remote ) ) {
+          log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.SkippedUnchanged", targetFile ) );
+          return UploadResult.SKIPPED;
+        }
+      } catch ( DbxException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+        return UploadResult.FAILED;
+      } catch ( IOException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Log.ErrorReadingFile", localFile.getName(),
+          ex.getMessage() ) );
+        return UploadResult.FAILED;
+      }
+      if ( remote != null ) {
+        // Replace the revision we compared against, a conflicting change made in the meantime fails the row.
+        mode = WriteMode.update( remote.getRev() );
       }
+    }
+
+    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploading", localFile.getPath() ) );
+    if ( meta.isBatchCommit() ) {
+      // Every file goes through an upload session, committed later together with the rest of the batch.
+      return chunkedUploadFile( dbxClient, localFile, targetFile, mode, true );
+    }
+
+    // upload the file with simple upload API if it is small enough, otherwise use chunked
+    // upload API for better performance. Arbitrarily chose 2 times the configured chunk size
+    // as the deciding factor. This should really depend on your network.
+    UploadResult result;
+    if ( localFile.length() <= data.simpleUploadMaxSize ) {
+      result = UploadResult.of( uploadFile( dbxClient, localFile, targetFile, mode ) );
+    } else if ( data.chunkWorkers != null ) {
+      result = UploadResult.of( concurrentChunkedUploadFile( dbxClient, localFile, targetFile, mode ) );
     } else {
-      if ( !chunkedUploadFile( dbxClient, localFile, targetFile ) ) {
-        putFailedTransferRow( r );
-        return true;
+      result = chunkedUploadFile( dbxClient, localFile, targetFile, mode, false );
+    }
+    if ( result.succeeded ) {
+      log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploaded", targetFile ) );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the metadata of the file at the given path, or null when there is no file there.
+   */
+  private FileMetadata getRemoteFile( DbxClientV2 dbxClient, String dropboxPath ) throws DbxException {
+    try {
+      Metadata metadata = data.retryPolicy.call( dbxClient, "files/get_metadata",
+        () -> dbxClient.files().getMetadata( dropboxPath ) );
+      return metadata instanceof FileMetadata ? (FileMetadata) metadata : null;
+    } catch ( GetMetadataErrorException ex ) {
+      if ( ex.errorValue.isPath() && ex.errorValue.getPathValue().isNotFound() ) {
+        return null;
       }
+      throw ex;
     }
-    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploaded", targetFile ) );
+  }
 
-    putSuccessfulTransferRow( r ); // Transfer has succeeded.
+  /**
+   * Compares a local file with its Dropbox counterpart. Sizes are compared first, so the local file is only
+   * hashed when it has a chance to match.
+   */
+  private boolean isUnchanged( File localFile, FileMetadata remote ) throws IOException {
+    if ( localFile.length() != remote.getSize() || remote.getContentHash() == null ) {
+      return false;
+    }
+    String contentHash = ContentHasher.hash( localFile, data.chunkWorkers, meta.getParallelChunkStreams() );
+    return contentHash.equals( remote.getContentHash() );
+  }
 
-    if ( checkFeedback( getLinesRead() ) ) {
-      logBasic( BaseMessages.getString( PKG, "DropboxOutput.Log.LineNumber" ) + getLinesRead() );
+  private boolean uploadsLocalFiles() {
+    return !meta.isWriteRowsToFile() && !meta.isUploadFromField();
+  }
+
+  /**
+   * Writes a row as a delimited line of the file it targets, streamed into an upload session as chunks fill up.
+   * Consecutive rows with the same target share a file. Rows are passed on as soon as they are written, like the
+   * Text File Output step does, so a file that can't be committed fails the step.
+   *
+   * @param r input row
+   * @param accessToken Dropbox OAuth access token of the row
+   * @param targetFile Where to upload the file to within Dropbox
+   */
+  private void writeRowToFile( Object[] r, String accessToken, String targetFile ) throws KettleException {
+    DropboxOutputData.RowsFile file = data.rowsFile;
+    if ( file != null && !( file.accessToken.equals( accessToken ) && file.targetFile.equals( targetFile ) ) ) {
+      finishRowsFile();
+      file = null;
+    }
+    try {
+      if ( file == null ) {
+        log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.UploadingContent", targetFile ) );
+        data.throttle.applyTo( accessToken );
+        DbxClientV2 dbxClient = DropboxClientPool.getInstance().getClient( accessToken );
+        UploadSessionWriter upload = newUploadSessionWriter( dbxClient, targetFile );
+        DelimitedRowWriter out = new DelimitedRowWriter(
+          new OutputStreamWriter( upload, Charset.forName( Const.NVL( meta.getEncoding(), "UTF-8" ) ) ),
+          Const.NVL( meta.getSeparator(), "" ), Const.NVL( meta.getEnclosure(), "" ), data.rowsFileFields );
+        file = new DropboxOutputData.RowsFile( accessToken, targetFile, upload, out );
+        data.rowsFile = file;
+        if ( meta.isHeader() ) {
+          out.writeHeader( getInputRowMeta() );
+        }
+      }
+      file.out.writeRow( getInputRowMeta(), r );
+    } catch ( IOException ex ) {
+      data.rowsFile = null;
+      throw new KettleException( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ), ex );
+    }
+    data.transfers.submitCompleted( r, UploadResult.WRITTEN );
+  }
+
+  /**
+   * Sends the last lines of the file the previous rows were written to and commits it.
+   */
+  private void finishRowsFile() throws KettleException {
+    DropboxOutputData.RowsFile file = data.rowsFile;
+    if ( file == null ) {
+      return;
+    }
+    data.rowsFile = null;
+    try {
+      file.out.flush();
+      FileMetadata metadata = file.upload.finish();
+      log.logDetailed( metadata.toStringMultiline() );
+    } catch ( DbxException | IOException ex ) {
+      data.metrics.fileTransferred( false );
+      throw new KettleException( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ), ex );
+    }
+    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploaded", file.targetFile ) );
+    data.metrics.fileTransferred( true );
+    incrementLinesOutput();
+  }
+
+  /**
+   * Uploads the content field of a row. Rows are either uploaded as files of their own, or appended to the
+   * upload session of the previous rows when they share its target file and concatenation is enabled.
+   *
+   * @param r input row
+   * @param accessToken Dropbox OAuth access token of the row
+   * @param targetFile Where to upload the content to within Dropbox
+   */
+  private void uploadContent( Object[] r, String accessToken, String targetFile ) throws KettleException {
+    byte[] content = getContent( r );
+    DropboxOutputData.ContentGroup group = data.contentGroup;
+    if ( group != null && !( group.accessToken.equals( accessToken ) && group.targetFile.equals( targetFile ) ) ) {
+      finishContentGroup();
+      group = null;
+    }
+
+    data.throttle.applyTo( accessToken );
+    DbxClientV2 dbxClient = DropboxClientPool.getInstance().getClient( accessToken );
+    if ( !meta.isConcatenateRows() ) {
+      // Hand the upload over to the worker pool, the row is routed once it completes.
+      data.transfers.submit( r, () -> UploadResult.of( uploadContentFile( dbxClient, content, targetFile ) ) );
+      return;
+    }
+
+    if ( group == null ) {
+      log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.UploadingContent", targetFile ) );
+      group = new DropboxOutputData.ContentGroup( accessToken, targetFile, newUploadSessionWriter( dbxClient,
+        targetFile ) );
+      data.contentGroup = group;
     }
+    group.add( r, true );
+    if ( group.writer != null ) {
+      try {
+        // Full chunks are appended to the upload session as the rows come in.
+        group.writer.write( content );
+      } catch ( IOException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+        group.writer = null;
+      }
+    }
+  }
+
+  /**
+   * Commits the file the previous rows were concatenated into, then routes those rows.
+   */
+  private void finishContentGroup() throws KettleStepException {
+    DropboxOutputData.ContentGroup group = data.contentGroup;
+    if ( group == null ) {
+      return;
+    }
+    data.contentGroup = null;
+    boolean succeeded = false;
+    if ( group.writer != null ) {
+      try {
+        FileMetadata metadata = group.writer.finish();
+        log.logDetailed( metadata.toStringMultiline() );
+        log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploaded", group.targetFile ) );
+        succeeded = true;
+      } catch ( DbxException | IOException ex ) {
+        logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+      }
+    }
+    for ( int i = 0; i < group.rows.size(); i++ ) {
+      data.transfers.submitCompleted( group.rows.get( i ), UploadResult.of( succeeded && group.valid.get( i ) ) );
+    }
+  }
+
+  /**
+   * Uploads the content of a single row as a file of its own.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param content bytes to upload
+   * @param targetFile Where to upload the content to within Dropbox
+   * @return whether the upload succeeded
+   */
+  private boolean uploadContentFile( DbxClientV2 dbxClient, byte[] content, String targetFile ) {
+    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.UploadingContent", targetFile ) );
+    UploadSessionWriter writer = newUploadSessionWriter( dbxClient, targetFile );
+    try {
+      writer.write( content );
+      FileMetadata metadata = writer.finish();
+      log.logDetailed( metadata.toStringMultiline() );
+    } catch ( DbxException | IOException ex ) {
+      logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+      return false;
+    }
+    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploaded", targetFile ) );
     return true;
   }
 
+  private UploadSessionWriter newUploadSessionWriter( DbxClientV2 dbxClient, String targetFile ) {
+    return new UploadSessionWriter( dbxClient, targetFile, WriteMode.ADD, (int) data.chunkSizer.chunkSize(),
+      data.retryPolicy, data.metrics );
+  }
+
+  /**
+   * Reads the content field of a row, String fields are sent as UTF-8. Null values are uploaded as empty content.
+   */
+  private byte[] getContent( Object[] r ) throws KettleValueException {
+    ValueMetaInterface valueMeta = getInputRowMeta().getValueMeta( data.contentIdx );
+    Object value = r[ data.contentIdx ];
+    if ( valueMeta.isNull( value ) ) {
+      return new byte[ 0 ];
+    }
+    if ( valueMeta.isBinary() ) {
+      return valueMeta.getBinary( value );
+    }
+    return valueMeta.getString( value ).getBytes( StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * Routes a row that failed before its transfer started. While rows are being concatenated, it waits for them so
+   * the output keeps the input order.
+   */
+  private void failRow( Object[] r ) throws KettleStepException {
+    if ( data.contentGroup != null ) {
+      data.contentGroup.add( r, false );
+    } else {
+      data.transfers.submitCompleted( r, UploadResult.FAILED );
+    }
+  }
+
+  private void routeTransferRow( Object[] r, UploadResult result ) throws KettleStepException {
+    routeCommittedBatches( false );
+    if ( data.skippedIdx >= 0 ) {
+      r[ data.skippedIdx ] = result.skipped;
+    }
+    if ( result.pendingCommit != null ) {
+      // Hold the row back until its batch is committed.
+      String accessToken = (String) r[data.accessTokenIdx];
+      DropboxOutputData.UploadBatch batch = data.batches.get( accessToken );
+      if ( batch == null ) {
+        batch = new DropboxOutputData.UploadBatch();
+        data.batches.put( accessToken, batch );
+      }
+      batch.rows.add( r );
+      batch.entries.add( result.pendingCommit );
+      if ( batch.entries.size() >= data.batchSize ) {
+        data.batches.remove( accessToken );
+        startBatchCommit( accessToken, batch );
+      }
+    } else if ( result.succeeded && !result.countsFile ) {
+      putRowToSuccessful( r ); // Its file is counted when committed.
+    } else if ( result.succeeded ) {
+      putSuccessfulTransferRow( r ); // Transfer has succeeded.
+    } else {
+      putFailedTransferRow( r );
+    }
+  }
+
+  /**
+   * Commits the batches left open once every upload is done, and waits for every batch commit to be routed.
+   */
+  private void commitBatches() throws KettleStepException {
+    for ( Map.Entry<String, DropboxOutputData.UploadBatch> batch : data.batches.entrySet() ) {
+      startBatchCommit( batch.getKey(), batch.getValue() );
+    }
+    data.batches.clear();
+    routeCommittedBatches( true );
+  }
+
+  /**
+   * Hands a full batch over to the batch committer, its rows are routed by {@link #routeCommittedBatches} once
+   * the commit is done.
+   */
+  private void startBatchCommit( String accessToken, DropboxOutputData.UploadBatch batch ) {
+    batch.committed = data.batchCommitter.submit( () -> commitBatch( accessToken, batch ) );
+    data.committingBatches.add( batch );
+  }
+
+  /**
+   * Routes the rows of the batches whose commit is done, in the order the batches were started.
+   *
+   * @param wait whether to wait for every batch still being committed
+   */
+  private void routeCommittedBatches( boolean wait ) throws KettleStepException {
+    while ( !data.committingBatches.isEmpty() && ( wait || data.committingBatches.peekFirst().committed.isDone() ) ) {
+      DropboxOutputData.UploadBatch batch = data.committingBatches.pollFirst();
+      List<UploadSessionFinishBatchResultEntry> entries;
+      try {
+        entries = batch.committed.get();
+      } catch ( InterruptedException ex ) {
+        Thread.currentThread().interrupt();
+        throw new KettleStepException( ex );
+      } catch ( ExecutionException ex ) {
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getCause().getMessage() ) );
+        entries = null;
+      }
+      routeBatch( batch, entries );
+    }
+  }
+
+  /**
+   * Commits many closed upload sessions with a single uploadSessionFinishBatch call. Runs on the batch committer.
+   *
+   * @param accessToken token every session of the batch was opened with
+   * @param batch rows and sessions to commit
+   * @return an entry per session of the batch, null when the whole batch failed
+   */
+  private List<UploadSessionFinishBatchResultEntry> commitBatch( String accessToken,
+                                                                 DropboxOutputData.UploadBatch batch ) {
+    data.throttle.applyTo( accessToken );
+    DbxClientV2 dbxClient = DropboxClientPool.getInstance().getClient( accessToken );
+    log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.CommittingBatch", batch.entries.size() ) );
+    try {
+      UploadSessionFinishBatchLaunch launch =
+        data.retryPolicy.call( dbxClient, "files/upload_session/finish_batch",
+          () -> dbxClient.files().uploadSessionFinishBatch( batch.entries ) );
+      if ( launch.isComplete() ) {
+        return launch.getCompleteValue().getEntries();
+      }
+      if ( launch.isAsyncJobId() ) {
+        // Big batches are committed in the background, poll until the job is done.
+        while ( !isStopped() ) {
+          UploadSessionFinishBatchJobStatus status = data.retryPolicy.call( dbxClient,
+            "files/upload_session/finish_batch/check",
+            () -> dbxClient.files().uploadSessionFinishBatchCheck( launch.getAsyncJobIdValue() ) );
+          if ( status.isComplete() ) {
+            return status.getCompleteValue().getEntries();
+          }
+          data.retryPolicy.sleep( data.UPLOAD_BATCH_POLL_INTERVAL_MILLIS );
+        }
+      }
+    } catch ( DbxException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+    } catch ( InterruptedException ex ) {
+      // The step is being stopped or disposed of, the rows of the batch fail.
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.Error.Interrupted" ) );
+    }
+    return null;
+  }
+
+  /**
+   * Routes each row of a committed batch according to its own entry in the batch result.
+   */
+  private void routeBatch( DropboxOutputData.UploadBatch batch, List<UploadSessionFinishBatchResultEntry> entries )
+    throws KettleStepException {
+    for ( int i = 0; i < batch.rows.size(); i++ ) {
+      UploadSessionFinishBatchResultEntry entry = entries != null && i < entries.size() ? entries.get( i ) : null;
+      String targetFile = batch.entries.get( i ).getCommit().getPath();
+      if ( entry != null && entry.isSuccess() ) {
+        log.logDetailed( entry.getSuccessValue().toStringMultiline() );
+        log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.Uploaded", targetFile ) );
+        putSuccessfulTransferRow( batch.rows.get( i ) );
+      } else {
+        if ( entry != null ) {
+          log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError",
+            entry.getFailureValue().toString() ) );
+        }
+        putFailedTransferRow( batch.rows.get( i ) );
+      }
+    }
+  }
+
   private void putFailedTransferRow( Object[] r ) throws KettleStepException {
+    data.metrics.fileTransferred( false );
     if ( !data.chosesTargetSteps ) {
       putRow( data.outputRowMeta, r );
     } else {
@@ -243,6 +794,12 @@ public class DropboxOutput extends BaseStep implements StepInterface {
   }
 
   private void putSuccessfulTransferRow( Object[] r ) throws KettleStepException {
+    data.metrics.fileTransferred( true );
+    incrementLinesOutput();
+    putRowToSuccessful( r );
+  }
+
+  private void putRowToSuccessful( Object[] r ) throws KettleStepException {
     if ( !data.chosesTargetSteps ) {
       putRow( data.outputRowMeta, r );
     } else {
@@ -257,17 +814,31 @@ public class DropboxOutput extends BaseStep implements StepInterface {
    * @param dbxClient Dropbox user authenticated client
    * @param localFile local file to upload
    * @param dropboxPath Where to upload the file to within Dropbox
+   * @param mode what to do when the file already exists
    */
-  private boolean uploadFile( DbxClientV2 dbxClient, File localFile, String dropboxPath ) {
-    try ( InputStream in = new FileInputStream( localFile ) ) {
-      ProgressListener progressListener = l -> printProgress( l, localFile.length() );
+  private boolean uploadFile( DbxClientV2 dbxClient, File localFile, String dropboxPath, WriteMode mode ) {
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    try ( FileChannel channel = openChannel( localFile ) ) {
+      TransferProgress progress = new TransferProgress( log, "Uploaded", localFile.length() );
+      ProgressListener progressListener = progress::update;
+      while ( attempts.next() ) {
+        // Every attempt sends the whole file again.
+        try ( InputStream in = new FileRangeInputStream( channel, 0, channel.size() ) ) {
+          long start = System.nanoTime();
+          FileMetadata metadata = dbxClient.files().uploadBuilder( dropboxPath )
+            .withMode( mode )
+            .withClientModified( new Date( localFile.lastModified() ) )
+            .uploadAndFinish( in, progressListener );
+          attempts.succeeded();
+          data.metrics.recordCall( "files/upload", start );
+          data.metrics.addBytesUploaded( localFile.length() );
 
-      FileMetadata metadata = dbxClient.files().uploadBuilder( dropboxPath )
-        .withMode( WriteMode.ADD )
-        .withClientModified( new Date( localFile.lastModified() ) )
-        .uploadAndFinish( in, progressListener );
-
-      log.logDetailed( metadata.toStringMultiline() );
+          log.logDetailed( metadata.toStringMultiline() );
+          return true;
+        } catch ( RetryException | NetworkIOException | ServerException ex ) {
+          attempts.failed( ex );
+        }
+      }
     } catch ( UploadErrorException ex ) {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
       return false;
@@ -278,7 +849,8 @@ public class DropboxOutput extends BaseStep implements StepInterface {
       logError( BaseMessages.getString( PKG, "DropboxOutput.Log.ErrorReadingFile", localFile.getName(), ex.getMessage() ) );
       return false;
     }
-    return true;
+    logGaveUp( attempts );
+    return false;
   }
 
   /**
@@ -290,30 +862,25 @@ public class DropboxOutput extends BaseStep implements StepInterface {
    * @param dbxClient Dropbox user authenticated client
    * @param localFile local file to upload
    * @param dropboxPath Where to upload the file to within Dropbox
+   * @param mode what to do when the file already exists
+   * @param batchCommit whether to close the session and leave its commit to a batch instead of finishing it
    */
-  private boolean chunkedUploadFile( DbxClientV2 dbxClient, File localFile, String dropboxPath ) {
-    long size = localFile.length();
-
-    // assert our file is at least the chunk upload size. We make this assumption in the code
-    // below to simplify the logic.
-    if ( size < data.CHUNKED_UPLOAD_CHUNK_SIZE ) {
-      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.FileTooSmall" ) );
-      return false;
+  private UploadResult chunkedUploadFile( DbxClientV2 dbxClient, File localFile, String dropboxPath, WriteMode mode,
+                                          boolean batchCommit ) {
+    // The file is opened once, every attempt reads from where it has to resume.
+    try ( FileChannel channel = openChannel( localFile ) ) {
+      return chunkedUploadFile( dbxClient, localFile, channel, dropboxPath, mode, batchCommit );
+    } catch ( IOException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.ErrorReadingFile", localFile.getName(), ex.getMessage() ) );
+      return UploadResult.FAILED;
     }
+  }
 
+  private UploadResult chunkedUploadFile( DbxClientV2 dbxClient, File localFile, FileChannel channel,
+                                          String dropboxPath, WriteMode mode, boolean batchCommit ) {
+    long size = localFile.length();
     long uploaded = 0L;
-    DbxException thrown = null;
-
-    ProgressListener progressListener = new ProgressListener() {
-      long uploadedBytes = 0;
-      @Override
-      public void onProgress( long l ) {
-        printProgress( l + uploadedBytes, size );
-        if ( l == data.CHUNKED_UPLOAD_CHUNK_SIZE ) {
-          uploadedBytes += data.CHUNKED_UPLOAD_CHUNK_SIZE;
-        }
-      }
-    };
+    TransferProgress progress = new TransferProgress( log, "Uploaded", size );
 
     // Chunked uploads have 3 phases, each of which can accept uploaded bytes:
     //
@@ -323,73 +890,130 @@ public class DropboxOutput extends BaseStep implements StepInterface {
     //
     // We track how many bytes we uploaded to determine which phase we should be in.
     String sessionId = null;
-    for ( int i = 0; i < data.CHUNKED_UPLOAD_MAX_ATTEMPTS; ++i ) {
-      if ( i > 0 ) {
-        log.logDetailed( String.format( "Retrying chunked upload (%d / %d attempts)\n", i + 1, data.CHUNKED_UPLOAD_MAX_ATTEMPTS ) );
+
+    // Pick up where a previous run left off, if the journal knows this upload.
+    String journalKey = data.journal != null ? UploadJournal.key( localFile, dropboxPath ) : null;
+    long started = System.currentTimeMillis();
+    UploadJournal.Entry resumed = findJournalEntry( journalKey );
+    if ( resumed != null ) {
+      sessionId = resumed.sessionId;
+      uploaded = resumed.offset;
+      started = resumed.started;
+      log.logBasic( BaseMessages.getString( PKG, "DropboxOutput.log.ResumingUpload", localFile.getPath(), uploaded ) );
+    }
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    while ( attempts.next() ) {
+      if ( attempts.attempt() > 1 ) {
+        log.logDetailed( String.format( "Retrying chunked upload (%d / %d attempts)\n", attempts.attempt(),
+          attempts.maxAttempts() ) );
       }
 
-      try ( InputStream in = new FileInputStream( localFile ) ) {
-        // if this is a retry, make sure seek to the correct offset
-        in.skip( uploaded );
+      // if this is a retry, read from the correct offset
+      try ( InputStream in = new FileRangeInputStream( channel, uploaded, size - uploaded ) ) {
 
         // (1) Start
         if ( sessionId == null ) {
-          sessionId = dbxClient.files().uploadSessionStart()
-            .uploadAndFinish( in, data.CHUNKED_UPLOAD_CHUNK_SIZE, progressListener )
+          long length = Math.min( size, data.chunkSizer.chunkSize() );
+          long start = System.nanoTime();
+          sessionId = dbxClient.files().uploadSessionStartBuilder()
+            .withClose( batchCommit && length == size )
+            .start()
+            .uploadAndFinish( in, length, chunkProgress( progress, uploaded ) )
             .getSessionId();
-          uploaded += data.CHUNKED_UPLOAD_CHUNK_SIZE;
-          printProgress( uploaded, size );
+          data.chunkSizer.succeeded( length, System.nanoTime() - start );
+          attempts.succeeded();
+          data.metrics.recordCall( "files/upload_session/start", start );
+          data.metrics.addBytesUploaded( length );
+          uploaded += length;
+          progress.update( uploaded );
+          recordJournalEntry( journalKey, new UploadJournal.Entry( sessionId, uploaded, started ) );
         }
 
         UploadSessionCursor cursor = new UploadSessionCursor( sessionId, uploaded );
 
         // (2) Append
-        while ( ( size - uploaded ) > data.CHUNKED_UPLOAD_CHUNK_SIZE ) {
+        long length;
+        while ( ( size - uploaded ) > ( length = data.chunkSizer.chunkSize() ) ) {
+          long start = System.nanoTime();
           dbxClient.files().uploadSessionAppendV2( cursor )
-            .uploadAndFinish( in, data.CHUNKED_UPLOAD_CHUNK_SIZE, progressListener );
-          uploaded += data.CHUNKED_UPLOAD_CHUNK_SIZE;
-          printProgress( uploaded, size );
+            .uploadAndFinish( in, length, chunkProgress( progress, uploaded ) );
+          data.chunkSizer.succeeded( length, System.nanoTime() - start );
+          attempts.succeeded();
+          data.metrics.recordCall( "files/upload_session/append_v2", start );
+          data.metrics.addBytesUploaded( length );
+          uploaded += length;
+          progress.update( uploaded );
           cursor = new UploadSessionCursor( sessionId, uploaded );
+          recordJournalEntry( journalKey, new UploadJournal.Entry( sessionId, uploaded, started ) );
         }
 
         // (3) Finish
         long remaining = size - uploaded;
         CommitInfo commitInfo = CommitInfo.newBuilder( dropboxPath )
-          .withMode( WriteMode.ADD )
+          .withMode( mode )
           .withClientModified( new Date( localFile.lastModified() ) )
           .build();
+        long start = System.nanoTime();
+        if ( batchCommit ) {
+          // Close the session with the last bytes, the commit is done later for the whole batch.
+          if ( remaining > 0 ) {
+            dbxClient.files().uploadSessionAppendV2Builder( cursor )
+              .withClose( true )
+              .start()
+              .uploadAndFinish( in, remaining, chunkProgress( progress, uploaded ) );
+            data.metrics.recordCall( "files/upload_session/append_v2", start );
+            data.metrics.addBytesUploaded( remaining );
+          }
+          attempts.succeeded();
+          removeJournalEntry( journalKey );
+          return UploadResult.pendingCommit( new UploadSessionFinishArg( new UploadSessionCursor( sessionId, size ),
+            commitInfo ) );
+        }
         FileMetadata metadata = dbxClient.files().uploadSessionFinish( cursor, commitInfo )
-          .uploadAndFinish( in, remaining, progressListener );
+          .uploadAndFinish( in, remaining, chunkProgress( progress, uploaded ) );
+        attempts.succeeded();
+        data.metrics.recordCall( "files/upload_session/finish", start );
+        data.metrics.addBytesUploaded( remaining );
 
         log.logBasic( metadata.toStringMultiline() );
-        return true;
+        removeJournalEntry( journalKey );
+        return UploadResult.SUCCEEDED;
       } catch ( RetryException ex ) {
-        thrown = ex;
         // RetryExceptions are never automatically retried by the client for uploads. Must
         // catch this exception even if DbxRequestConfig.getMaxRetries() > 0.
-        sleepQuietly( ex.getBackoffMillis() );
+        attempts.failed( ex );
         continue;
-      } catch ( NetworkIOException ex ) {
-        thrown = ex;
-        // network issue with Dropbox (maybe a timeout?) try again
+      } catch ( NetworkIOException | ServerException ex ) {
+        // network issue with Dropbox (maybe a timeout?) or a server hiccup, try again
+        attempts.failed( ex );
+        // Whatever chunk was in flight failed, smaller ones are cheaper to send again.
+        data.chunkSizer.failed();
         continue;
-      } catch ( UploadSessionLookupErrorException ex ) {
+      } catch ( UploadSessionAppendErrorException ex ) {
         if ( ex.errorValue.isIncorrectOffset() ) {
-          thrown = ex;
+          attempts.retryNow( ex );
           // server offset into the stream doesn't match our offset (uploaded). Seek to
           // the expected offset according to the server and try again.
           uploaded = ex.errorValue
             .getIncorrectOffsetValue()
             .getCorrectOffset();
           continue;
+        } else if ( resumed != null && ex.errorValue.isNotFound() ) {
+          attempts.retryNow( ex );
+          // The session of the previous run is gone, start over.
+          resumed = null;
+          sessionId = null;
+          uploaded = 0L;
+          removeJournalEntry( journalKey );
+          continue;
         } else {
           // Some other error occurred, give up.
           log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
-          return false;
+          return UploadResult.FAILED;
         }
       } catch ( UploadSessionFinishErrorException ex ) {
         if ( ex.errorValue.isLookupFailed() && ex.errorValue.getLookupFailedValue().isIncorrectOffset() ) {
-          thrown = ex;
+          attempts.retryNow( ex );
           // server offset into the stream doesn't match our offset (uploaded). Seek to
           // the expected offset according to the server and try again.
           uploaded = ex.errorValue
@@ -397,34 +1021,256 @@ public class DropboxOutput extends BaseStep implements StepInterface {
             .getIncorrectOffsetValue()
             .getCorrectOffset();
           continue;
+        } else if ( resumed != null && ex.errorValue.isLookupFailed()
+          && ex.errorValue.getLookupFailedValue().isNotFound() ) {
+          attempts.retryNow( ex );
+          // The session of the previous run is gone, start over.
+          resumed = null;
+          sessionId = null;
+          uploaded = 0L;
+          removeJournalEntry( journalKey );
+          continue;
         } else {
           // some other error occurred, give up.
           log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
-          return false;
+          return UploadResult.FAILED;
         }
       } catch ( DbxException ex ) {
         log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
-        return false;
+        return UploadResult.FAILED;
       } catch ( IOException ex ) {
         log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.ErrorReadingFile", localFile.getName(), ex.getMessage() ) );
-        return false;
+        return UploadResult.FAILED;
       }
     }
 
-    // if we made it here, then we must have run out of attempts
-    log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.TooManyAttempts", thrown.getMessage() ) );
-    return false;
+    // if we made it here, then the retry policy gave up
+    logGaveUp( attempts );
+    return UploadResult.FAILED;
   }
 
-  private void printProgress( long uploaded, long size ) {
-    logDetailed( String.format( "Uploaded %12d / %12d bytes (%5.2f%%)\n", uploaded, size, 100 * ( uploaded / (double) size ) ) );
+  /**
+   * Uploads a file in chunks that are appended in parallel to a single concurrent upload session. Each chunk is
+   * sent with its own offset, so chunks can arrive in any order and are retried on their own. The last chunk closes
+   * the session, so it is only sent once every other chunk made it. The session is committed once, after every
+   * chunk made it.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param localFile local file to upload
+   * @param dropboxPath Where to upload the file to within Dropbox
+   * @param mode what to do when the file already exists
+   */
+  private boolean concurrentChunkedUploadFile( DbxClientV2 dbxClient, File localFile, String dropboxPath,
+                                               WriteMode mode ) {
+    // Chunks are all read from the same channel, by position.
+    try ( FileChannel channel = openChannel( localFile ) ) {
+      return concurrentChunkedUploadFile( dbxClient, localFile, channel, dropboxPath, mode );
+    } catch ( IOException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.ErrorReadingFile", localFile.getName(), ex.getMessage() ) );
+      return false;
+    }
   }
-  private void sleepQuietly( long millis ) {
+
+  private boolean concurrentChunkedUploadFile( DbxClientV2 dbxClient, File localFile, FileChannel channel,
+                                               String dropboxPath, WriteMode mode ) {
+    long size = localFile.length();
+
+    // (1) Start: open an empty concurrent session, chunks don't need to be sent in order.
+    String sessionId;
     try {
-      Thread.sleep( millis );
+      sessionId = data.retryPolicy.call( dbxClient, "files/upload_session/start",
+        () -> dbxClient.files().uploadSessionStartBuilder()
+          .withSessionType( UploadSessionType.CONCURRENT )
+          .start()
+          .finish()
+          .getSessionId() );
+    } catch ( DbxException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+      return false;
+    }
+
+    // (2) Append: keep up to parallelChunkStreams chunks of this file in flight.
+    CompletionService<Boolean> appends = new ExecutorCompletionService<>( data.chunkWorkers );
+    TransferProgress progress = new TransferProgress( log, "Uploaded", size );
+    long nextOffset = 0L;
+    int submitted = 0;
+    int completed = 0;
+    boolean succeeded = true;
+    try {
+      // Chunks are sized as they are submitted, stop submitting once one failed and wait for those in flight.
+      while ( completed < submitted || ( succeeded && nextOffset < size ) ) {
+        while ( succeeded && nextOffset < size && submitted - completed < meta.getParallelChunkStreams() ) {
+          long offset = nextOffset;
+          long length = Math.min( data.chunkSizer.chunkSize(), size - offset );
+          boolean last = offset + length == size;
+          if ( last && completed < submitted ) {
+            // Closing the session now would turn down the appends still in flight or retrying.
+            break;
+          }
+          nextOffset += length;
+          submitted++;
+          appends.submit( () -> {
+            boolean appended = appendChunk( dbxClient, localFile, channel, sessionId, offset, length, last );
+            if ( appended ) {
+              progress.add( length );
+            }
+            return appended;
+          } );
+        }
+        succeeded &= appends.take().get();
+        completed++;
+      }
     } catch ( InterruptedException ex ) {
-      // just exit
+      Thread.currentThread().interrupt();
       log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.Error.Interrupted" ) );
+      return false;
+    } catch ( ExecutionException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getCause().getMessage() ) );
+      return false;
+    }
+    if ( !succeeded ) {
+      return false;
+    }
+
+    // (3) Finish: the session is closed, commit it with the final offset and no data.
+    CommitInfo commitInfo = CommitInfo.newBuilder( dropboxPath )
+      .withMode( mode )
+      .withClientModified( new Date( localFile.lastModified() ) )
+      .build();
+    try {
+      FileMetadata metadata = data.retryPolicy.call( dbxClient, "files/upload_session/finish",
+        () -> dbxClient.files()
+          .uploadSessionFinish( new UploadSessionCursor( sessionId, size ), commitInfo )
+          .finish() );
+      log.logBasic( metadata.toStringMultiline() );
+      return true;
+    } catch ( DbxException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+      return false;
+    }
+  }
+
+  /**
+   * Appends a single chunk to a concurrent upload session, retrying it on its own on transient errors.
+   *
+   * @param dbxClient Dropbox user authenticated client
+   * @param localFile local file being uploaded
+   * @param channel open channel of the local file
+   * @param sessionId concurrent upload session
+   * @param offset where the chunk starts within the file
+   * @param length chunk length, a multiple of 4MiB unless it is the last chunk
+   * @param last whether this is the last chunk, which closes the session
+   */
+  private boolean appendChunk( DbxClientV2 dbxClient, File localFile, FileChannel channel, String sessionId,
+                               long offset, long length, boolean last ) {
+    RetryPolicy.Attempts attempts = data.retryPolicy.attempts( dbxClient );
+    while ( attempts.next() ) {
+      if ( attempts.attempt() > 1 ) {
+        log.logDetailed( String.format( "Retrying chunk at offset %d (%d / %d attempts)\n", offset,
+          attempts.attempt(), attempts.maxAttempts() ) );
+      }
+      try ( InputStream in = new FileRangeInputStream( channel, offset, length ) ) {
+        long callStart = System.nanoTime();
+        dbxClient.files().uploadSessionAppendV2Builder( new UploadSessionCursor( sessionId, offset ) )
+          .withClose( last )
+          .start()
+          .uploadAndFinish( in, length );
+        attempts.succeeded();
+        data.metrics.recordCall( "files/upload_session/append_v2", callStart );
+        data.metrics.addBytesUploaded( length );
+        data.chunkSizer.succeeded( length, System.nanoTime() - callStart );
+        return true;
+      } catch ( RetryException ex ) {
+        attempts.failed( ex );
+      } catch ( NetworkIOException | ServerException ex ) {
+        attempts.failed( ex );
+        data.chunkSizer.failed();
+      } catch ( UploadSessionAppendErrorException ex ) {
+        if ( attempts.attempt() > 1 && ex.errorValue.isIncorrectOffset()
+          && ex.errorValue.getIncorrectOffsetValue().getCorrectOffset() >= offset + length ) {
+          // The previous attempt reached the server even though we didn't get the answer. Its duration is unknown,
+          // so it doesn't count towards the chunk size.
+          attempts.succeeded();
+          data.metrics.addBytesUploaded( length );
+          return true;
+        }
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+        return false;
+      } catch ( DbxException ex ) {
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.UploadError", ex.getMessage() ) );
+        return false;
+      } catch ( IOException ex ) {
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.ErrorReadingFile", localFile.getName(), ex.getMessage() ) );
+        return false;
+      }
+    }
+    logGaveUp( attempts );
+    return false;
+  }
+
+  /**
+   * Logs why the retry policy stopped trying a call.
+   */
+  private void logGaveUp( RetryPolicy.Attempts attempts ) {
+    String cause = attempts.lastError() != null ? attempts.lastError().getMessage() : "";
+    switch ( attempts.outcome() ) {
+      case BUDGET_SPENT:
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.RetryBudgetSpent", cause ) );
+        break;
+      case CIRCUIT_OPEN:
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.CircuitOpen", cause ) );
+        break;
+      case INTERRUPTED:
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.Error.Interrupted" ) );
+        break;
+      default:
+        log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.TooManyAttempts", cause ) );
+    }
+  }
+
+  private UploadJournal.Entry findJournalEntry( String journalKey ) {
+    if ( journalKey == null ) {
+      return null;
+    }
+    try {
+      return data.journal.find( journalKey );
+    } catch ( IOException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.JournalError", ex.getMessage() ) );
+      return null;
+    }
+  }
+
+  private void recordJournalEntry( String journalKey, UploadJournal.Entry entry ) {
+    if ( journalKey == null ) {
+      return;
+    }
+    try {
+      data.journal.record( journalKey, entry );
+    } catch ( IOException ex ) {
+      // The upload itself is fine, it just won't be resumable.
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.JournalError", ex.getMessage() ) );
+    }
+  }
+
+  private void removeJournalEntry( String journalKey ) {
+    if ( journalKey == null ) {
+      return;
     }
+    try {
+      data.journal.remove( journalKey );
+    } catch ( IOException ex ) {
+      log.logError( BaseMessages.getString( PKG, "DropboxOutput.Log.JournalError", ex.getMessage() ) );
+    }
+  }
+
+  private FileChannel openChannel( File localFile ) throws IOException {
+    return FileChannel.open( localFile.toPath(), StandardOpenOption.READ );
+  }
+
+  /**
+   * Reports the progress of a chunk starting at the given offset as progress of the whole file.
+   */
+  private ProgressListener chunkProgress( TransferProgress progress, long offset ) {
+    return bytes -> progress.update( offset + bytes );
   }
 }
@@ -18,25 +18,86 @@
  */
 package com.leonardo.coelho.dropboxoutput;
 
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferExecutor;
+import com.leonardo.coelho.dropboxcommon.TransferMetrics;
+import com.leonardo.coelho.dropboxcommon.TransferThrottle;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import com.dropbox.core.v2.files.UploadSessionFinishArg;
+import com.dropbox.core.v2.files.UploadSessionFinishBatchResultEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 
 public class DropboxOutputData extends BaseStepData implements StepDataInterface {
   int accessTokenIdx;
   int sourceFileIdx;
   int targetFilesIdx;
+  int contentIdx;
+  int skippedIdx = -1;
 
   RowMetaInterface outputRowMeta;
   public RowSet successfulRowSet;
   public RowSet failedRowSet;
   public boolean chosesTargetSteps;
 
-  // Large files should be uploaded in chunks for optimization.
-  static final long CHUNKED_UPLOAD_CHUNK_SIZE = 8L << 20; // 8MiB
-  static final int CHUNKED_UPLOAD_MAX_ATTEMPTS = 5;
+  // Uploads in flight, routed to the output row sets as they complete.
+  TransferExecutor<UploadResult> transfers;
+
+  // Limits this step put on the JVM-wide transfer throttle, released on dispose.
+  TransferThrottle.Registration throttle;
+
+  // Appends chunks of large files in parallel, null when chunks are sent one after another.
+  ExecutorService chunkWorkers;
+
+  // Uploaded files waiting for a batch commit, per access token.
+  Map<String, UploadBatch> batches = new LinkedHashMap<>();
+  int batchSize;
+
+  // Commits full batches, null unless batch commit is enabled.
+  ExecutorService batchCommitter;
+
+  // Batches handed to the committer whose rows weren't routed yet, oldest first.
+  Deque<UploadBatch> committingBatches = new ArrayDeque<>();
+
+  // Progress of chunked uploads kept on disk, null when uploads aren't resumable.
+  UploadJournal journal;
+
+  // Rows being concatenated into the same target file, null when none.
+  ContentGroup contentGroup;
+
+  // File the rows are being written to, null when none.
+  RowsFile rowsFile;
+  int[] rowsFileFields;
+
+  // Size of the chunks appended to upload sessions, fixed or following the measured throughput.
+  ChunkSizer chunkSizer;
+
+  // Files up to this size are sent with a single request, larger ones are uploaded in chunks.
+  long simpleUploadMaxSize;
+
+  // How calls failing on transient errors are retried.
+  RetryPolicy retryPolicy;
+
+  // Counters and latencies of the transfers, published as an MBean while the step runs.
+  TransferMetrics metrics;
+
+  static final int DEFAULT_CHUNK_SIZE_MIB = 8;
+
+  // Dropbox commits at most 1000 upload sessions per uploadSessionFinishBatch call.
+  static final int UPLOAD_BATCH_MAX_ENTRIES = 1000;
+  static final long UPLOAD_BATCH_POLL_INTERVAL_MILLIS = 1000L;
 
   /**
    * 
@@ -44,4 +105,56 @@ public class DropboxOutputData extends BaseStepData implements StepDataInterface
   public DropboxOutputData() {
     super();
   }
+
+  /**
+   * Delimited text file being streamed into an upload session.
+   */
+  static class RowsFile {
+    final String accessToken;
+    final String targetFile;
+    final UploadSessionWriter upload;
+    final DelimitedRowWriter out;
+
+    RowsFile( String accessToken, String targetFile, UploadSessionWriter upload, DelimitedRowWriter out ) {
+      this.accessToken = accessToken;
+      this.targetFile = targetFile;
+      this.upload = upload;
+      this.out = out;
+    }
+  }
+
+  /**
+   * Consecutive rows whose content is streamed into a single file.
+   */
+  static class ContentGroup {
+    final String accessToken;
+    final String targetFile;
+    final List<Object[]> rows = new ArrayList<>();
+    final List<Boolean> valid = new ArrayList<>();
+
+    // Null once an append failed, the whole file is then reported as failed.
+    UploadSessionWriter writer;
+
+    ContentGroup( String accessToken, String targetFile, UploadSessionWriter writer ) {
+      this.accessToken = accessToken;
+      this.targetFile = targetFile;
+      this.writer = writer;
+    }
+
+    void add( Object[] row, boolean isValid ) {
+      rows.add( row );
+      valid.add( isValid );
+    }
+  }
+
+  /**
+   * Rows whose upload sessions are closed and will be committed together.
+   */
+  static class UploadBatch {
+    final List<Object[]> rows = new ArrayList<>();
+    final List<UploadSessionFinishArg> entries = new ArrayList<>();
+
+    // Result entries of the commit, once handed to the batch committer.
+    Future<List<UploadSessionFinishBatchResultEntry>> committed;
+  }
 }
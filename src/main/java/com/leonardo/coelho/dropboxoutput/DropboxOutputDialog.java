@@ -18,6 +18,7 @@
  */
 package com.leonardo.coelho.dropboxoutput;
 
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.custom.ScrolledComposite;
@@ -91,6 +92,90 @@ public class DropboxOutputDialog extends BaseStepDialog implements StepDialogInt
   private Label wTargetFilesLabel;
   private CCombo wTargetFilesComboBox;
 
+  // Upload the content of a field instead of local files.
+  private Label wUploadFromFieldLabel;
+  private Button wUploadFromFieldButton;
+
+  // Field holding the content to upload.
+  private Label wContentFieldLabel;
+  private CCombo wContentFieldComboBox;
+
+  // Stream consecutive rows with the same target into one file.
+  private Label wConcatenateRowsLabel;
+  private Button wConcatenateRowsButton;
+
+  // Skip local files whose content is already in Dropbox.
+  private Label wSkipUnchangedLabel;
+  private Button wSkipUnchangedButton;
+  private Label wSkippedFieldLabel;
+  private Text wSkippedFieldField;
+
+  // Group file format content.
+  private Group fileFormatGroup;
+
+  // Write the rows themselves to a delimited text file.
+  private Label wWriteRowsToFileLabel;
+  private Button wWriteRowsToFileButton;
+
+  // Delimited text format.
+  private Label wSeparatorLabel;
+  private Text wSeparatorField;
+  private Label wEnclosureLabel;
+  private Text wEnclosureField;
+  private Label wHeaderLabel;
+  private Button wHeaderButton;
+  private Label wEncodingLabel;
+  private Text wEncodingField;
+
+  // Group performance content.
+  private Group performanceGroup;
+
+  // Number of files uploaded at the same time.
+  private Label wMaxConcurrentTransfersLabel;
+  private Text wMaxConcurrentTransfersField;
+
+  // Keep output rows in input order.
+  private Label wPreserveOrderLabel;
+  private Button wPreserveOrderButton;
+
+  // Chunks of a large file uploaded at the same time.
+  private Label wParallelChunkStreamsLabel;
+  private Text wParallelChunkStreamsField;
+
+  // Size of the chunks of large files, fixed or following the measured throughput.
+  private Label wChunkSizeLabel;
+  private Text wChunkSizeField;
+  private Label wAdaptiveChunkSizeLabel;
+  private Button wAdaptiveChunkSizeButton;
+
+  // Commit uploads together in batches.
+  private Label wBatchCommitLabel;
+  private Button wBatchCommitButton;
+
+  // Number of uploads committed together.
+  private Label wBatchSizeLabel;
+  private Text wBatchSizeField;
+
+  // Folder keeping track of chunked uploads, so they can be resumed.
+  private Label wJournalFolderLabel;
+  private Text wJournalFolderField;
+
+  // Limits shared with the other Dropbox steps of the JVM.
+  private Label wTokenBandwidthLimitLabel;
+  private Text wTokenBandwidthLimitField;
+  private Label wTokenRequestLimitLabel;
+  private Text wTokenRequestLimitField;
+  private Label wTotalBandwidthLimitLabel;
+  private Text wTotalBandwidthLimitField;
+
+  // Retry policy
+  private Label wMaxAttemptsLabel;
+  private Text wMaxAttemptsField;
+  private Label wRetryBudgetLabel;
+  private Text wRetryBudgetField;
+  private Label wBreakerThresholdLabel;
+  private Text wBreakerThresholdField;
+
   // Footer Buttons
   private Button wCancel;
   private Button wOK;
@@ -277,6 +362,524 @@ public class DropboxOutputDialog extends BaseStepDialog implements StepDialogInt
       .result();
     wTargetFilesComboBox.setLayoutData( fdTransformation3 );
 
+    // Upload From Field label/checkbox
+    wUploadFromFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wUploadFromFieldLabel );
+    wUploadFromFieldLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.UploadFromField.Label" ) );
+    FormData fdlUploadFromField = new FormDataBuilder().left()
+      .top( wTargetFilesComboBox, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wUploadFromFieldLabel.setLayoutData( fdlUploadFromField );
+
+    wUploadFromFieldButton = new Button( transferGroup, SWT.CHECK );
+    props.setLook( wUploadFromFieldButton );
+    wUploadFromFieldButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setUploadFromFieldEnabled();
+      }
+    } );
+    FormData fdUploadFromField = new FormDataBuilder().left( middle, 0 )
+      .top( wTargetFilesComboBox, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wUploadFromFieldButton.setLayoutData( fdUploadFromField );
+
+    // Content Field label/field
+    wContentFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wContentFieldLabel );
+    wContentFieldLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.ContentField.Label" ) );
+    FormData fdlContentField = new FormDataBuilder().left()
+      .top( wUploadFromFieldButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wContentFieldLabel.setLayoutData( fdlContentField );
+
+    wContentFieldComboBox = new CCombo( transferGroup, SWT.BORDER );
+    props.setLook( wContentFieldComboBox );
+    wContentFieldComboBox.addModifyListener( lsMod );
+    FormData fdContentField = new FormDataBuilder().left( middle, 0 )
+      .top( wUploadFromFieldButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wContentFieldComboBox.setLayoutData( fdContentField );
+
+    // Concatenate Rows label/checkbox
+    wConcatenateRowsLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wConcatenateRowsLabel );
+    wConcatenateRowsLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.ConcatenateRows.Label" ) );
+    FormData fdlConcatenateRows = new FormDataBuilder().left()
+      .top( wContentFieldComboBox, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wConcatenateRowsLabel.setLayoutData( fdlConcatenateRows );
+
+    wConcatenateRowsButton = new Button( transferGroup, SWT.CHECK );
+    props.setLook( wConcatenateRowsButton );
+    wConcatenateRowsButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdConcatenateRows = new FormDataBuilder().left( middle, 0 )
+      .top( wContentFieldComboBox, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wConcatenateRowsButton.setLayoutData( fdConcatenateRows );
+
+    // Skip Unchanged label/checkbox
+    wSkipUnchangedLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wSkipUnchangedLabel );
+    wSkipUnchangedLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.SkipUnchanged.Label" ) );
+    FormData fdlSkipUnchanged = new FormDataBuilder().left()
+      .top( wConcatenateRowsButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSkipUnchangedLabel.setLayoutData( fdlSkipUnchanged );
+
+    wSkipUnchangedButton = new Button( transferGroup, SWT.CHECK );
+    props.setLook( wSkipUnchangedButton );
+    wSkipUnchangedButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setUploadFromFieldEnabled();
+      }
+    } );
+    FormData fdSkipUnchanged = new FormDataBuilder().left( middle, 0 )
+      .top( wConcatenateRowsButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSkipUnchangedButton.setLayoutData( fdSkipUnchanged );
+
+    // Skipped Field label/field
+    wSkippedFieldLabel = new Label( transferGroup, SWT.RIGHT );
+    props.setLook( wSkippedFieldLabel );
+    wSkippedFieldLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.SkippedField.Label" ) );
+    FormData fdlSkippedField = new FormDataBuilder().left()
+      .top( wSkipUnchangedButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSkippedFieldLabel.setLayoutData( fdlSkippedField );
+
+    wSkippedFieldField = new Text( transferGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSkippedFieldField );
+    wSkippedFieldField.addModifyListener( lsMod );
+    FormData fdSkippedField = new FormDataBuilder().left( middle, 0 )
+      .top( wSkipUnchangedButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSkippedFieldField.setLayoutData( fdSkippedField );
+
+    // Group for File Format Fields.
+    fileFormatGroup = new Group( contentComposite, SWT.SHADOW_ETCHED_IN );
+    fileFormatGroup.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.FileFormat.GroupText" ) );
+    FormLayout fileFormatGroupLayout = new FormLayout();
+    fileFormatGroupLayout.marginWidth = MARGIN_SIZE;
+    fileFormatGroupLayout.marginHeight = MARGIN_SIZE;
+    fileFormatGroup.setLayout( fileFormatGroupLayout );
+    FormData fileFormatGroupLayoutData = new FormDataBuilder().fullWidth()
+      .top( transferGroup, MARGIN_SIZE )
+      .result();
+    fileFormatGroup.setLayoutData( fileFormatGroupLayoutData );
+    props.setLook( fileFormatGroup );
+
+    // Write Rows To File label/checkbox
+    wWriteRowsToFileLabel = new Label( fileFormatGroup, SWT.RIGHT );
+    props.setLook( wWriteRowsToFileLabel );
+    wWriteRowsToFileLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.WriteRowsToFile.Label" ) );
+    FormData fdlWriteRowsToFile = new FormDataBuilder().left()
+      .top()
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wWriteRowsToFileLabel.setLayoutData( fdlWriteRowsToFile );
+
+    wWriteRowsToFileButton = new Button( fileFormatGroup, SWT.CHECK );
+    props.setLook( wWriteRowsToFileButton );
+    wWriteRowsToFileButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setUploadFromFieldEnabled();
+      }
+    } );
+    FormData fdWriteRowsToFile = new FormDataBuilder().left( middle, 0 )
+      .top()
+      .right( 100, 0 )
+      .result();
+    wWriteRowsToFileButton.setLayoutData( fdWriteRowsToFile );
+
+    // Separator label/field
+    wSeparatorLabel = new Label( fileFormatGroup, SWT.RIGHT );
+    props.setLook( wSeparatorLabel );
+    wSeparatorLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.Separator.Label" ) );
+    FormData fdlSeparator = new FormDataBuilder().left()
+      .top( wWriteRowsToFileButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wSeparatorLabel.setLayoutData( fdlSeparator );
+
+    wSeparatorField = new Text( fileFormatGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSeparatorField );
+    wSeparatorField.addModifyListener( lsMod );
+    FormData fdSeparator = new FormDataBuilder().left( middle, 0 )
+      .top( wWriteRowsToFileButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wSeparatorField.setLayoutData( fdSeparator );
+
+    // Enclosure label/field
+    wEnclosureLabel = new Label( fileFormatGroup, SWT.RIGHT );
+    props.setLook( wEnclosureLabel );
+    wEnclosureLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.Enclosure.Label" ) );
+    FormData fdlEnclosure = new FormDataBuilder().left()
+      .top( wSeparatorField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wEnclosureLabel.setLayoutData( fdlEnclosure );
+
+    wEnclosureField = new Text( fileFormatGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wEnclosureField );
+    wEnclosureField.addModifyListener( lsMod );
+    FormData fdEnclosure = new FormDataBuilder().left( middle, 0 )
+      .top( wSeparatorField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wEnclosureField.setLayoutData( fdEnclosure );
+
+    // Header label/checkbox
+    wHeaderLabel = new Label( fileFormatGroup, SWT.RIGHT );
+    props.setLook( wHeaderLabel );
+    wHeaderLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.Header.Label" ) );
+    FormData fdlHeader = new FormDataBuilder().left()
+      .top( wEnclosureField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wHeaderLabel.setLayoutData( fdlHeader );
+
+    wHeaderButton = new Button( fileFormatGroup, SWT.CHECK );
+    props.setLook( wHeaderButton );
+    wHeaderButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdHeader = new FormDataBuilder().left( middle, 0 )
+      .top( wEnclosureField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wHeaderButton.setLayoutData( fdHeader );
+
+    // Encoding label/field
+    wEncodingLabel = new Label( fileFormatGroup, SWT.RIGHT );
+    props.setLook( wEncodingLabel );
+    wEncodingLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.Encoding.Label" ) );
+    FormData fdlEncoding = new FormDataBuilder().left()
+      .top( wHeaderButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wEncodingLabel.setLayoutData( fdlEncoding );
+
+    wEncodingField = new Text( fileFormatGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wEncodingField );
+    wEncodingField.addModifyListener( lsMod );
+    FormData fdEncoding = new FormDataBuilder().left( middle, 0 )
+      .top( wHeaderButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wEncodingField.setLayoutData( fdEncoding );
+
+    // Group for Performance Fields.
+    performanceGroup = new Group( contentComposite, SWT.SHADOW_ETCHED_IN );
+    performanceGroup.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.Performance.GroupText" ) );
+    FormLayout performanceGroupLayout = new FormLayout();
+    performanceGroupLayout.marginWidth = MARGIN_SIZE;
+    performanceGroupLayout.marginHeight = MARGIN_SIZE;
+    performanceGroup.setLayout( performanceGroupLayout );
+    FormData performanceGroupLayoutData = new FormDataBuilder().fullWidth()
+      .top( fileFormatGroup, MARGIN_SIZE )
+      .result();
+    performanceGroup.setLayoutData( performanceGroupLayoutData );
+    props.setLook( performanceGroup );
+
+    // Max Concurrent Transfers label/field
+    wMaxConcurrentTransfersLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wMaxConcurrentTransfersLabel );
+    wMaxConcurrentTransfersLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.MaxConcurrentTransfers.Label" ) );
+    FormData fdlMaxConcurrentTransfers = new FormDataBuilder().left()
+      .top()
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wMaxConcurrentTransfersLabel.setLayoutData( fdlMaxConcurrentTransfers );
+
+    wMaxConcurrentTransfersField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxConcurrentTransfersField );
+    wMaxConcurrentTransfersField.addModifyListener( lsMod );
+    FormData fdMaxConcurrentTransfers = new FormDataBuilder().left( middle, 0 )
+      .top()
+      .right( 100, 0 )
+      .result();
+    wMaxConcurrentTransfersField.setLayoutData( fdMaxConcurrentTransfers );
+
+    // Preserve Order label/checkbox
+    wPreserveOrderLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wPreserveOrderLabel );
+    wPreserveOrderLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.PreserveOrder.Label" ) );
+    FormData fdlPreserveOrder = new FormDataBuilder().left()
+      .top( wMaxConcurrentTransfersField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wPreserveOrderLabel.setLayoutData( fdlPreserveOrder );
+
+    wPreserveOrderButton = new Button( performanceGroup, SWT.CHECK );
+    props.setLook( wPreserveOrderButton );
+    wPreserveOrderButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdPreserveOrder = new FormDataBuilder().left( middle, 0 )
+      .top( wMaxConcurrentTransfersField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wPreserveOrderButton.setLayoutData( fdPreserveOrder );
+
+    // Parallel Chunk Streams label/field
+    wParallelChunkStreamsLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wParallelChunkStreamsLabel );
+    wParallelChunkStreamsLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.ParallelChunkStreams.Label" ) );
+    FormData fdlParallelChunkStreams = new FormDataBuilder().left()
+      .top( wPreserveOrderButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wParallelChunkStreamsLabel.setLayoutData( fdlParallelChunkStreams );
+
+    wParallelChunkStreamsField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wParallelChunkStreamsField );
+    wParallelChunkStreamsField.addModifyListener( lsMod );
+    FormData fdParallelChunkStreams = new FormDataBuilder().left( middle, 0 )
+      .top( wPreserveOrderButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wParallelChunkStreamsField.setLayoutData( fdParallelChunkStreams );
+
+    // Chunk Size label/field
+    wChunkSizeLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wChunkSizeLabel );
+    wChunkSizeLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.ChunkSize.Label" ) );
+    FormData fdlChunkSize = new FormDataBuilder().left()
+      .top( wParallelChunkStreamsField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wChunkSizeLabel.setLayoutData( fdlChunkSize );
+
+    wChunkSizeField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wChunkSizeField );
+    wChunkSizeField.addModifyListener( lsMod );
+    FormData fdChunkSize = new FormDataBuilder().left( middle, 0 )
+      .top( wParallelChunkStreamsField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wChunkSizeField.setLayoutData( fdChunkSize );
+
+    // Adaptive Chunk Size label/checkbox
+    wAdaptiveChunkSizeLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wAdaptiveChunkSizeLabel );
+    wAdaptiveChunkSizeLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.AdaptiveChunkSize.Label" ) );
+    FormData fdlAdaptiveChunkSize = new FormDataBuilder().left()
+      .top( wChunkSizeField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wAdaptiveChunkSizeLabel.setLayoutData( fdlAdaptiveChunkSize );
+
+    wAdaptiveChunkSizeButton = new Button( performanceGroup, SWT.CHECK );
+    props.setLook( wAdaptiveChunkSizeButton );
+    wAdaptiveChunkSizeButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    FormData fdAdaptiveChunkSize = new FormDataBuilder().left( middle, 0 )
+      .top( wChunkSizeField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wAdaptiveChunkSizeButton.setLayoutData( fdAdaptiveChunkSize );
+
+    // Batch Commit label/checkbox
+    wBatchCommitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wBatchCommitLabel );
+    wBatchCommitLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.BatchCommit.Label" ) );
+    FormData fdlBatchCommit = new FormDataBuilder().left()
+      .top( wAdaptiveChunkSizeButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wBatchCommitLabel.setLayoutData( fdlBatchCommit );
+
+    wBatchCommitButton = new Button( performanceGroup, SWT.CHECK );
+    props.setLook( wBatchCommitButton );
+    wBatchCommitButton.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setBatchCommitEnabled();
+      }
+    } );
+    FormData fdBatchCommit = new FormDataBuilder().left( middle, 0 )
+      .top( wAdaptiveChunkSizeButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wBatchCommitButton.setLayoutData( fdBatchCommit );
+
+    // Batch Size label/field
+    wBatchSizeLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wBatchSizeLabel );
+    wBatchSizeLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.BatchSize.Label" ) );
+    FormData fdlBatchSize = new FormDataBuilder().left()
+      .top( wBatchCommitButton, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wBatchSizeLabel.setLayoutData( fdlBatchSize );
+
+    wBatchSizeField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBatchSizeField );
+    wBatchSizeField.addModifyListener( lsMod );
+    FormData fdBatchSize = new FormDataBuilder().left( middle, 0 )
+      .top( wBatchCommitButton, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wBatchSizeField.setLayoutData( fdBatchSize );
+
+    // Journal Folder label/field
+    wJournalFolderLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wJournalFolderLabel );
+    wJournalFolderLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.JournalFolder.Label" ) );
+    FormData fdlJournalFolder = new FormDataBuilder().left()
+      .top( wBatchSizeField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wJournalFolderLabel.setLayoutData( fdlJournalFolder );
+
+    wJournalFolderField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wJournalFolderField );
+    wJournalFolderField.addModifyListener( lsMod );
+    FormData fdJournalFolder = new FormDataBuilder().left( middle, 0 )
+      .top( wBatchSizeField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wJournalFolderField.setLayoutData( fdJournalFolder );
+
+    // Token Bandwidth Limit label/field
+    wTokenBandwidthLimitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wTokenBandwidthLimitLabel );
+    wTokenBandwidthLimitLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.TokenBandwidthLimit.Label" ) );
+    FormData fdlTokenBandwidthLimit = new FormDataBuilder().left()
+      .top( wJournalFolderField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTokenBandwidthLimitLabel.setLayoutData( fdlTokenBandwidthLimit );
+
+    wTokenBandwidthLimitField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTokenBandwidthLimitField );
+    wTokenBandwidthLimitField.addModifyListener( lsMod );
+    FormData fdTokenBandwidthLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wJournalFolderField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTokenBandwidthLimitField.setLayoutData( fdTokenBandwidthLimit );
+
+    // Token Request Limit label/field
+    wTokenRequestLimitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wTokenRequestLimitLabel );
+    wTokenRequestLimitLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.TokenRequestLimit.Label" ) );
+    FormData fdlTokenRequestLimit = new FormDataBuilder().left()
+      .top( wTokenBandwidthLimitField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTokenRequestLimitLabel.setLayoutData( fdlTokenRequestLimit );
+
+    wTokenRequestLimitField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTokenRequestLimitField );
+    wTokenRequestLimitField.addModifyListener( lsMod );
+    FormData fdTokenRequestLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wTokenBandwidthLimitField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTokenRequestLimitField.setLayoutData( fdTokenRequestLimit );
+
+    // Total Bandwidth Limit label/field
+    wTotalBandwidthLimitLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wTotalBandwidthLimitLabel );
+    wTotalBandwidthLimitLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.TotalBandwidthLimit.Label" ) );
+    FormData fdlTotalBandwidthLimit = new FormDataBuilder().left()
+      .top( wTokenRequestLimitField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wTotalBandwidthLimitLabel.setLayoutData( fdlTotalBandwidthLimit );
+
+    wTotalBandwidthLimitField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTotalBandwidthLimitField );
+    wTotalBandwidthLimitField.addModifyListener( lsMod );
+    FormData fdTotalBandwidthLimit = new FormDataBuilder().left( middle, 0 )
+      .top( wTokenRequestLimitField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wTotalBandwidthLimitField.setLayoutData( fdTotalBandwidthLimit );
+
+    // Max Attempts label/field
+    wMaxAttemptsLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wMaxAttemptsLabel );
+    wMaxAttemptsLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.MaxAttempts.Label" ) );
+    FormData fdlMaxAttempts = new FormDataBuilder().left()
+      .top( wTotalBandwidthLimitField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wMaxAttemptsLabel.setLayoutData( fdlMaxAttempts );
+
+    wMaxAttemptsField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxAttemptsField );
+    wMaxAttemptsField.addModifyListener( lsMod );
+    FormData fdMaxAttempts = new FormDataBuilder().left( middle, 0 )
+      .top( wTotalBandwidthLimitField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wMaxAttemptsField.setLayoutData( fdMaxAttempts );
+
+    // Retry Budget label/field
+    wRetryBudgetLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wRetryBudgetLabel );
+    wRetryBudgetLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.RetryBudget.Label" ) );
+    FormData fdlRetryBudget = new FormDataBuilder().left()
+      .top( wMaxAttemptsField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wRetryBudgetLabel.setLayoutData( fdlRetryBudget );
+
+    wRetryBudgetField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wRetryBudgetField );
+    wRetryBudgetField.addModifyListener( lsMod );
+    FormData fdRetryBudget = new FormDataBuilder().left( middle, 0 )
+      .top( wMaxAttemptsField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wRetryBudgetField.setLayoutData( fdRetryBudget );
+
+    // Breaker Threshold label/field
+    wBreakerThresholdLabel = new Label( performanceGroup, SWT.RIGHT );
+    props.setLook( wBreakerThresholdLabel );
+    wBreakerThresholdLabel.setText( BaseMessages.getString( PKG, "DropboxOutputDialog.BreakerThreshold.Label" ) );
+    FormData fdlBreakerThreshold = new FormDataBuilder().left()
+      .top( wRetryBudgetField, ELEMENT_SPACING )
+      .right( middle, -ELEMENT_SPACING )
+      .result();
+    wBreakerThresholdLabel.setLayoutData( fdlBreakerThreshold );
+
+    wBreakerThresholdField = new Text( performanceGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBreakerThresholdField );
+    wBreakerThresholdField.addModifyListener( lsMod );
+    FormData fdBreakerThreshold = new FormDataBuilder().left( middle, 0 )
+      .top( wRetryBudgetField, ELEMENT_SPACING )
+      .right( 100, 0 )
+      .result();
+    wBreakerThresholdField.setLayoutData( fdBreakerThreshold );
+
     // Cancel, action and OK buttons for the bottom of the window.
     wCancel = new Button( shell, SWT.PUSH );
     wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
@@ -383,6 +986,7 @@ public class DropboxOutputDialog extends BaseStepDialog implements StepDialogInt
         wAccessTokenField.add( field );
         wSourceFilesComboBox.add( field );
         wTargetFilesComboBox.add( field );
+        wContentFieldComboBox.add( field );
       } );
     } catch ( KettleStepException e ) {
       e.printStackTrace();
@@ -401,6 +1005,35 @@ public class DropboxOutputDialog extends BaseStepDialog implements StepDialogInt
     if ( targetFolderField != null ) {
       wTargetFilesComboBox.setText( meta.getTargetFilesField() );
     }
+
+    wUploadFromFieldButton.setSelection( meta.isUploadFromField() );
+    wContentFieldComboBox.setText( Const.NVL( meta.getContentField(), "" ) );
+    wConcatenateRowsButton.setSelection( meta.isConcatenateRows() );
+    wSkipUnchangedButton.setSelection( meta.isSkipUnchanged() );
+    wSkippedFieldField.setText( Const.NVL( meta.getSkippedField(), "" ) );
+    wWriteRowsToFileButton.setSelection( meta.isWriteRowsToFile() );
+    wSeparatorField.setText( Const.NVL( meta.getSeparator(), "" ) );
+    wEnclosureField.setText( Const.NVL( meta.getEnclosure(), "" ) );
+    wHeaderButton.setSelection( meta.isHeader() );
+    wEncodingField.setText( Const.NVL( meta.getEncoding(), "" ) );
+    setUploadFromFieldEnabled();
+
+    // Get performance fields values.
+    wMaxConcurrentTransfersField.setText( String.valueOf( meta.getMaxConcurrentTransfers() ) );
+    wPreserveOrderButton.setSelection( meta.isPreserveOrder() );
+    wParallelChunkStreamsField.setText( String.valueOf( meta.getParallelChunkStreams() ) );
+    wChunkSizeField.setText( String.valueOf( meta.getChunkSize() ) );
+    wAdaptiveChunkSizeButton.setSelection( meta.isAdaptiveChunkSize() );
+    wBatchCommitButton.setSelection( meta.isBatchCommit() );
+    wBatchSizeField.setText( String.valueOf( meta.getBatchSize() ) );
+    setBatchCommitEnabled();
+    wJournalFolderField.setText( Const.NVL( meta.getJournalFolder(), "" ) );
+    wTokenBandwidthLimitField.setText( String.valueOf( meta.getTokenBandwidthLimit() ) );
+    wTokenRequestLimitField.setText( String.valueOf( meta.getTokenRequestLimit() ) );
+    wTotalBandwidthLimitField.setText( String.valueOf( meta.getTotalBandwidthLimit() ) );
+    wMaxAttemptsField.setText( String.valueOf( meta.getMaxAttempts() ) );
+    wRetryBudgetField.setText( String.valueOf( meta.getRetryBudget() ) );
+    wBreakerThresholdField.setText( String.valueOf( meta.getBreakerThreshold() ) );
   }
 
   /**
@@ -420,6 +1053,57 @@ public class DropboxOutputDialog extends BaseStepDialog implements StepDialogInt
     meta.setAccessTokenField( wAccessTokenField.getText() );
     meta.setSourceFilesField( wSourceFilesComboBox.getText() );
     meta.setTargetFilesField( wTargetFilesComboBox.getText() );
+    meta.setUploadFromField( wUploadFromFieldButton.getSelection() );
+    meta.setContentField( wContentFieldComboBox.getText() );
+    meta.setConcatenateRows( wConcatenateRowsButton.getSelection() );
+    meta.setSkipUnchanged( wSkipUnchangedButton.getSelection() );
+    meta.setSkippedField( wSkippedFieldField.getText() );
+    meta.setWriteRowsToFile( wWriteRowsToFileButton.getSelection() );
+    meta.setSeparator( wSeparatorField.getText() );
+    meta.setEnclosure( wEnclosureField.getText() );
+    meta.setHeader( wHeaderButton.getSelection() );
+    meta.setEncoding( wEncodingField.getText() );
+
+    // Set performance fields.
+    meta.setMaxConcurrentTransfers( Const.toInt( wMaxConcurrentTransfersField.getText(), 1 ) );
+    meta.setPreserveOrder( wPreserveOrderButton.getSelection() );
+    meta.setParallelChunkStreams( Const.toInt( wParallelChunkStreamsField.getText(), 1 ) );
+    meta.setChunkSize( Const.toInt( wChunkSizeField.getText(), 8 ) );
+    meta.setAdaptiveChunkSize( wAdaptiveChunkSizeButton.getSelection() );
+    meta.setBatchCommit( wBatchCommitButton.getSelection() );
+    meta.setBatchSize( Const.toInt( wBatchSizeField.getText(), 1000 ) );
+    meta.setJournalFolder( wJournalFolderField.getText() );
+    meta.setTokenBandwidthLimit( Const.toInt( wTokenBandwidthLimitField.getText(), 0 ) );
+    meta.setTokenRequestLimit( Const.toInt( wTokenRequestLimitField.getText(), 0 ) );
+    meta.setTotalBandwidthLimit( Const.toInt( wTotalBandwidthLimitField.getText(), 0 ) );
+    meta.setMaxAttempts( Const.toInt( wMaxAttemptsField.getText(), RetryPolicy.DEFAULT_MAX_ATTEMPTS ) );
+    meta.setRetryBudget( Const.toInt( wRetryBudgetField.getText(), 0 ) );
+    meta.setBreakerThreshold( Const.toInt( wBreakerThresholdField.getText(), RetryPolicy.DEFAULT_BREAKER_THRESHOLD ) );
+  }
+
+  private void setUploadFromFieldEnabled() {
+    boolean writeRowsToFile = wWriteRowsToFileButton.getSelection();
+    boolean uploadFromField = !writeRowsToFile && wUploadFromFieldButton.getSelection();
+    wSourceFilesComboBox.setEnabled( !writeRowsToFile && !uploadFromField );
+    wUploadFromFieldButton.setEnabled( !writeRowsToFile );
+    wContentFieldComboBox.setEnabled( uploadFromField );
+    wConcatenateRowsButton.setEnabled( uploadFromField );
+    wSkipUnchangedButton.setEnabled( !writeRowsToFile && !uploadFromField );
+    wSkippedFieldField.setEnabled( !writeRowsToFile && !uploadFromField && wSkipUnchangedButton.getSelection() );
+    wSeparatorField.setEnabled( writeRowsToFile );
+    wEnclosureField.setEnabled( writeRowsToFile );
+    wHeaderButton.setEnabled( writeRowsToFile );
+    wEncodingField.setEnabled( writeRowsToFile );
+  }
+
+  private void setBatchCommitEnabled() {
+    boolean batchCommit = wBatchCommitButton.getSelection();
+    wBatchSizeField.setEnabled( batchCommit );
+    // Rows of a batch are held back until it is committed, the input order can't be kept.
+    wPreserveOrderButton.setEnabled( !batchCommit );
+    if ( batchCommit ) {
+      wPreserveOrderButton.setSelection( false );
+    }
   }
 
   private void cancel() {
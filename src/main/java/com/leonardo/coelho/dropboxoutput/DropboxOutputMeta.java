@@ -18,7 +18,9 @@
  */
 package com.leonardo.coelho.dropboxoutput;
 
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
 import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -28,6 +30,7 @@ import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
@@ -64,6 +67,42 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
   private String sourceFilesField;
   private String targetFilesField;
 
+  // Upload the content of a field instead of local files.
+  private boolean uploadFromField;
+  private String contentField;
+  private boolean concatenateRows;
+
+  // Write the rows themselves to a delimited text file.
+  private boolean writeRowsToFile;
+  private String separator;
+  private String enclosure;
+  private boolean header;
+  private String encoding;
+
+  // Skip local files whose content is already in Dropbox.
+  private boolean skipUnchanged;
+  private String skippedField;
+
+  // Performance tuning.
+  private int maxConcurrentTransfers;
+  private boolean preserveOrder;
+  private int parallelChunkStreams;
+  private int chunkSize;
+  private boolean adaptiveChunkSize;
+  private boolean batchCommit;
+  private int batchSize;
+  private String journalFolder;
+
+  // Limits shared with the other Dropbox steps of the JVM, 0 for no limit.
+  private int tokenBandwidthLimit;
+  private int tokenRequestLimit;
+  private int totalBandwidthLimit;
+
+  // How failed calls are retried, see RetryPolicy.
+  private int maxAttempts;
+  private int retryBudget;
+  private int breakerThreshold;
+
   public DropboxOutputMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -115,6 +154,201 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
     this.targetFilesField = targetFilesField;
   }
 
+  public boolean isUploadFromField() {
+    return uploadFromField;
+  }
+
+  public void setUploadFromField( boolean uploadFromField ) {
+    this.uploadFromField = uploadFromField;
+  }
+
+  public String getContentField() {
+    return contentField;
+  }
+
+  public void setContentField( String contentField ) {
+    this.contentField = contentField;
+  }
+
+  public boolean isConcatenateRows() {
+    return concatenateRows;
+  }
+
+  public void setConcatenateRows( boolean concatenateRows ) {
+    this.concatenateRows = concatenateRows;
+  }
+
+  public boolean isWriteRowsToFile() {
+    return writeRowsToFile;
+  }
+
+  public void setWriteRowsToFile( boolean writeRowsToFile ) {
+    this.writeRowsToFile = writeRowsToFile;
+  }
+
+  public String getSeparator() {
+    return separator;
+  }
+
+  public void setSeparator( String separator ) {
+    this.separator = separator;
+  }
+
+  public String getEnclosure() {
+    return enclosure;
+  }
+
+  public void setEnclosure( String enclosure ) {
+    this.enclosure = enclosure;
+  }
+
+  public boolean isHeader() {
+    return header;
+  }
+
+  public void setHeader( boolean header ) {
+    this.header = header;
+  }
+
+  public String getEncoding() {
+    return encoding;
+  }
+
+  public void setEncoding( String encoding ) {
+    this.encoding = encoding;
+  }
+
+  public boolean isSkipUnchanged() {
+    return skipUnchanged;
+  }
+
+  public void setSkipUnchanged( boolean skipUnchanged ) {
+    this.skipUnchanged = skipUnchanged;
+  }
+
+  public String getSkippedField() {
+    return skippedField;
+  }
+
+  public void setSkippedField( String skippedField ) {
+    this.skippedField = skippedField;
+  }
+
+  public int getMaxConcurrentTransfers() {
+    return maxConcurrentTransfers;
+  }
+
+  public void setMaxConcurrentTransfers( int maxConcurrentTransfers ) {
+    this.maxConcurrentTransfers = maxConcurrentTransfers;
+  }
+
+  public boolean isPreserveOrder() {
+    return preserveOrder;
+  }
+
+  public void setPreserveOrder( boolean preserveOrder ) {
+    this.preserveOrder = preserveOrder;
+  }
+
+  public int getParallelChunkStreams() {
+    return parallelChunkStreams;
+  }
+
+  public void setParallelChunkStreams( int parallelChunkStreams ) {
+    this.parallelChunkStreams = parallelChunkStreams;
+  }
+
+  /**
+   * Size of the chunks of large files, in MiB.
+   */
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize( int chunkSize ) {
+    this.chunkSize = chunkSize;
+  }
+
+  public boolean isAdaptiveChunkSize() {
+    return adaptiveChunkSize;
+  }
+
+  public void setAdaptiveChunkSize( boolean adaptiveChunkSize ) {
+    this.adaptiveChunkSize = adaptiveChunkSize;
+  }
+
+  public boolean isBatchCommit() {
+    return batchCommit;
+  }
+
+  public void setBatchCommit( boolean batchCommit ) {
+    this.batchCommit = batchCommit;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize( int batchSize ) {
+    this.batchSize = batchSize;
+  }
+
+  public String getJournalFolder() {
+    return journalFolder;
+  }
+
+  public void setJournalFolder( String journalFolder ) {
+    this.journalFolder = journalFolder;
+  }
+
+  public int getTokenBandwidthLimit() {
+    return tokenBandwidthLimit;
+  }
+
+  public void setTokenBandwidthLimit( int tokenBandwidthLimit ) {
+    this.tokenBandwidthLimit = tokenBandwidthLimit;
+  }
+
+  public int getTokenRequestLimit() {
+    return tokenRequestLimit;
+  }
+
+  public void setTokenRequestLimit( int tokenRequestLimit ) {
+    this.tokenRequestLimit = tokenRequestLimit;
+  }
+
+  public int getTotalBandwidthLimit() {
+    return totalBandwidthLimit;
+  }
+
+  public void setTotalBandwidthLimit( int totalBandwidthLimit ) {
+    this.totalBandwidthLimit = totalBandwidthLimit;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public void setMaxAttempts( int maxAttempts ) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public int getRetryBudget() {
+    return retryBudget;
+  }
+
+  public void setRetryBudget( int retryBudget ) {
+    this.retryBudget = retryBudget;
+  }
+
+  public int getBreakerThreshold() {
+    return breakerThreshold;
+  }
+
+  public void setBreakerThreshold( int breakerThreshold ) {
+    this.breakerThreshold = breakerThreshold;
+  }
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode );
   }
@@ -129,10 +363,56 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
     accessTokenField = XMLHandler.getTagValue( stepnode, "accessTokenField" );
     sourceFilesField = XMLHandler.getTagValue( stepnode, "sourceFilesField" );
     targetFilesField = XMLHandler.getTagValue( stepnode, "targetFilesField" );
+    uploadFromField = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "uploadFromField" ) );
+    contentField = XMLHandler.getTagValue( stepnode, "contentField" );
+    concatenateRows = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "concatenateRows" ) );
+    writeRowsToFile = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "writeRowsToFile" ) );
+    separator = XMLHandler.getTagValue( stepnode, "separator" );
+    enclosure = XMLHandler.getTagValue( stepnode, "enclosure" );
+    header = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "header" ) );
+    encoding = XMLHandler.getTagValue( stepnode, "encoding" );
+    skipUnchanged = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "skipUnchanged" ) );
+    skippedField = XMLHandler.getTagValue( stepnode, "skippedField" );
+    maxConcurrentTransfers = Const.toInt( XMLHandler.getTagValue( stepnode, "maxConcurrentTransfers" ), 1 );
+    preserveOrder = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "preserveOrder" ) );
+    parallelChunkStreams = Const.toInt( XMLHandler.getTagValue( stepnode, "parallelChunkStreams" ), 1 );
+    chunkSize = Const.toInt( XMLHandler.getTagValue( stepnode, "chunkSize" ), 8 );
+    adaptiveChunkSize = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "adaptiveChunkSize" ) );
+    batchCommit = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "batchCommit" ) );
+    batchSize = Const.toInt( XMLHandler.getTagValue( stepnode, "batchSize" ), 1000 );
+    journalFolder = XMLHandler.getTagValue( stepnode, "journalFolder" );
+    tokenBandwidthLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "tokenBandwidthLimit" ), 0 );
+    tokenRequestLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "tokenRequestLimit" ), 0 );
+    totalBandwidthLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "totalBandwidthLimit" ), 0 );
+    maxAttempts = Const.toInt( XMLHandler.getTagValue( stepnode, "maxAttempts" ), RetryPolicy.DEFAULT_MAX_ATTEMPTS );
+    retryBudget = Const.toInt( XMLHandler.getTagValue( stepnode, "retryBudget" ), 0 );
+    breakerThreshold =
+      Const.toInt( XMLHandler.getTagValue( stepnode, "breakerThreshold" ), RetryPolicy.DEFAULT_BREAKER_THRESHOLD );
   }
 
   public void setDefault() {
-
+    uploadFromField = false;
+    concatenateRows = false;
+    writeRowsToFile = false;
+    separator = ";";
+    enclosure = "\"";
+    header = true;
+    encoding = "UTF-8";
+    skipUnchanged = false;
+    skippedField = "skipped";
+    maxConcurrentTransfers = 1;
+    preserveOrder = false;
+    parallelChunkStreams = 1;
+    chunkSize = 8;
+    adaptiveChunkSize = false;
+    batchCommit = false;
+    batchSize = 1000;
+    tokenBandwidthLimit = 0;
+    tokenRequestLimit = 0;
+    totalBandwidthLimit = 0;
+    maxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+    retryBudget = 0;
+    breakerThreshold = RetryPolicy.DEFAULT_BREAKER_THRESHOLD;
   }
 
   public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases ) throws KettleException {
@@ -142,12 +422,48 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
       accessTokenField = rep.getStepAttributeString( id_step, "accessTokenField" );
       sourceFilesField = rep.getStepAttributeString( id_step, "sourceFilesField" );
       targetFilesField = rep.getStepAttributeString( id_step, "targetFilesField" );
+      uploadFromField = rep.getStepAttributeBoolean( id_step, "uploadFromField" );
+      contentField = rep.getStepAttributeString( id_step, "contentField" );
+      concatenateRows = rep.getStepAttributeBoolean( id_step, "concatenateRows" );
+      writeRowsToFile = rep.getStepAttributeBoolean( id_step, "writeRowsToFile" );
+      separator = rep.getStepAttributeString( id_step, "separator" );
+      enclosure = rep.getStepAttributeString( id_step, "enclosure" );
+      header = rep.getStepAttributeBoolean( id_step, "header" );
+      encoding = rep.getStepAttributeString( id_step, "encoding" );
+      skipUnchanged = rep.getStepAttributeBoolean( id_step, "skipUnchanged" );
+      skippedField = rep.getStepAttributeString( id_step, "skippedField" );
+      maxConcurrentTransfers = (int) rep.getStepAttributeInteger( id_step, "maxConcurrentTransfers" );
+      preserveOrder = rep.getStepAttributeBoolean( id_step, "preserveOrder" );
+      parallelChunkStreams = (int) rep.getStepAttributeInteger( id_step, "parallelChunkStreams" );
+      chunkSize = (int) rep.getStepAttributeInteger( id_step, "chunkSize" );
+      adaptiveChunkSize = rep.getStepAttributeBoolean( id_step, "adaptiveChunkSize" );
+      batchCommit = rep.getStepAttributeBoolean( id_step, "batchCommit" );
+      batchSize = readRepInteger( rep, id_step, "batchSize", 1000 );
+      journalFolder = rep.getStepAttributeString( id_step, "journalFolder" );
+      tokenBandwidthLimit = (int) rep.getStepAttributeInteger( id_step, "tokenBandwidthLimit" );
+      tokenRequestLimit = (int) rep.getStepAttributeInteger( id_step, "tokenRequestLimit" );
+      totalBandwidthLimit = (int) rep.getStepAttributeInteger( id_step, "totalBandwidthLimit" );
+      maxAttempts = readRepInteger( rep, id_step, "maxAttempts", RetryPolicy.DEFAULT_MAX_ATTEMPTS );
+      retryBudget = (int) rep.getStepAttributeInteger( id_step, "retryBudget" );
+      breakerThreshold = readRepInteger( rep, id_step, "breakerThreshold", RetryPolicy.DEFAULT_BREAKER_THRESHOLD );
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
         PKG, "DropboxOutputMeta.Exception.UnexpectedErrorInReadingStepInfoFromRepository" ), e );
     }
   }
 
+  /**
+   * Reads an integer attribute, falling back to its default for steps saved before the attribute existed: the
+   * repository reads a missing attribute as 0.
+   */
+  private static int readRepInteger( Repository rep, ObjectId id_step, String code, int defaultValue )
+    throws KettleException {
+    if ( rep.countNrStepAttributes( id_step, code ) == 0 ) {
+      return defaultValue;
+    }
+    return (int) rep.getStepAttributeInteger( id_step, code );
+  }
+
   @Override
   public String getXML() {
     StringBuilder retval = new StringBuilder();
@@ -156,6 +472,30 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " + XMLHandler.addTagValue( "accessTokenField", accessTokenField ) );
     retval.append( "    " + XMLHandler.addTagValue( "sourceFilesField", sourceFilesField ) );
     retval.append( "    " + XMLHandler.addTagValue( "targetFilesField", targetFilesField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "uploadFromField", uploadFromField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "contentField", contentField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "concatenateRows", concatenateRows ) );
+    retval.append( "    " + XMLHandler.addTagValue( "writeRowsToFile", writeRowsToFile ) );
+    retval.append( "    " + XMLHandler.addTagValue( "separator", separator ) );
+    retval.append( "    " + XMLHandler.addTagValue( "enclosure", enclosure ) );
+    retval.append( "    " + XMLHandler.addTagValue( "header", header ) );
+    retval.append( "    " + XMLHandler.addTagValue( "encoding", encoding ) );
+    retval.append( "    " + XMLHandler.addTagValue( "skipUnchanged", skipUnchanged ) );
+    retval.append( "    " + XMLHandler.addTagValue( "skippedField", skippedField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "maxConcurrentTransfers", maxConcurrentTransfers ) );
+    retval.append( "    " + XMLHandler.addTagValue( "preserveOrder", preserveOrder ) );
+    retval.append( "    " + XMLHandler.addTagValue( "parallelChunkStreams", parallelChunkStreams ) );
+    retval.append( "    " + XMLHandler.addTagValue( "chunkSize", chunkSize ) );
+    retval.append( "    " + XMLHandler.addTagValue( "adaptiveChunkSize", adaptiveChunkSize ) );
+    retval.append( "    " + XMLHandler.addTagValue( "batchCommit", batchCommit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "batchSize", batchSize ) );
+    retval.append( "    " + XMLHandler.addTagValue( "journalFolder", journalFolder ) );
+    retval.append( "    " + XMLHandler.addTagValue( "tokenBandwidthLimit", tokenBandwidthLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "tokenRequestLimit", tokenRequestLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "totalBandwidthLimit", totalBandwidthLimit ) );
+    retval.append( "    " + XMLHandler.addTagValue( "maxAttempts", maxAttempts ) );
+    retval.append( "    " + XMLHandler.addTagValue( "retryBudget", retryBudget ) );
+    retval.append( "    " + XMLHandler.addTagValue( "breakerThreshold", breakerThreshold ) );
     return retval.toString();
   }
 
@@ -166,6 +506,30 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
       rep.saveStepAttribute( id_transformation, id_step, "accessTokenField", accessTokenField );
       rep.saveStepAttribute( id_transformation, id_step, "sourceFilesField", sourceFilesField );
       rep.saveStepAttribute( id_transformation, id_step, "targetFilesField", targetFilesField );
+      rep.saveStepAttribute( id_transformation, id_step, "uploadFromField", uploadFromField );
+      rep.saveStepAttribute( id_transformation, id_step, "contentField", contentField );
+      rep.saveStepAttribute( id_transformation, id_step, "concatenateRows", concatenateRows );
+      rep.saveStepAttribute( id_transformation, id_step, "writeRowsToFile", writeRowsToFile );
+      rep.saveStepAttribute( id_transformation, id_step, "separator", separator );
+      rep.saveStepAttribute( id_transformation, id_step, "enclosure", enclosure );
+      rep.saveStepAttribute( id_transformation, id_step, "header", header );
+      rep.saveStepAttribute( id_transformation, id_step, "encoding", encoding );
+      rep.saveStepAttribute( id_transformation, id_step, "skipUnchanged", skipUnchanged );
+      rep.saveStepAttribute( id_transformation, id_step, "skippedField", skippedField );
+      rep.saveStepAttribute( id_transformation, id_step, "maxConcurrentTransfers", maxConcurrentTransfers );
+      rep.saveStepAttribute( id_transformation, id_step, "preserveOrder", preserveOrder );
+      rep.saveStepAttribute( id_transformation, id_step, "parallelChunkStreams", parallelChunkStreams );
+      rep.saveStepAttribute( id_transformation, id_step, "chunkSize", chunkSize );
+      rep.saveStepAttribute( id_transformation, id_step, "adaptiveChunkSize", adaptiveChunkSize );
+      rep.saveStepAttribute( id_transformation, id_step, "batchCommit", batchCommit );
+      rep.saveStepAttribute( id_transformation, id_step, "batchSize", batchSize );
+      rep.saveStepAttribute( id_transformation, id_step, "journalFolder", journalFolder );
+      rep.saveStepAttribute( id_transformation, id_step, "tokenBandwidthLimit", tokenBandwidthLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "tokenRequestLimit", tokenRequestLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "totalBandwidthLimit", totalBandwidthLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "maxAttempts", maxAttempts );
+      rep.saveStepAttribute( id_transformation, id_step, "retryBudget", retryBudget );
+      rep.saveStepAttribute( id_transformation, id_step, "breakerThreshold", breakerThreshold );
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
         PKG, "DropboxOutputMeta.Exception.UnableToSaveStepInfoToRepository", id_step ), e );
@@ -174,7 +538,12 @@ public class DropboxOutputMeta extends BaseStepMeta implements StepMetaInterface
 
   public void getFields( RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
     VariableSpace space, Repository repository, IMetaStore metaStore ) throws KettleStepException {
-
+    // Only local files are compared with their Dropbox counterpart.
+    if ( skipUnchanged && !uploadFromField && !writeRowsToFile && !Utils.isEmpty( skippedField ) ) {
+      ValueMetaInterface valueMeta = new ValueMetaBoolean( skippedField );
+      valueMeta.setOrigin( origin );
+      rowMeta.addValueMeta( valueMeta );
+    }
   }
 
   public void check( List<CheckResultInterface> remarks, TransMeta transMeta,
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk record of the chunked uploads in progress, so an upload interrupted by a step or JVM restart resumes from
+ * the last committed offset of its upload session instead of byte 0.
+ * <p>
+ * Each upload has its own small properties file, named after a hash of the source path, size, modification time
+ * and target path. A source file that changed in the meantime gets a different key and starts over. Entries are
+ * replaced atomically, so a crash while writing one never leaves it half written.
+ */
+class UploadJournal {
+  // Dropbox keeps upload sessions for 7 days, leave some room for the upload to finish.
+  static final long SESSION_VALIDITY_MILLIS = TimeUnit.DAYS.toMillis( 7 ) - TimeUnit.HOURS.toMillis( 1 );
+
+  private static final String SESSION_ID = "sessionId";
+  private static final String OFFSET = "offset";
+  private static final String STARTED = "started";
+
+  private final File folder;
+
+  UploadJournal( File folder ) {
+    this.folder = folder;
+  }
+
+  /**
+   * Identifies an upload of a given version of a local file to a given target.
+   */
+  static String key( File localFile, String dropboxPath ) {
+    String identity = localFile.getAbsolutePath() + '\n' + localFile.length() + '\n' + localFile.lastModified()
+      + '\n' + dropboxPath;
+    return Hashing.sha1().hashString( identity, StandardCharsets.UTF_8 ).toString();
+  }
+
+  /**
+   * Returns the upload in progress for the given key, or null when there is none or its session expired.
+   */
+  Entry find( String key ) throws IOException {
+    File file = entryFile( key );
+    if ( !file.isFile() ) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try ( InputStream in = new FileInputStream( file ) ) {
+      properties.load( in );
+    }
+    Entry entry;
+    try {
+      entry = new Entry( properties.getProperty( SESSION_ID ), Long.parseLong( properties.getProperty( OFFSET ) ),
+        Long.parseLong( properties.getProperty( STARTED ) ) );
+    } catch ( NumberFormatException ex ) {
+      entry = null;
+    }
+    if ( entry == null || entry.sessionId == null
+      || System.currentTimeMillis() - entry.started > SESSION_VALIDITY_MILLIS ) {
+      remove( key );
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Records how far the upload session of the given key got.
+   */
+  void record( String key, Entry entry ) throws IOException {
+    if ( !folder.isDirectory() && !folder.mkdirs() ) {
+      throw new IOException( "Unable to create folder " + folder );
+    }
+    Properties properties = new Properties();
+    properties.setProperty( SESSION_ID, entry.sessionId );
+    properties.setProperty( OFFSET, String.valueOf( entry.offset ) );
+    properties.setProperty( STARTED, String.valueOf( entry.started ) );
+    File file = entryFile( key );
+    File tmp = new File( folder, key + ".tmp" );
+    try ( OutputStream out = new FileOutputStream( tmp ) ) {
+      properties.store( out, null );
+    }
+    Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+  }
+
+  /**
+   * Forgets the upload of the given key, once it is committed or can't be resumed anymore.
+   */
+  void remove( String key ) throws IOException {
+    Files.deleteIfExists( entryFile( key ).toPath() );
+  }
+
+  private File entryFile( String key ) {
+    return new File( folder, key + ".properties" );
+  }
+
+  /**
+   * Upload session of an upload in progress and how many bytes it holds.
+   */
+  static class Entry {
+    final String sessionId;
+    final long offset;
+    final long started;
+
+    Entry( String sessionId, long offset, long started ) {
+      this.sessionId = sessionId;
+      this.offset = offset;
+      this.started = started;
+    }
+  }
+}
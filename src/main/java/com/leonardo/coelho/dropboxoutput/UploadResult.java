@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import com.dropbox.core.v2.files.UploadSessionFinishArg;
+
+/**
+ * Outcome of uploading the file of a single row.
+ */
+class UploadResult {
+  static final UploadResult SUCCEEDED = new UploadResult( true, false, null, true );
+  static final UploadResult FAILED = new UploadResult( false, false, null, true );
+
+  // Target already had the same content, nothing was sent.
+  static final UploadResult SKIPPED = new UploadResult( true, true, null, true );
+
+  // Row written into a file shared with the next rows, the file is counted once it is committed.
+  static final UploadResult WRITTEN = new UploadResult( true, false, null, false );
+
+  final boolean succeeded;
+  final boolean skipped;
+  final boolean countsFile;
+
+  // Closed upload session still waiting to be committed with the rest of its batch.
+  final UploadSessionFinishArg pendingCommit;
+
+  private UploadResult( boolean succeeded, boolean skipped, UploadSessionFinishArg pendingCommit,
+                        boolean countsFile ) {
+    this.succeeded = succeeded;
+    this.skipped = skipped;
+    this.pendingCommit = pendingCommit;
+    this.countsFile = countsFile;
+  }
+
+  static UploadResult of( boolean succeeded ) {
+    return succeeded ? SUCCEEDED : FAILED;
+  }
+
+  static UploadResult pendingCommit( UploadSessionFinishArg finishArg ) {
+    return new UploadResult( true, false, finishArg, true );
+  }
+}
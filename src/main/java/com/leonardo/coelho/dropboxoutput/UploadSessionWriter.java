@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import com.dropbox.core.DbxException;
+import com.dropbox.core.NetworkIOException;
+import com.dropbox.core.RetryException;
+import com.dropbox.core.ServerException;
+import com.dropbox.core.v2.DbxClientV2;
+import com.dropbox.core.v2.files.CommitInfo;
+import com.dropbox.core.v2.files.FileMetadata;
+import com.dropbox.core.v2.files.GetMetadataErrorException;
+import com.dropbox.core.v2.files.Metadata;
+import com.dropbox.core.v2.files.UploadSessionAppendErrorException;
+import com.dropbox.core.v2.files.UploadSessionCursor;
+import com.dropbox.core.v2.files.WriteMode;
+import com.leonardo.coelho.dropboxcommon.ContentHasher;
+import com.leonardo.coelho.dropboxcommon.RetryPolicy;
+import com.leonardo.coelho.dropboxcommon.TransferMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Streams bytes written to it into a Dropbox upload session and commits them as a single file.
+ * <p>
+ * Only one chunk is held in memory: it is appended to the session as soon as it is full and more bytes follow. The
+ * chunk buffer starts small and grows with the content, so small files don't pay for a whole chunk.
+ * Content that fits in a single chunk is sent with a plain upload instead, so small files cost a single call.
+ * Chunks are kept until they are acknowledged, so each one is retried on its own on transient errors, as the retry
+ * policy of the step allows. A commit whose answer was lost may have gone through, so before committing again the
+ * writer checks whether Dropbox already holds a file with the same content at the target path.
+ */
+class UploadSessionWriter extends OutputStream {
+  private static final int INITIAL_BUFFER_SIZE = 64 << 10; // 64KiB
+
+  private final DbxClientV2 dbxClient;
+  private final String dropboxPath;
+  private final WriteMode mode;
+  private final RetryPolicy retryPolicy;
+  private final TransferMetrics metrics;
+  private final int chunkSize;
+  // Every byte is hashed once, as it leaves for Dropbox.
+  private final ContentHasher.Digest contentHash = new ContentHasher.Digest();
+
+  private byte[] chunk;
+  private int buffered;
+  private String sessionId;
+  private long offset;
+
+  /**
+   * @param dbxClient Dropbox user authenticated client
+   * @param dropboxPath Where to upload the content to within Dropbox
+   * @param mode what to do when the file already exists
+   * @param chunkSize bytes sent per request, a multiple of 4MiB
+   * @param retryPolicy how requests are retried on transient errors
+   * @param metrics where the calls and the bytes sent are recorded
+   */
+  UploadSessionWriter( DbxClientV2 dbxClient, String dropboxPath, WriteMode mode, int chunkSize,
+                       RetryPolicy retryPolicy, TransferMetrics metrics ) {
+    this.dbxClient = dbxClient;
+    this.dropboxPath = dropboxPath;
+    this.mode = mode;
+    this.retryPolicy = retryPolicy;
+    this.metrics = metrics;
+    this.chunkSize = chunkSize;
+    this.chunk = new byte[ Math.min( chunkSize, INITIAL_BUFFER_SIZE ) ];
+  }
+
+  @Override
+  public void write( int b ) throws IOException {
+    if ( buffered == chunk.length ) {
+      makeRoom();
+    }
+    chunk[ buffered++ ] = (byte) b;
+  }
+
+  @Override
+  public void write( byte[] b, int off, int len ) throws IOException {
+    while ( len > 0 ) {
+      // The chunk is only sent once more bytes follow, so the last one is always left for finish().
+      if ( buffered == chunk.length ) {
+        makeRoom();
+      }
+      int n = Math.min( len, chunk.length - buffered );
+      System.arraycopy( b, off, chunk, buffered, n );
+      buffered += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Total number of bytes written so far.
+   */
+  long size() {
+    return offset + buffered;
+  }
+
+  /**
+   * Sends the last bytes and commits the file.
+   *
+   * @return metadata of the created file
+   */
+  FileMetadata finish() throws DbxException, IOException {
+    contentHash.update( chunk, 0, buffered );
+    String expectedHash = null;
+    RetryPolicy.Attempts attempts = retryPolicy.attempts( dbxClient );
+    while ( attempts.next() ) {
+      try {
+        if ( expectedHash != null ) {
+          FileMetadata committed = findCommitted( expectedHash );
+          if ( committed != null ) {
+            attempts.succeeded();
+            return committed;
+          }
+        }
+        FileMetadata metadata;
+        long start = System.nanoTime();
+        if ( sessionId == null ) {
+          // Everything fit in a single chunk.
+          metadata = dbxClient.files().uploadBuilder( dropboxPath )
+            .withMode( mode )
+            .uploadAndFinish( new ByteArrayInputStream( chunk, 0, buffered ) );
+        } else {
+          CommitInfo commitInfo = CommitInfo.newBuilder( dropboxPath )
+            .withMode( mode )
+            .build();
+          metadata = dbxClient.files().uploadSessionFinish( new UploadSessionCursor( sessionId, offset ), commitInfo )
+            .uploadAndFinish( new ByteArrayInputStream( chunk, 0, buffered ) );
+        }
+        attempts.succeeded();
+        metrics.recordCall( sessionId == null ? "files/upload" : "files/upload_session/finish", start );
+        metrics.addBytesUploaded( buffered );
+        return metadata;
+      } catch ( RetryException ex ) {
+        // Dropbox turned the request down, nothing was committed.
+        attempts.failed( ex );
+      } catch ( NetworkIOException | ServerException ex ) {
+        // The commit may have gone through even though the answer was lost.
+        if ( expectedHash == null ) {
+          expectedHash = contentHash.digest();
+        }
+        attempts.failed( ex );
+      }
+    }
+    throw attempts.gaveUp();
+  }
+
+  /**
+   * Returns the file at the target path when it holds exactly the bytes written, null otherwise.
+   */
+  private FileMetadata findCommitted( String expectedHash ) throws DbxException {
+    Metadata metadata;
+    long start = System.nanoTime();
+    try {
+      metadata = dbxClient.files().getMetadata( dropboxPath );
+    } catch ( GetMetadataErrorException ex ) {
+      if ( ex.errorValue.isPath() && ex.errorValue.getPathValue().isNotFound() ) {
+        return null;
+      }
+      throw ex;
+    }
+    metrics.recordCall( "files/get_metadata", start );
+    if ( metadata instanceof FileMetadata && ( (FileMetadata) metadata ).getSize() == size()
+      && expectedHash.equals( ( (FileMetadata) metadata ).getContentHash() ) ) {
+      return (FileMetadata) metadata;
+    }
+    return null;
+  }
+
+  private void makeRoom() throws IOException {
+    if ( chunk.length < chunkSize ) {
+      chunk = Arrays.copyOf( chunk, Math.min( chunkSize, chunk.length * 2 ) );
+    } else {
+      appendChunk();
+    }
+  }
+
+  private void appendChunk() throws IOException {
+    contentHash.update( chunk, 0, buffered );
+    RetryPolicy.Attempts attempts = retryPolicy.attempts( dbxClient );
+    while ( attempts.next() ) {
+      try {
+        long start = System.nanoTime();
+        String endpoint = sessionId == null ? "files/upload_session/start" : "files/upload_session/append_v2";
+        if ( sessionId == null ) {
+          sessionId = dbxClient.files().uploadSessionStart()
+            .uploadAndFinish( new ByteArrayInputStream( chunk, 0, buffered ) )
+            .getSessionId();
+        } else {
+          dbxClient.files().uploadSessionAppendV2( new UploadSessionCursor( sessionId, offset ) )
+            .uploadAndFinish( new ByteArrayInputStream( chunk, 0, buffered ) );
+        }
+        attempts.succeeded();
+        metrics.recordCall( endpoint, start );
+        metrics.addBytesUploaded( buffered );
+        offset += buffered;
+        buffered = 0;
+        return;
+      } catch ( RetryException | NetworkIOException | ServerException ex ) {
+        attempts.failed( ex );
+      } catch ( UploadSessionAppendErrorException ex ) {
+        if ( attempts.attempt() > 1 && ex.errorValue.isIncorrectOffset()
+          && ex.errorValue.getIncorrectOffsetValue().getCorrectOffset() == offset + buffered ) {
+          // The previous attempt reached the server even though we didn't get the answer.
+          offset += buffered;
+          buffered = 0;
+          return;
+        }
+        throw new IOException( ex.getMessage(), ex );
+      } catch ( DbxException ex ) {
+        throw new IOException( ex.getMessage(), ex );
+      }
+    }
+    if ( attempts.outcome() == RetryPolicy.Outcome.INTERRUPTED ) {
+      throw new InterruptedIOException( "Interrupted while appending to upload session " + sessionId );
+    }
+    DbxException gaveUp = attempts.gaveUp();
+    throw new IOException( gaveUp.getMessage(), gaveUp );
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reference hashes were computed apart, as the SHA-256 of the concatenated SHA-256 of each 4MiB block.
+ */
+public class ContentHasherTest {
+  private static final String EMPTY = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+  private static final String ABC = "4f8b42c22dd3729b519ba6f68d2da7cc5b2d606d05daed5ad5128cc03e6c6358";
+  private static final String ONE_BLOCK = "b9654428408015906b44a00935b70af33830aa344b780b0eabd535a133150d04";
+  private static final String THREE_BLOCKS = "c84ee1d6377d71687c1cfe37be0897c4e351df175ea677ca2c918736a9cfb476";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void hashesFiles() throws IOException {
+    assertEquals( EMPTY, ContentHasher.hash( file( new byte[ 0 ] ) ) );
+    assertEquals( ABC, ContentHasher.hash( file( "abc".getBytes( StandardCharsets.US_ASCII ) ) ) );
+    assertEquals( ONE_BLOCK, ContentHasher.hash( file( content( ContentHasher.BLOCK_SIZE ) ) ) );
+    assertEquals( THREE_BLOCKS, ContentHasher.hash( file( content( 2 * ContentHasher.BLOCK_SIZE + 1 ) ) ) );
+  }
+
+  @Test
+  public void hashesBlocksInParallel() throws IOException {
+    ExecutorService workers = Executors.newFixedThreadPool( 2 );
+    try {
+      assertEquals( THREE_BLOCKS,
+        ContentHasher.hash( file( content( 2 * ContentHasher.BLOCK_SIZE + 1 ) ), workers, 2 ) );
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  @Test
+  public void digestMatchesTheFileHashWhateverThePieces() {
+    byte[] content = content( 2 * ContentHasher.BLOCK_SIZE + 1 );
+    for ( int piece : new int[] { 1000, 1 << 20, ContentHasher.BLOCK_SIZE, content.length } ) {
+      ContentHasher.Digest digest = new ContentHasher.Digest();
+      for ( int off = 0; off < content.length; off += piece ) {
+        digest.update( content, off, Math.min( piece, content.length - off ) );
+      }
+      assertEquals( "pieces of " + piece, THREE_BLOCKS, digest.digest() );
+    }
+    assertEquals( EMPTY, new ContentHasher.Digest().digest() );
+  }
+
+  private File file( byte[] content ) throws IOException {
+    File file = temp.newFile();
+    Files.write( file.toPath(), content );
+    return file;
+  }
+
+  private static byte[] content( int length ) {
+    byte[] content = new byte[ length ];
+    for ( int i = 0; i < length; i++ ) {
+      content[ i ] = (byte) ( i % 251 );
+    }
+    return content;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FileRangeInputStreamTest {
+  private static final int SIZE = 3 * FileRangeInputStream.BUFFER_SIZE + 17;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] content;
+  private File file;
+
+  @Before
+  public void writeFile() throws IOException {
+    content = new byte[ SIZE ];
+    for ( int i = 0; i < SIZE; i++ ) {
+      content[ i ] = (byte) ( i % 251 );
+    }
+    file = folder.newFile();
+    Files.write( file.toPath(), content );
+  }
+
+  @Test
+  public void readsOnlyTheRange() throws IOException {
+    int offset = 1000;
+    int length = 2 * FileRangeInputStream.BUFFER_SIZE + 5;
+    try ( FileChannel channel = open();
+          InputStream in = new FileRangeInputStream( channel, offset, length ) ) {
+      assertEquals( length, in.available() );
+      assertArrayEquals( Arrays.copyOfRange( content, offset, offset + length ), readAll( in ) );
+      assertEquals( -1, in.read() );
+    }
+  }
+
+  @Test
+  public void rangesShareTheChannel() throws IOException {
+    try ( FileChannel channel = open();
+          InputStream first = new FileRangeInputStream( channel, 0, 10 );
+          InputStream second = new FileRangeInputStream( channel, SIZE - 10, 10 ) ) {
+      for ( int i = 0; i < 10; i++ ) {
+        assertEquals( content[ i ] & 0xff, first.read() );
+        assertEquals( content[ SIZE - 10 + i ] & 0xff, second.read() );
+      }
+      assertEquals( -1, first.read() );
+      assertEquals( -1, second.read() );
+    }
+  }
+
+  @Test
+  public void skipsWithinAndPastTheBuffer() throws IOException {
+    try ( FileChannel channel = open();
+          InputStream in = new FileRangeInputStream( channel, 0, SIZE ) ) {
+      assertEquals( content[ 0 ] & 0xff, in.read() );
+      assertEquals( 99, in.skip( 99 ) );
+      assertEquals( content[ 100 ] & 0xff, in.read() );
+      long skipped = in.skip( 2L * FileRangeInputStream.BUFFER_SIZE );
+      assertEquals( 2L * FileRangeInputStream.BUFFER_SIZE, skipped );
+      assertEquals( content[ 101 + (int) skipped ] & 0xff, in.read() );
+      assertEquals( SIZE - 102 - skipped, in.skip( SIZE ) );
+      assertEquals( -1, in.read() );
+    }
+  }
+
+  @Test
+  public void rangePastTheEndOfTheFileFails() throws IOException {
+    try ( FileChannel channel = open();
+          InputStream in = new FileRangeInputStream( channel, SIZE - 10, 20 ) ) {
+      readAll( in );
+      fail();
+    } catch ( EOFException ex ) {
+      // Expected, the file is shorter than the range.
+    }
+  }
+
+  @Test
+  public void buffersGoBackToThePoolOnce() throws IOException {
+    try ( FileChannel channel = open() ) {
+      new FileRangeInputStream( channel, 0, 10 ).close();
+      int pooled = FileRangeInputStream.pooledBuffers();
+      InputStream in = new FileRangeInputStream( channel, 0, 10 );
+      assertEquals( pooled - 1, FileRangeInputStream.pooledBuffers() );
+      in.close();
+      in.close();
+      assertEquals( pooled, FileRangeInputStream.pooledBuffers() );
+      try {
+        in.read();
+        fail();
+      } catch ( IOException ex ) {
+        // Expected, the stream is closed.
+      }
+      // The channel belongs to the caller and stays open.
+      try ( InputStream again = new FileRangeInputStream( channel, 0, 1 ) ) {
+        assertEquals( content[ 0 ] & 0xff, again.read() );
+      }
+    }
+  }
+
+  private FileChannel open() throws IOException {
+    return FileChannel.open( file.toPath(), StandardOpenOption.READ );
+  }
+
+  private static byte[] readAll( InputStream in ) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[ 10000 ];
+    int n;
+    while ( ( n = in.read( chunk, 0, chunk.length ) ) >= 0 ) {
+      out.write( chunk, 0, n );
+    }
+    return out.toByteArray();
+  }
+}
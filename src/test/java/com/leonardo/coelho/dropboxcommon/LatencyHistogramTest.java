@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+  @Test
+  public void bucketsCoverEveryLatencyOnce() {
+    for ( int bucket = 0; bucket < 311; bucket++ ) {
+      long lower = LatencyHistogram.lowerBound( bucket );
+      long upper = LatencyHistogram.lowerBound( bucket + 1 );
+      assertTrue( "bucket " + bucket, upper > lower );
+      assertEquals( bucket, LatencyHistogram.bucket( lower ) );
+      assertEquals( bucket, LatencyHistogram.bucket( upper - 1 ) );
+      // 8 buckets per power of two keep every bucket within 12.5% of its lower bound.
+      assertTrue( "bucket " + bucket, lower < 16 || upper - lower <= lower / 8 );
+    }
+  }
+
+  @Test
+  public void longLatenciesLandInTheLastBucket() {
+    assertEquals( 311, LatencyHistogram.bucket( 1L << 41 ) );
+    assertEquals( 311, LatencyHistogram.bucket( Long.MAX_VALUE ) );
+  }
+
+  @Test
+  public void percentilesAreWithinABucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for ( int millis = 1; millis <= 1000; millis++ ) {
+      histogram.record( TimeUnit.MILLISECONDS.toNanos( millis ) );
+    }
+    assertEquals( 1000, histogram.count() );
+    assertEquals( 500.5, histogram.meanMillis(), 1e-9 );
+    for ( double quantile : new double[] { 0.5, 0.95, 0.99, 1 } ) {
+      double expected = quantile * 1000;
+      assertEquals( "quantile " + quantile, expected, histogram.percentileMillis( quantile ), expected / 8 );
+    }
+  }
+
+  @Test
+  public void emptyHistogramReportsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals( 0, histogram.count() );
+    assertEquals( 0, histogram.meanMillis(), 0 );
+    assertEquals( 0, histogram.percentileMillis( 0.99 ), 0 );
+  }
+
+  @Test
+  public void negativeLatenciesCountAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record( -5 );
+    assertEquals( 1, histogram.count() );
+    assertEquals( 0, histogram.meanMillis(), 0 );
+  }
+}
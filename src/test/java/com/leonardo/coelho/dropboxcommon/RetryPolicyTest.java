@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import com.dropbox.core.BadRequestException;
+import com.dropbox.core.DbxException;
+import com.dropbox.core.DbxRequestConfig;
+import com.dropbox.core.RetryException;
+import com.dropbox.core.ServerException;
+import com.dropbox.core.v2.DbxClientV2;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+  private static final DbxException TRANSIENT = new ServerException( null, "Injected failure" );
+
+  @Test
+  public void backoffDoublesWithJitter() {
+    RetryPolicy policy = new RetryPolicy( 5, 0, 0 );
+    long delay = RetryPolicy.BASE_DELAY_MILLIS;
+    for ( int attempt = 1; attempt <= 20; attempt++, delay = Math.min( RetryPolicy.MAX_DELAY_MILLIS, delay * 2 ) ) {
+      for ( int i = 0; i < 100; i++ ) {
+        long backoff = policy.backoffMillis( attempt, TRANSIENT );
+        assertTrue( backoff + " for attempt " + attempt, backoff >= delay / 2 && backoff <= delay );
+      }
+    }
+  }
+
+  @Test
+  public void backoffHonorsRetryAfter() {
+    RetryPolicy policy = new RetryPolicy( 5, 0, 0 );
+    RetryException rateLimited = new RetryException( null, "too_many_requests", 2, TimeUnit.MINUTES );
+    assertEquals( TimeUnit.MINUTES.toMillis( 2 ), policy.backoffMillis( 1, rateLimited ) );
+  }
+
+  @Test
+  public void givesUpOnceAttemptsRunOut() {
+    RetryPolicy.Attempts attempts = new RetryPolicy( 3, 0, 0 ).attempts( null );
+    for ( int attempt = 1; attempt <= 3; attempt++ ) {
+      assertTrue( attempts.next() );
+      assertEquals( attempt, attempts.attempt() );
+      attempts.retryNow( TRANSIENT );
+    }
+    assertFalse( attempts.next() );
+    assertEquals( RetryPolicy.Outcome.RETRIES_EXHAUSTED, attempts.outcome() );
+    assertSame( TRANSIENT, attempts.gaveUp() );
+  }
+
+  @Test
+  public void retriesNowDontSpendTheBudget() {
+    RetryPolicy.Attempts attempts = new RetryPolicy( 3, 1, 0 ).attempts( null );
+    assertTrue( attempts.next() );
+    attempts.retryNow( TRANSIENT );
+    assertTrue( attempts.next() );
+    assertNull( attempts.outcome() );
+  }
+
+  @Test
+  public void budgetIsSharedByEveryCall() {
+    RetryPolicy policy = new RetryPolicy( 5, 1, 0 );
+    RetryPolicy.Attempts first = policy.attempts( null );
+    assertTrue( first.next() );
+    first.failed( TRANSIENT );
+    assertTrue( first.next() );
+
+    RetryPolicy.Attempts second = policy.attempts( null );
+    assertTrue( second.next() );
+    second.failed( TRANSIENT );
+    assertFalse( second.next() );
+    assertEquals( RetryPolicy.Outcome.BUDGET_SPENT, second.outcome() );
+    assertEquals( TRANSIENT, second.gaveUp().getCause() );
+  }
+
+  @Test
+  public void breakerOpensAfterConsecutiveFailures() {
+    RetryPolicy policy = new RetryPolicy( 5, 0, 2 );
+    DbxClientV2 client = client();
+    failOnce( policy, client );
+    failOnce( policy, client );
+
+    RetryPolicy.Attempts attempts = policy.attempts( client );
+    assertFalse( attempts.next() );
+    assertEquals( RetryPolicy.Outcome.CIRCUIT_OPEN, attempts.outcome() );
+    // Other tokens have breakers of their own.
+    assertTrue( policy.attempts( client() ).next() );
+  }
+
+  @Test
+  public void successClosesTheBreaker() {
+    RetryPolicy policy = new RetryPolicy( 5, 0, 2 );
+    DbxClientV2 client = client();
+    failOnce( policy, client );
+    RetryPolicy.Attempts attempts = policy.attempts( client );
+    assertTrue( attempts.next() );
+    attempts.succeeded();
+    failOnce( policy, client );
+
+    assertTrue( policy.attempts( client ).next() );
+  }
+
+  @Test
+  public void callRetriesTransientErrors() throws DbxException {
+    AtomicInteger calls = new AtomicInteger();
+    String result = new RetryPolicy( 3, 0, 0 ).call( null, "files/get_metadata", () -> {
+      if ( calls.incrementAndGet() == 1 ) {
+        throw TRANSIENT;
+      }
+      return "metadata";
+    } );
+    assertEquals( "metadata", result );
+    assertEquals( 2, calls.get() );
+  }
+
+  @Test
+  public void callDoesntRetryOtherErrors() {
+    AtomicInteger calls = new AtomicInteger();
+    BadRequestException badRequest = new BadRequestException( null, "Bad request" );
+    try {
+      new RetryPolicy( 3, 0, 0 ).call( null, "files/get_metadata", () -> {
+        calls.incrementAndGet();
+        throw badRequest;
+      } );
+      fail();
+    } catch ( DbxException ex ) {
+      assertSame( badRequest, ex );
+    }
+    assertEquals( 1, calls.get() );
+  }
+
+  @Test
+  public void cancelRetriesEndsBackoffs() throws InterruptedException {
+    RetryPolicy policy = new RetryPolicy( 3, 0, 0 );
+    RetryPolicy.Attempts attempts = policy.attempts( null );
+    assertTrue( attempts.next() );
+    attempts.failed( new RetryException( null, "too_many_requests", 1, TimeUnit.MINUTES ) );
+    Thread waiting = new Thread( () -> assertFalse( attempts.next() ) );
+    waiting.start();
+    Thread.sleep( 100 );
+    policy.cancelRetries();
+    waiting.join( 5000 );
+    assertFalse( waiting.isAlive() );
+    assertEquals( RetryPolicy.Outcome.INTERRUPTED, attempts.outcome() );
+  }
+
+  @Test( expected = InterruptedException.class )
+  public void sleepFailsOnceRetriesAreCancelled() throws InterruptedException {
+    RetryPolicy policy = new RetryPolicy( 3, 0, 0 );
+    policy.cancelRetries();
+    policy.sleep( TimeUnit.MINUTES.toMillis( 1 ) );
+  }
+
+  private static void failOnce( RetryPolicy policy, DbxClientV2 client ) {
+    RetryPolicy.Attempts attempts = policy.attempts( client );
+    assertTrue( attempts.next() );
+    attempts.failed( TRANSIENT );
+  }
+
+  private static DbxClientV2 client() {
+    return new DbxClientV2( DbxRequestConfig.newBuilder( "test" ).build(), "token" );
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleStepException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransferExecutorTest {
+  private final List<Object> results = new ArrayList<>();
+  private TransferExecutor<Object> executor;
+
+  @After
+  public void shutdown() {
+    if ( executor != null ) {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void parkingFreesTheSlot() throws Exception {
+    executor = new TransferExecutor<>( "test", 1, false, ( row, result ) -> results.add( result ) );
+    CountDownLatch otherRan = new CountDownLatch( 1 );
+    executor.submit( new Object[] { 0 }, () -> {
+      try {
+        TransferExecutor.park( TimeUnit.MINUTES.toMillis( 1 ) );
+        return "woken up";
+      } catch ( InterruptedException ex ) {
+        return "cancelled";
+      }
+    } );
+    // Only submitted once the first transfer parked, the single slot is taken until then.
+    executor.submit( new Object[] { 1 }, () -> {
+      otherRan.countDown();
+      return "other";
+    } );
+    assertTrue( otherRan.await( 5, TimeUnit.SECONDS ) );
+    executor.cancelRetries();
+    executor.drain();
+    assertTrue( results.containsAll( Arrays.asList( "other", "cancelled" ) ) );
+  }
+
+  @Test
+  public void cancelRetriesFailsParkedTransfers() throws Exception {
+    executor = new TransferExecutor<>( "test", 1, false, ( row, result ) -> results.add( result ) );
+    executor.submit( new Object[] { 0 }, () -> {
+      TransferExecutor.park( TimeUnit.MINUTES.toMillis( 1 ) );
+      return "woken up";
+    } );
+    executor.submit( new Object[] { 1 }, () -> "other" );
+    long start = System.nanoTime();
+    executor.cancelRetries();
+    try {
+      executor.drain();
+      fail();
+    } catch ( KettleStepException ex ) {
+      assertTrue( ex.getCause() instanceof InterruptedException );
+    }
+    assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 5 ) );
+    assertFalse( results.contains( "woken up" ) );
+  }
+
+  @Test
+  public void preservesOrderWhenTransfersCompleteOutOfOrder() throws Exception {
+    executor = new TransferExecutor<>( "test", 4, true, ( row, result ) -> results.add( row[ 0 ] ) );
+    for ( int i = 0; i < 8; i++ ) {
+      long delay = ( 8 - i ) * 20L;
+      executor.submit( new Object[] { i }, () -> {
+        Thread.sleep( delay );
+        return null;
+      } );
+    }
+    executor.drain();
+    assertEquals( Arrays.<Object>asList( 0, 1, 2, 3, 4, 5, 6, 7 ), results );
+  }
+
+  @Test
+  public void parkingOutsideOfWorkersIsLeftToTheCaller() throws InterruptedException {
+    assertFalse( TransferExecutor.park( TimeUnit.MINUTES.toMillis( 1 ) ) );
+  }
+}
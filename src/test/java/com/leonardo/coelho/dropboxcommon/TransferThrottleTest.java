@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxcommon;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferThrottleTest {
+  private final TransferThrottle throttle = TransferThrottle.getInstance();
+
+  @Test
+  public void lowestTokenLimitWins() {
+    try ( TransferThrottle.Registration loose = throttle.register( 0, 10, 0 ) ) {
+      loose.applyTo( "lowest-limit" );
+      assertEquals( 10, throttle.requestRate( "lowest-limit" ), 1e-9 );
+      try ( TransferThrottle.Registration strict = throttle.register( 0, 5, 0 ) ) {
+        strict.applyTo( "lowest-limit" );
+        assertEquals( 5, throttle.requestRate( "lowest-limit" ), 1e-9 );
+      }
+      assertEquals( 10, throttle.requestRate( "lowest-limit" ), 1e-9 );
+    }
+  }
+
+  @Test
+  public void lowestTotalLimitWins() {
+    try ( TransferThrottle.Registration loose = throttle.register( 0, 0, 2000 );
+          TransferThrottle.Registration strict = throttle.register( 0, 0, 1000 ) ) {
+      assertTrue( throttle.isActive() );
+      assertEquals( 1000, throttle.totalByteRate(), 1e-9 );
+      strict.close();
+      assertEquals( 2000, throttle.totalByteRate(), 1e-9 );
+    }
+    assertEquals( 0, throttle.totalByteRate(), 1e-9 );
+  }
+
+  @Test
+  public void bucketsAreReleasedWithTheLastRegistration() {
+    TransferThrottle.Registration first = throttle.register( 0, 10, 0 );
+    TransferThrottle.Registration second = throttle.register( 0, 20, 0 );
+    first.applyTo( "released" );
+    second.applyTo( "released" );
+    first.close();
+    assertEquals( 20, throttle.requestRate( "released" ), 1e-9 );
+    second.close();
+    assertNull( throttle.requestRate( "released" ) );
+    assertFalse( throttle.isActive() );
+  }
+
+  @Test
+  public void bucketsAreKeptForAPendingBackoff() {
+    try ( TransferThrottle.Registration registration = throttle.register( 0, 10, 0 ) ) {
+      registration.applyTo( "backing-off" );
+      throttle.backOff( "backing-off", TimeUnit.MINUTES.toMillis( 1 ) );
+    }
+    assertNotNull( throttle.requestRate( "backing-off" ) );
+    assertEquals( 0, throttle.requestRate( "backing-off" ), 1e-9 );
+  }
+
+  @Test
+  public void unlimitedStepsDontRegister() {
+    try ( TransferThrottle.Registration registration = throttle.register( 0, 0, 0 ) ) {
+      registration.applyTo( "unlimited" );
+      assertFalse( throttle.isActive() );
+      assertNull( throttle.requestRate( "unlimited" ) );
+    }
+  }
+}
@@ -0,0 +1,683 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxfake;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.leonardo.coelho.dropboxcommon.ContentHasher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded stand-in for the Dropbox API and content servers, keeping files and upload sessions on local disk.
+ * <p>
+ * It serves the routes the steps transfer files with: {@code files/upload}, {@code files/upload_session/start},
+ * {@code append_v2} and {@code finish}, sequential and concurrent sessions alike, {@code files/download} with
+ * ranges and revisions, ranges starting past the end of the file answered with a 416, and
+ * {@code files/get_metadata}. Batch commits and folder listings aren't served. Uploads
+ * always replace the file at their path, whatever their write mode, and only the latest revision of a file can be
+ * downloaded.
+ * <p>
+ * Faults are injected at random, in the shares set with the {@code with} methods, which may be called while the
+ * server runs:
+ * <ul>
+ *   <li>{@code too_many_requests} answers, asking to retry right away;</li>
+ *   <li>internal errors;</li>
+ *   <li>{@code incorrect_offset} answers to session appends and finishes, which are not applied;</li>
+ *   <li>dropped connections: the request is applied but its answer is lost, and downloads break off halfway.</li>
+ * </ul>
+ * A route can also be made to fail every call, to stop a transfer at a given phase. Every request can wait for a
+ * latency, and bodies can be paced to a bandwidth.
+ * <p>
+ * The SDK builds its URLs from host names alone, so clients are pointed at the server by redirecting their
+ * requests to {@link #url()}, e.g. with {@code DropboxClientPool.redirectTo}.
+ */
+public final class FakeDropboxServer implements Closeable {
+  private static final JsonFactory JSON = new JsonFactory();
+  private static final int BUFFER_SIZE = 64 << 10; // 64KiB
+
+  private final HttpServer server;
+  private final ExecutorService workers;
+  private final Path filesDir;
+  private final Path sessionsDir;
+  private final ConcurrentMap<String, StoredFile> files = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong lastRev = new AtomicLong( 0x100000000L );
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong injectedFaults = new AtomicLong();
+
+  private volatile long latencyMillis;
+  private volatile long bytesPerSecond;
+  private volatile double rateLimitedRatio;
+  private volatile double serverErrorRatio;
+  private volatile double incorrectOffsetRatio;
+  private volatile double dropRatio;
+  private volatile String failingRoute;
+
+  private FakeDropboxServer( HttpServer server, Path root ) throws IOException {
+    this.server = server;
+    this.filesDir = Files.createDirectories( root.resolve( "files" ) );
+    this.sessionsDir = Files.createDirectories( root.resolve( "sessions" ) );
+    this.workers = Executors.newCachedThreadPool( r -> {
+      Thread thread = new Thread( r, "fake-dropbox" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    server.setExecutor( workers );
+    server.createContext( "/2/", this::handle );
+  }
+
+  /**
+   * Starts a server on a free port of the loopback interface.
+   *
+   * @param root folder the files and upload sessions are kept in, left in place once the server is closed
+   */
+  public static FakeDropboxServer start( Path root ) throws IOException {
+    HttpServer server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), 0 );
+    FakeDropboxServer fake = new FakeDropboxServer( server, root );
+    server.start();
+    return fake;
+  }
+
+  /**
+   * Base URL to redirect the clients to, the API and content routes are both served there.
+   */
+  public String url() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+  }
+
+  /**
+   * @param latencyMillis how long every request waits before it is served
+   */
+  public FakeDropboxServer withLatency( long latencyMillis ) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * @param bytesPerSecond pace of every request and response body, 0 for no limit
+   */
+  public FakeDropboxServer withBandwidth( long bytesPerSecond ) {
+    this.bytesPerSecond = bytesPerSecond;
+    return this;
+  }
+
+  /**
+   * @param ratio share of the requests answered with {@code too_many_requests}
+   */
+  public FakeDropboxServer withRateLimited( double ratio ) {
+    this.rateLimitedRatio = ratio;
+    return this;
+  }
+
+  /**
+   * @param ratio share of the requests answered with an internal error
+   */
+  public FakeDropboxServer withServerErrors( double ratio ) {
+    this.serverErrorRatio = ratio;
+    return this;
+  }
+
+  /**
+   * @param ratio share of the session appends and finishes answered with {@code incorrect_offset}
+   */
+  public FakeDropboxServer withIncorrectOffsets( double ratio ) {
+    this.incorrectOffsetRatio = ratio;
+    return this;
+  }
+
+  /**
+   * @param ratio share of the requests whose connection is dropped
+   */
+  public FakeDropboxServer withDrops( double ratio ) {
+    this.dropRatio = ratio;
+    return this;
+  }
+
+  /**
+   * @param route route whose every call is answered with an internal error, e.g. {@code files/upload_session/finish},
+   *              or null to serve every route
+   */
+  public FakeDropboxServer withFailingRoute( String route ) {
+    this.failingRoute = route;
+    return this;
+  }
+
+  /**
+   * Stores a file as if it had been uploaded.
+   */
+  public void putFile( String path, byte[] content ) throws IOException {
+    Path temp = Files.createTempFile( sessionsDir, "put", null );
+    Files.write( temp, content );
+    store( path, temp );
+  }
+
+  /**
+   * Content of the file at the given path, or null when there is none.
+   */
+  public byte[] getFile( String path ) throws IOException {
+    StoredFile file = files.get( path.toLowerCase( Locale.ROOT ) );
+    return file != null ? Files.readAllBytes( file.location ) : null;
+  }
+
+  /**
+   * Number of requests received so far, those that got a fault included.
+   */
+  public long requests() {
+    return requests.get();
+  }
+
+  /**
+   * Number of faults injected so far.
+   */
+  public long injectedFaults() {
+    return injectedFaults.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop( 0 );
+    workers.shutdownNow();
+  }
+
+  private void handle( HttpExchange exchange ) throws IOException {
+    try {
+      requests.incrementAndGet();
+      String route = exchange.getRequestURI().getPath().substring( "/2/".length() );
+      long start = System.nanoTime();
+      pause( TimeUnit.MILLISECONDS.toNanos( latencyMillis ) );
+      double draw = ThreadLocalRandom.current().nextDouble();
+      if ( draw < rateLimitedRatio ) {
+        injectedFaults.incrementAndGet();
+        drain( exchange.getRequestBody(), start );
+        exchange.getResponseHeaders().set( "Retry-After", "0" );
+        sendJson( exchange, 429, "{\"error_summary\": \"too_many_requests/\", "
+          + "\"error\": {\"reason\": {\".tag\": \"too_many_requests\"}, \"retry_after\": 0}}" );
+        return;
+      }
+      if ( ( draw -= rateLimitedRatio ) < serverErrorRatio || route.equals( failingRoute ) ) {
+        injectedFaults.incrementAndGet();
+        drain( exchange.getRequestBody(), start );
+        send( exchange, 500, "text/plain", "Injected failure".getBytes( StandardCharsets.UTF_8 ) );
+        return;
+      }
+      Exchange call = new Exchange( exchange, start, ( draw - serverErrorRatio ) < dropRatio );
+      if ( call.dropped ) {
+        injectedFaults.incrementAndGet();
+      }
+      Map<String, Object> arg = call.arg();
+      switch ( route ) {
+        case "files/get_metadata":
+          getMetadata( call, arg );
+          break;
+        case "files/upload":
+          upload( call, arg );
+          break;
+        case "files/upload_session/start":
+          startSession( call, arg );
+          break;
+        case "files/upload_session/append_v2":
+          if ( append( call, cursor( arg ), false ) != null ) {
+            call.respondJson( 200, "null" );
+          }
+          break;
+        case "files/upload_session/finish":
+          finishSession( call, arg );
+          break;
+        case "files/download":
+          download( call, arg );
+          break;
+        default:
+          send( exchange, 400, "text/plain", ( "Unknown route " + route ).getBytes( StandardCharsets.UTF_8 ) );
+      }
+    } catch ( RuntimeException ex ) {
+      send( exchange, 400, "text/plain", String.valueOf( ex.getMessage() ).getBytes( StandardCharsets.UTF_8 ) );
+    } finally {
+      // Closing an exchange that wasn't answered drops its connection.
+      exchange.close();
+    }
+  }
+
+  private void getMetadata( Exchange call, Map<String, Object> arg ) throws IOException {
+    StoredFile file = find( (String) arg.get( "path" ) );
+    if ( file == null ) {
+      sendNotFound( call );
+      return;
+    }
+    call.respondJson( 200, metadataJson( file, true ) );
+  }
+
+  private void upload( Exchange call, Map<String, Object> arg ) throws IOException {
+    Path temp = Files.createTempFile( sessionsDir, "upload", null );
+    try ( FileChannel channel = FileChannel.open( temp, StandardOpenOption.WRITE ) ) {
+      call.readBodyInto( channel, 0 );
+    }
+    call.respondJson( 200, metadataJson( store( (String) arg.get( "path" ), temp ), false ) );
+  }
+
+  private void startSession( Exchange call, Map<String, Object> arg ) throws IOException {
+    String sessionId = UUID.randomUUID().toString();
+    // Unions of tags alone may come as a bare string or as an object.
+    Object type = arg.get( "session_type" );
+    type = type instanceof Map ? ( (Map<?, ?>) type ).get( ".tag" ) : type;
+    Session session = new Session( sessionsDir.resolve( sessionId ), "concurrent".equals( type ) );
+    synchronized ( session ) {
+      session.size = call.readBodyInto( session.channel, 0 );
+      session.closed = Boolean.TRUE.equals( arg.get( "close" ) );
+    }
+    sessions.put( sessionId, session );
+    call.respondJson( 200, "{\"session_id\": \"" + sessionId + "\"}" );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private void finishSession( Exchange call, Map<String, Object> arg ) throws IOException {
+    String sessionId = (String) cursor( arg ).get( "session_id" );
+    Session session = append( call, cursor( arg ), true );
+    if ( session == null ) {
+      return;
+    }
+    sessions.remove( sessionId );
+    synchronized ( session ) {
+      session.channel.close();
+    }
+    Map<String, Object> commit = (Map<String, Object>) arg.get( "commit" );
+    call.respondJson( 200, metadataJson( store( (String) commit.get( "path" ), session.location ), false ) );
+  }
+
+  /**
+   * Appends the body of a call to its session, or answers with the error of the append and returns null.
+   *
+   * @param finish whether the session is being finished, its errors are reported as {@code lookup_failed}
+   */
+  private Session append( Exchange call, Map<String, Object> cursor, boolean finish ) throws IOException {
+    Session session = sessions.get( (String) cursor.get( "session_id" ) );
+    if ( session == null ) {
+      call.drain();
+      sendLookupError( call, "{\".tag\": \"not_found\"}", finish );
+      return null;
+    }
+    long offset = ( (Number) cursor.get( "offset" ) ).longValue();
+    synchronized ( session ) {
+      // Chunks of a concurrent session may still arrive once the last one closed it.
+      if ( session.closed && !session.concurrent && ( !finish || call.hasBody() ) ) {
+        call.drain();
+        sendLookupError( call, "{\".tag\": \"closed\"}", finish );
+        return null;
+      }
+      boolean injected = ThreadLocalRandom.current().nextDouble() < incorrectOffsetRatio;
+      if ( injected || ( !session.concurrent && offset != session.size ) ) {
+        if ( injected ) {
+          injectedFaults.incrementAndGet();
+        }
+        call.drain();
+        sendLookupError( call, "{\".tag\": \"incorrect_offset\", \"correct_offset\": " + session.size + "}", finish );
+        return null;
+      }
+      if ( !session.concurrent ) {
+        return appendBody( call, session, offset, finish );
+      }
+    }
+    // Chunks of a concurrent session arrive in any order, at the offset they were sent for.
+    return appendBody( call, session, offset, finish );
+  }
+
+  private Session appendBody( Exchange call, Session session, long offset, boolean finish ) throws IOException {
+    long end = offset + call.readBodyInto( session.channel, offset );
+    synchronized ( session ) {
+      session.size = Math.max( session.size, end );
+      session.closed |= finish || Boolean.TRUE.equals( call.arg().get( "close" ) );
+    }
+    return session;
+  }
+
+  private void download( Exchange call, Map<String, Object> arg ) throws IOException {
+    StoredFile file = find( (String) arg.get( "path" ) );
+    if ( file == null ) {
+      sendNotFound( call );
+      return;
+    }
+    long from = 0;
+    long to = file.size;
+    String range = call.exchange.getRequestHeaders().getFirst( "Range" );
+    if ( range != null && range.startsWith( "bytes=" ) ) {
+      String[] bounds = range.substring( "bytes=".length() ).split( "-", 2 );
+      from = Long.parseLong( bounds[ 0 ] );
+      if ( bounds.length > 1 && !bounds[ 1 ].isEmpty() ) {
+        to = Math.min( to, Long.parseLong( bounds[ 1 ] ) + 1 );
+      }
+      if ( from >= file.size ) {
+        // Like Dropbox, a range starting at or past the end of the file can't be satisfied.
+        call.respondJson( 416, "{\"error_summary\": \"invalid_range/\", "
+          + "\"error\": {\".tag\": \"invalid_range\"}}" );
+        return;
+      }
+    }
+    long length = Math.max( 0, to - from );
+    // A dropped download breaks off halfway through the body.
+    long sent = call.dropped ? length / 2 : length;
+    HttpExchange exchange = call.exchange;
+    exchange.getResponseHeaders().set( "Content-Type", "application/octet-stream" );
+    exchange.getResponseHeaders().set( "Dropbox-API-Result", metadataJson( file, true ) );
+    exchange.sendResponseHeaders( range != null ? 206 : 200, length );
+    OutputStream out = exchange.getResponseBody();
+    try ( FileChannel channel = FileChannel.open( file.location, StandardOpenOption.READ ) ) {
+      ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+      long position = from;
+      while ( position < from + sent ) {
+        buffer.clear();
+        buffer.limit( (int) Math.min( BUFFER_SIZE, from + sent - position ) );
+        int n = channel.read( buffer, position );
+        if ( n < 0 ) {
+          break;
+        }
+        out.write( buffer.array(), 0, n );
+        position += n;
+        pace( call.start, position - from );
+      }
+    }
+    if ( !call.dropped ) {
+      out.close();
+    }
+  }
+
+  private StoredFile store( String path, Path content ) throws IOException {
+    String key = path.toLowerCase( Locale.ROOT );
+    Path location = filesDir.resolve( key.startsWith( "/" ) ? key.substring( 1 ) : key );
+    Files.createDirectories( location.getParent() );
+    Files.move( content, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    StoredFile file = new StoredFile( path, location, String.format( "%x", lastRev.incrementAndGet() ),
+      Files.size( location ) );
+    files.put( key, file );
+    return file;
+  }
+
+  private StoredFile find( String path ) {
+    if ( path.startsWith( "rev:" ) ) {
+      String rev = path.substring( "rev:".length() );
+      return files.values().stream().filter( file -> file.rev.equals( rev ) ).findAny().orElse( null );
+    }
+    return files.get( path.toLowerCase( Locale.ROOT ) );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static Map<String, Object> cursor( Map<String, Object> arg ) {
+    return (Map<String, Object>) arg.get( "cursor" );
+  }
+
+  private void sendNotFound( Exchange call ) throws IOException {
+    call.respondJson( 409, "{\"error_summary\": \"path/not_found/\", "
+      + "\"error\": {\".tag\": \"path\", \"path\": {\".tag\": \"not_found\"}}}" );
+  }
+
+  private void sendLookupError( Exchange call, String error, boolean finish ) throws IOException {
+    if ( finish ) {
+      error = "{\".tag\": \"lookup_failed\", \"lookup_failed\": " + error + "}";
+    }
+    call.respondJson( 409, "{\"error_summary\": \"upload_session/\", \"error\": " + error + "}" );
+  }
+
+  private void drain( InputStream in, long start ) throws IOException {
+    byte[] buffer = new byte[ BUFFER_SIZE ];
+    long read = 0;
+    int n;
+    while ( ( n = in.read( buffer ) ) > 0 ) {
+      read += n;
+      pace( start, read );
+    }
+  }
+
+  /**
+   * Waits until the given number of bytes is due at the configured bandwidth.
+   */
+  private void pace( long startNanos, long bytes ) {
+    long limit = bytesPerSecond;
+    if ( limit > 0 ) {
+      pause( startNanos + bytes * TimeUnit.SECONDS.toNanos( 1 ) / limit - System.nanoTime() );
+    }
+  }
+
+  private static void pause( long nanos ) {
+    if ( nanos > 0 ) {
+      try {
+        TimeUnit.NANOSECONDS.sleep( nanos );
+      } catch ( InterruptedException ex ) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void sendJson( HttpExchange exchange, int status, String json ) throws IOException {
+    send( exchange, status, "application/json", json.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  private static void send( HttpExchange exchange, int status, String contentType, byte[] body ) throws IOException {
+    exchange.getResponseHeaders().set( "Content-Type", contentType );
+    exchange.sendResponseHeaders( status, body.length );
+    try ( OutputStream out = exchange.getResponseBody() ) {
+      out.write( body );
+    }
+  }
+
+  /**
+   * @param contentHash whether to include the content hash, upload answers leave it out as the steps don't read
+   *                    it there and hashing large files would slow uploads down
+   */
+  private static String metadataJson( StoredFile file, boolean contentHash ) throws IOException {
+    StringWriter json = new StringWriter();
+    try ( JsonGenerator g = JSON.createGenerator( json ) ) {
+      String modified = Instant.ofEpochSecond( file.modified ).toString();
+      g.writeStartObject();
+      g.writeStringField( ".tag", "file" );
+      g.writeStringField( "name", file.path.substring( file.path.lastIndexOf( '/' ) + 1 ) );
+      g.writeStringField( "id", "id:" + file.rev );
+      g.writeStringField( "client_modified", modified );
+      g.writeStringField( "server_modified", modified );
+      g.writeStringField( "rev", file.rev );
+      g.writeNumberField( "size", file.size );
+      g.writeStringField( "path_lower", file.path.toLowerCase( Locale.ROOT ) );
+      g.writeStringField( "path_display", file.path );
+      if ( contentHash ) {
+        g.writeStringField( "content_hash", file.contentHash() );
+      }
+      g.writeEndObject();
+    }
+    return json.toString();
+  }
+
+  private static Map<String, Object> parse( String json ) throws IOException {
+    try ( JsonParser p = JSON.createParser( json ) ) {
+      if ( p.nextToken() != JsonToken.START_OBJECT ) {
+        throw new IllegalArgumentException( "Expected a JSON object: " + json );
+      }
+      return readObject( p );
+    }
+  }
+
+  private static Map<String, Object> readObject( JsonParser p ) throws IOException {
+    Map<String, Object> object = new LinkedHashMap<>();
+    while ( p.nextToken() == JsonToken.FIELD_NAME ) {
+      String name = p.getCurrentName();
+      switch ( p.nextToken() ) {
+        case START_OBJECT:
+          object.put( name, readObject( p ) );
+          break;
+        case START_ARRAY:
+          // Not needed by any route served here.
+          p.skipChildren();
+          break;
+        case VALUE_NUMBER_INT:
+          object.put( name, p.getLongValue() );
+          break;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+          object.put( name, p.getBooleanValue() );
+          break;
+        case VALUE_NULL:
+          object.put( name, null );
+          break;
+        default:
+          object.put( name, p.getText() );
+      }
+    }
+    return object;
+  }
+
+  /**
+   * A request being served. Its answer is held back when its connection is to be dropped.
+   */
+  private final class Exchange {
+    final HttpExchange exchange;
+    final long start;
+    final boolean dropped;
+    private Map<String, Object> arg;
+
+    Exchange( HttpExchange exchange, long start, boolean dropped ) {
+      this.exchange = exchange;
+      this.start = start;
+      this.dropped = dropped;
+    }
+
+    /**
+     * Argument of the call, sent in a header to content routes and as the body to RPC routes.
+     */
+    Map<String, Object> arg() throws IOException {
+      if ( arg == null ) {
+        String header = exchange.getRequestHeaders().getFirst( "Dropbox-API-Arg" );
+        if ( header != null ) {
+          arg = parse( header );
+        } else {
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          byte[] buffer = new byte[ BUFFER_SIZE ];
+          int n;
+          while ( ( n = exchange.getRequestBody().read( buffer ) ) > 0 ) {
+            body.write( buffer, 0, n );
+          }
+          arg = parse( body.size() > 0 ? body.toString( "UTF-8" ) : "{}" );
+        }
+      }
+      return arg;
+    }
+
+    boolean hasBody() {
+      String length = exchange.getRequestHeaders().getFirst( "Content-Length" );
+      return length == null || Long.parseLong( length ) > 0;
+    }
+
+    /**
+     * Writes the body of the call to a channel from the given position.
+     *
+     * @return number of bytes written
+     */
+    long readBodyInto( FileChannel channel, long position ) throws IOException {
+      InputStream in = exchange.getRequestBody();
+      byte[] buffer = new byte[ BUFFER_SIZE ];
+      long read = 0;
+      int n;
+      while ( ( n = in.read( buffer ) ) > 0 ) {
+        ByteBuffer chunk = ByteBuffer.wrap( buffer, 0, n );
+        while ( chunk.hasRemaining() ) {
+          channel.write( chunk, position + read + chunk.position() );
+        }
+        read += n;
+        pace( start, read );
+      }
+      return read;
+    }
+
+    void drain() throws IOException {
+      FakeDropboxServer.this.drain( exchange.getRequestBody(), start );
+    }
+
+    void respondJson( int status, String json ) throws IOException {
+      if ( !dropped ) {
+        sendJson( exchange, status, json );
+      }
+    }
+  }
+
+  /**
+   * Upload session, kept in a file of its own until it is finished.
+   */
+  private static final class Session {
+    final Path location;
+    final FileChannel channel;
+    final boolean concurrent;
+    long size;
+    boolean closed;
+
+    Session( Path location, boolean concurrent ) throws IOException {
+      this.location = location;
+      this.channel = FileChannel.open( location, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+      this.concurrent = concurrent;
+    }
+  }
+
+  private static final class StoredFile {
+    final String path;
+    final Path location;
+    final String rev;
+    final long size;
+    final long modified = System.currentTimeMillis() / 1000;
+    private String contentHash;
+
+    StoredFile( String path, Path location, String rev, long size ) {
+      this.path = path;
+      this.location = location;
+      this.rev = rev;
+      this.size = size;
+    }
+
+    synchronized String contentHash() throws IOException {
+      if ( contentHash == null ) {
+        contentHash = ContentHasher.hash( location.toFile() );
+      }
+      return contentHash;
+    }
+  }
+}
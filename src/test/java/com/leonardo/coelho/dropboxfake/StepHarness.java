@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxfake;
+
+import com.leonardo.coelho.dropboxcommon.DropboxClientPool;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogLevel;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs a Dropbox step in a transformation of its own, fed with rows of access token, source file and target file,
+ * against a {@link FakeDropboxServer}. Shared by the tests and the benchmarks.
+ */
+public final class StepHarness {
+  // The steps look their fields up by binary search, keep the names sorted.
+  public static final String ACCESS_TOKEN_FIELD = "accessToken";
+  public static final String SOURCE_FILE_FIELD = "sourceFile";
+  public static final String TARGET_FILE_FIELD = "targetFile";
+
+  private static final String ACCESS_TOKEN = "fake-token";
+  private static final String INJECTOR_STEPNAME = "Injector";
+  private static final String DROPBOX_STEPNAME = "Dropbox";
+
+  private StepHarness() {
+  }
+
+  /**
+   * Initializes Kettle and sends every Dropbox call to the given server.
+   */
+  public static void init( FakeDropboxServer server ) throws KettleException {
+    KettleEnvironment.init( false );
+    DropboxClientPool.getInstance().redirectTo( server.url() );
+  }
+
+  /**
+   * Runs the step until every file went through it.
+   *
+   * @param stepId plugin id of the step
+   * @param stepMeta settings of the step, the fields above included
+   * @param files source and target of each file
+   * @return the step once it finished
+   */
+  public static StepInterface run( String stepId, StepMetaInterface stepMeta, List<String[]> files )
+    throws KettleException {
+    InjectorMeta injectorMeta = new InjectorMeta();
+    injectorMeta.allocate( 3 );
+    String[] fields = { ACCESS_TOKEN_FIELD, SOURCE_FILE_FIELD, TARGET_FILE_FIELD };
+    for ( int i = 0; i < fields.length; i++ ) {
+      injectorMeta.getFieldname()[ i ] = fields[ i ];
+      injectorMeta.getType()[ i ] = ValueMetaInterface.TYPE_STRING;
+      injectorMeta.getLength()[ i ] = -1;
+      injectorMeta.getPrecision()[ i ] = -1;
+    }
+    StepMeta injector = new StepMeta( PluginRegistry.getInstance().getPluginId( StepPluginType.class, injectorMeta ),
+      INJECTOR_STEPNAME, injectorMeta );
+    StepMeta dropbox = new StepMeta( stepId, DROPBOX_STEPNAME, stepMeta );
+
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "fake-dropbox" );
+    transMeta.addStep( injector );
+    transMeta.addStep( dropbox );
+    transMeta.addTransHop( new TransHopMeta( injector, dropbox ) );
+
+    Trans trans = new Trans( transMeta );
+    // Keep logging out of the measurements and the test output.
+    trans.setLogLevel( LogLevel.ERROR );
+    trans.prepareExecution( null );
+    RowProducer producer = trans.addRowProducer( INJECTOR_STEPNAME, 0 );
+    trans.startThreads();
+    RowMetaInterface rowMeta = new RowMeta();
+    for ( String field : fields ) {
+      rowMeta.addValueMeta( new ValueMetaString( field ) );
+    }
+    for ( String[] file : files ) {
+      producer.putRow( rowMeta, new Object[] { ACCESS_TOKEN, file[ 0 ], file[ 1 ] } );
+    }
+    producer.finished();
+    trans.waitUntilFinished();
+    if ( trans.getErrors() > 0 ) {
+      throw new KettleException( "The transformation ended with errors" );
+    }
+    return trans.findRunThread( DROPBOX_STEPNAME );
+  }
+
+  /**
+   * Fails when files didn't go through, a benchmark score would be meaningless.
+   */
+  public static void checkTransferred( long expected, long transferred ) {
+    if ( transferred != expected ) {
+      throw new IllegalStateException( String.format( "Transferred %d files out of %d", transferred, expected ) );
+    }
+  }
+
+  public static void deleteRecursively( Path dir ) throws IOException {
+    try ( Stream<Path> paths = Files.walk( dir ) ) {
+      for ( Path path : (Iterable<Path>) paths.sorted( Comparator.reverseOrder() )::iterator ) {
+        Files.delete( path );
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxfake;
+
+import com.leonardo.coelho.dropboxinput.DropboxInputMeta;
+import com.leonardo.coelho.dropboxoutput.DropboxOutputMeta;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.trans.step.StepInterface;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the steps end to end against a {@link FakeDropboxServer} dropping connections and answering session calls
+ * with incorrect offsets, and checks every file still comes through whole. Each transfer is first stopped halfway
+ * so the second run has to pick it up from where the first one left off.
+ */
+public class TransferFaultsTest {
+  // Over twice the chunk size, so uploads go through a session with a start, an append and a finish.
+  private static final int FILE_SIZE = ( 10 << 20 ) + 123;
+  private static final int CHUNK_SIZE_MIB = 4;
+  // Enough attempts for the file to make it through the injected faults.
+  private static final int MAX_ATTEMPTS = 30;
+  private static final double DROP_RATIO = 0.15;
+  private static final double INCORRECT_OFFSET_RATIO = 0.25;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private FakeDropboxServer server;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws Exception {
+    server = FakeDropboxServer.start( temp.newFolder( "dropbox" ).toPath() );
+    StepHarness.init( server );
+    content = new byte[ FILE_SIZE ];
+    new Random( 42 ).nextBytes( content );
+  }
+
+  @After
+  public void tearDown() {
+    server.close();
+  }
+
+  @Test
+  public void uploadResumesFromJournalThroughFaults() throws Exception {
+    File source = temp.newFile( "source" );
+    Files.write( source.toPath(), content );
+    File journal = temp.newFolder( "journal" );
+    List<String[]> files = Collections.singletonList( new String[] { source.getPath(), "/faults/uploaded" } );
+
+    // The session is started, then every append fails.
+    server.withFailingRoute( "files/upload_session/append_v2" );
+    StepInterface step = StepHarness.run( "DropboxOutput", uploadMeta( journal, 1 ), files );
+    assertEquals( 0, step.getLinesOutput() );
+    assertNull( server.getFile( "/faults/uploaded" ) );
+    assertEquals( 1, journal.list().length );
+
+    // Picks the session up from the journal. Appends and the finish resync on incorrect offsets, the file of a lost
+    // finish answer is found committed.
+    server.withFailingRoute( null )
+      .withDrops( DROP_RATIO )
+      .withIncorrectOffsets( INCORRECT_OFFSET_RATIO );
+    step = StepHarness.run( "DropboxOutput", uploadMeta( journal, MAX_ATTEMPTS ), files );
+    assertEquals( 1, step.getLinesOutput() );
+    assertArrayEquals( content, server.getFile( "/faults/uploaded" ) );
+    assertEquals( 0, journal.list().length );
+    assertTrue( server.injectedFaults() > 0 );
+  }
+
+  @Test
+  public void downloadResumesFromPartFileThroughFaults() throws Exception {
+    server.putFile( "/faults/downloaded", content );
+    File target = new File( temp.getRoot(), "target" );
+    List<String[]> files = Collections.singletonList( new String[] { "/faults/downloaded", target.getPath() } );
+
+    // The download breaks off halfway, what came through stays in the .part file.
+    server.withDrops( 1 );
+    StepHarness.run( "DropboxInput", downloadMeta( 1 ), files );
+    assertFalse( target.exists() );
+    assertTrue( new File( target.getPath() + ".part" ).isFile() );
+
+    // Resumes with a range from the recorded offset, and again every time the download breaks off.
+    server.withDrops( DROP_RATIO );
+    StepInterface step = StepHarness.run( "DropboxInput", downloadMeta( MAX_ATTEMPTS ), files );
+    assertEquals( 1, step.getLinesInput() );
+    assertArrayEquals( content, Files.readAllBytes( target.toPath() ) );
+    assertFalse( new File( target.getPath() + ".part" ).exists() );
+  }
+
+  private static DropboxOutputMeta uploadMeta( File journal, int maxAttempts ) {
+    DropboxOutputMeta meta = new DropboxOutputMeta();
+    meta.setDefault();
+    meta.setAccessTokenField( StepHarness.ACCESS_TOKEN_FIELD );
+    meta.setSourceFilesField( StepHarness.SOURCE_FILE_FIELD );
+    meta.setTargetFilesField( StepHarness.TARGET_FILE_FIELD );
+    meta.setChunkSize( CHUNK_SIZE_MIB );
+    meta.setAdaptiveChunkSize( false );
+    meta.setJournalFolder( journal.getPath() );
+    meta.setMaxAttempts( maxAttempts );
+    // Don't let a streak of faults pause the calls for the cooldown.
+    meta.setBreakerThreshold( 0 );
+    return meta;
+  }
+
+  private static DropboxInputMeta downloadMeta( int maxAttempts ) {
+    DropboxInputMeta meta = new DropboxInputMeta();
+    meta.setDefault();
+    meta.setAccessTokenField( StepHarness.ACCESS_TOKEN_FIELD );
+    meta.setSourceFilesField( StepHarness.SOURCE_FILE_FIELD );
+    meta.setTargetFilesField( StepHarness.TARGET_FILE_FIELD );
+    meta.setMaxAttempts( maxAttempts );
+    meta.setBreakerThreshold( 0 );
+    return meta;
+  }
+}
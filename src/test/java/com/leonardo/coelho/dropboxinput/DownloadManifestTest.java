@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxinput;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DownloadManifestTest {
+  private static final String HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void entriesOutliveTheManifest() throws IOException {
+    File manifestFile = new File( temp.getRoot(), "manifest/downloads.bin" );
+    File hashed = localFile( "hashed", 3 );
+    File unhashed = localFile( "unhashed", 5 );
+    DownloadManifest manifest = DownloadManifest.load( manifestFile );
+    manifest.record( hashed, "/hashed", "rev1", HASH );
+    manifest.record( unhashed, "/unhashed", "rev2", null );
+    manifest.save();
+
+    DownloadManifest reloaded = DownloadManifest.load( manifestFile );
+    DownloadManifest.Entry entry = reloaded.find( hashed, "/hashed" );
+    assertEquals( "rev1", entry.rev );
+    assertEquals( HASH, entry.contentHash );
+    assertEquals( 3, entry.size );
+    assertNull( reloaded.find( unhashed, "/unhashed" ).contentHash );
+    assertFalse( new File( manifestFile.getPath() + ".tmp" ).exists() );
+  }
+
+  @Test
+  public void unchangedManifestIsNotWritten() throws IOException {
+    File manifestFile = new File( temp.getRoot(), "downloads.bin" );
+    DownloadManifest.load( manifestFile ).save();
+    assertFalse( manifestFile.exists() );
+  }
+
+  @Test
+  public void changedFilesAreNotTrusted() throws IOException {
+    File local = localFile( "local", 3 );
+    DownloadManifest manifest = DownloadManifest.load( new File( temp.getRoot(), "downloads.bin" ) );
+    manifest.record( local, "/source", "rev1", HASH );
+    assertNull( manifest.find( local, "/other" ) );
+
+    Files.write( local.toPath(), new byte[ 4 ] );
+    assertNull( manifest.find( local, "/source" ) );
+
+    manifest.record( local, "/source", "rev2", HASH );
+    assertEquals( "rev2", manifest.find( local, "/source" ).rev );
+    local.setLastModified( local.lastModified() - 60000 );
+    assertNull( manifest.find( local, "/source" ) );
+  }
+
+  @Test( expected = IOException.class )
+  public void rejectsOtherFiles() throws IOException {
+    DownloadManifest.load( localFile( "other", 16 ) );
+  }
+
+  private File localFile( String name, int size ) throws IOException {
+    File file = temp.newFile( name );
+    Files.write( file.toPath(), new byte[ size ] );
+    return file;
+  }
+}
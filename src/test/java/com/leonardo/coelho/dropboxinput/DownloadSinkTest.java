@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxinput;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DownloadSinkTest {
+  private static final long MIB = 1 << 20;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void writesTheStreamFromThePosition() throws IOException {
+    byte[] body = new byte[ 3 * DownloadSink.BUFFER_SIZE + 5 ];
+    for ( int i = 0; i < body.length; i++ ) {
+      body[ i ] = (byte) i;
+    }
+    File file = temp.newFile();
+    try ( FileChannel channel = DownloadSink.open( file, 10 + body.length );
+          DownloadSink sink = new DownloadSink( channel, 10, DownloadSink.SyncPolicy.NONE, null ) ) {
+      sink.transfer( new ByteArrayInputStream( body ) );
+      assertEquals( 10 + body.length, sink.position() );
+    }
+    byte[] written = Files.readAllBytes( file.toPath() );
+    assertEquals( 10 + body.length, written.length );
+    assertArrayEquals( body, Arrays.copyOfRange( written, 10, written.length ) );
+  }
+
+  @Test
+  public void stopsAtTheLimit() throws IOException {
+    RecordingChannel channel = new RecordingChannel();
+    try ( DownloadSink sink = new DownloadSink( channel, 0, DownloadSink.SyncPolicy.NONE, null ) ) {
+      sink.transfer( new ZeroStream( 5 * MIB ), 2 * MIB + 3 );
+      assertEquals( 2 * MIB + 3, sink.position() );
+      assertEquals( 2 * MIB + 3, channel.end );
+    }
+  }
+
+  @Test
+  public void checkpointsWithoutSyncing() throws IOException {
+    for ( DownloadSink.SyncPolicy policy : Arrays.asList(
+      DownloadSink.SyncPolicy.NONE, DownloadSink.SyncPolicy.ON_COMPLETE ) ) {
+      assertEquals( policy.getCode(),
+        Arrays.asList( "checkpoint " + 74 * MIB, "checkpoint " + 138 * MIB ), checkpoints( policy ) );
+    }
+  }
+
+  @Test
+  public void periodicPolicySyncsBeforeEachCheckpoint() throws IOException {
+    assertEquals( Arrays.asList( "force", "checkpoint " + 74 * MIB, "force", "checkpoint " + 138 * MIB ),
+      checkpoints( DownloadSink.SyncPolicy.PERIODIC ) );
+  }
+
+  @Test
+  public void unknownPolicyCodesDontSync() {
+    assertEquals( DownloadSink.SyncPolicy.PERIODIC, DownloadSink.SyncPolicy.fromCode( "Periodic" ) );
+    assertEquals( DownloadSink.SyncPolicy.NONE, DownloadSink.SyncPolicy.fromCode( "bogus" ) );
+    assertEquals( DownloadSink.SyncPolicy.NONE, DownloadSink.SyncPolicy.fromCode( null ) );
+  }
+
+  /**
+   * Resumes a download at 10MiB and writes 140MiB, returning the syncs and checkpoints in the order they happened.
+   */
+  private static List<String> checkpoints( DownloadSink.SyncPolicy policy ) throws IOException {
+    RecordingChannel channel = new RecordingChannel();
+    try ( DownloadSink sink = new DownloadSink( channel, 10 * MIB, policy,
+      position -> channel.events.add( "checkpoint " + position ) ) ) {
+      sink.transfer( new ZeroStream( 140 * MIB ) );
+      assertEquals( 150 * MIB, sink.position() );
+    }
+    return channel.events;
+  }
+
+  /**
+   * Stream of zeros of a given length.
+   */
+  private static final class ZeroStream extends InputStream {
+    private long left;
+
+    ZeroStream( long length ) {
+      this.left = length;
+    }
+
+    @Override
+    public int read() {
+      return left-- > 0 ? 0 : -1;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) {
+      if ( left <= 0 ) {
+        return -1;
+      }
+      int n = (int) Math.min( len, left );
+      Arrays.fill( b, off, off + n, (byte) 0 );
+      left -= n;
+      return n;
+    }
+  }
+
+  /**
+   * Channel that only keeps track of how far it was written and when it was forced.
+   */
+  private static final class RecordingChannel extends FileChannel {
+    final List<String> events = Collections.synchronizedList( new ArrayList<>() );
+    long end;
+
+    @Override
+    public int write( ByteBuffer src, long position ) {
+      int n = src.remaining();
+      ( (Buffer) src ).position( src.limit() );
+      end = Math.max( end, position + n );
+      return n;
+    }
+
+    @Override
+    public void force( boolean metaData ) {
+      events.add( "force" );
+    }
+
+    @Override
+    public int read( ByteBuffer dst ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long read( ByteBuffer[] dsts, int offset, int length ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int write( ByteBuffer src ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long write( ByteBuffer[] srcs, int offset, int length ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long position() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileChannel position( long newPosition ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long size() {
+      return end;
+    }
+
+    @Override
+    public FileChannel truncate( long size ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long transferTo( long position, long count, WritableByteChannel target ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long transferFrom( ReadableByteChannel src, long position, long count ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read( ByteBuffer dst, long position ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MappedByteBuffer map( MapMode mode, long position, long size ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock lock( long position, long size, boolean shared ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock tryLock( long position, long size, boolean shared ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void implCloseChannel() {
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxlistfolder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CursorStoreTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void cursorsOutliveTheStore() throws IOException {
+    File file = new File( temp.getRoot(), "cursors/cursors.properties" );
+    CursorStore store = CursorStore.load( file );
+    assertNull( store.find( "key" ) );
+    store.record( "key", "cursor-1" );
+    store.record( "key", "cursor-2" );
+
+    assertEquals( "cursor-2", store.find( "key" ) );
+    assertEquals( "cursor-2", CursorStore.load( file ).find( "key" ) );
+    // Written through a temporary file, nothing is left behind.
+    assertEquals( 1, file.getParentFile().list().length );
+  }
+
+  @Test
+  public void storesSharingAFileKeepEachOthersCursors() throws IOException {
+    File file = new File( temp.getRoot(), "cursors.properties" );
+    CursorStore first = CursorStore.load( file );
+    CursorStore second = CursorStore.load( file );
+    first.record( "first", "cursor-1" );
+    second.record( "second", "cursor-2" );
+
+    CursorStore reloaded = CursorStore.load( file );
+    assertEquals( "cursor-1", reloaded.find( "first" ) );
+    assertEquals( "cursor-2", reloaded.find( "second" ) );
+  }
+
+  @Test
+  public void concurrentWritersDontLoseCursors() throws Exception {
+    File file = new File( temp.getRoot(), "cursors.properties" );
+    int writers = 8;
+    ExecutorService pool = Executors.newFixedThreadPool( writers );
+    try {
+      List<Future<?>> done = new ArrayList<>();
+      for ( int i = 0; i < writers; i++ ) {
+        String key = "key-" + i;
+        done.add( pool.submit( () -> {
+          CursorStore store = CursorStore.load( file );
+          for ( int j = 0; j < 20; j++ ) {
+            store.record( key, "cursor-" + j );
+          }
+          return null;
+        } ) );
+      }
+      for ( Future<?> writer : done ) {
+        writer.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    CursorStore reloaded = CursorStore.load( file );
+    for ( int i = 0; i < writers; i++ ) {
+      assertEquals( "cursor-19", reloaded.find( "key-" + i ) );
+    }
+  }
+
+  @Test
+  public void keysDontHoldTheToken() {
+    String key = CursorStore.key( "secret-token", "/Folder", true );
+    assertFalse( key.contains( "secret-token" ) );
+    assertEquals( key, CursorStore.key( "secret-token", "/folder", true ) );
+    assertNotEquals( key, CursorStore.key( "secret-token", "/folder", false ) );
+    assertNotEquals( key, CursorStore.key( "other-token", "/folder", true ) );
+  }
+
+  @Test
+  public void tokensNeverReachTheFile() throws IOException {
+    File file = new File( temp.getRoot(), "cursors.properties" );
+    CursorStore.load( file ).record( CursorStore.key( "secret-token", "/folder", false ), "cursor" );
+    assertTrue( file.isFile() );
+    assertFalse( new String( Files.readAllBytes( file.toPath() ), StandardCharsets.ISO_8859_1 ).contains( "secret" ) );
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import org.junit.Test;
+
+import static com.leonardo.coelho.dropboxoutput.ChunkSizer.CHUNK_SIZE_UNIT;
+import static com.leonardo.coelho.dropboxoutput.ChunkSizer.MAX_CHUNK_SIZE;
+import static com.leonardo.coelho.dropboxoutput.ChunkSizer.MIN_CHUNK_SIZE;
+import static com.leonardo.coelho.dropboxoutput.ChunkSizer.TARGET_CHUNK_NANOS;
+import static org.junit.Assert.assertEquals;
+
+public class ChunkSizerTest {
+  private static final long MIB = 1 << 20;
+
+  @Test
+  public void configuredSizeIsRoundedDownToMultiplesOf4MiB() {
+    assertEquals( 8 * MIB, new ChunkSizer( 11 * MIB, false ).chunkSize() );
+    assertEquals( 12 * MIB, new ChunkSizer( 12 * MIB, false ).chunkSize() );
+  }
+
+  @Test
+  public void configuredSizeIsKeptWithinBounds() {
+    assertEquals( MIN_CHUNK_SIZE, new ChunkSizer( 0, false ).chunkSize() );
+    assertEquals( MIN_CHUNK_SIZE, new ChunkSizer( 3 * MIB, false ).chunkSize() );
+    assertEquals( MAX_CHUNK_SIZE, new ChunkSizer( 1024 * MIB, false ).chunkSize() );
+    assertEquals( 140 * MIB, MAX_CHUNK_SIZE );
+  }
+
+  @Test
+  public void fixedSizeIgnoresMeasurements() {
+    ChunkSizer sizer = new ChunkSizer( 8 * MIB, false );
+    sizer.succeeded( 8 * MIB, 1 );
+    assertEquals( 8 * MIB, sizer.chunkSize() );
+    sizer.failed();
+    assertEquals( 8 * MIB, sizer.chunkSize() );
+  }
+
+  @Test
+  public void growsAtMostTwofoldOnFastLinks() {
+    ChunkSizer sizer = new ChunkSizer( 4 * MIB, true );
+    sizer.succeeded( 4 * MIB, 1 );
+    assertEquals( 8 * MIB, sizer.chunkSize() );
+    sizer.succeeded( 8 * MIB, 1 );
+    assertEquals( 16 * MIB, sizer.chunkSize() );
+    for ( int i = 0; i < 10; i++ ) {
+      sizer.succeeded( sizer.chunkSize(), 1 );
+    }
+    assertEquals( MAX_CHUNK_SIZE, sizer.chunkSize() );
+  }
+
+  @Test
+  public void followsTheMeasuredThroughput() {
+    ChunkSizer sizer = new ChunkSizer( 64 * MIB, true );
+    // 2MiB per second, a chunk of 16MiB takes the target 8 seconds.
+    sizer.succeeded( 64 * MIB, TARGET_CHUNK_NANOS * 4 );
+    assertEquals( 16 * MIB, sizer.chunkSize() );
+    assertEquals( 0, sizer.chunkSize() % CHUNK_SIZE_UNIT );
+  }
+
+  @Test
+  public void shortChunksAreNotMeasured() {
+    ChunkSizer sizer = new ChunkSizer( 8 * MIB, true );
+    sizer.succeeded( MIB, TARGET_CHUNK_NANOS * 100 );
+    assertEquals( 8 * MIB, sizer.chunkSize() );
+  }
+
+  @Test
+  public void failuresHalveTheSizeDownToTheMinimum() {
+    ChunkSizer sizer = new ChunkSizer( 24 * MIB, true );
+    sizer.failed();
+    assertEquals( 12 * MIB, sizer.chunkSize() );
+    sizer.failed();
+    // 6MiB rounded down.
+    assertEquals( 4 * MIB, sizer.chunkSize() );
+    sizer.failed();
+    assertEquals( MIN_CHUNK_SIZE, sizer.chunkSize() );
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.leonardo.coelho.dropboxoutput;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class UploadJournalTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File folder;
+  private UploadJournal journal;
+
+  @Before
+  public void setUp() {
+    // Created on the first record.
+    folder = new File( temp.getRoot(), "journal" );
+    journal = new UploadJournal( folder );
+  }
+
+  @Test
+  public void findsWhatWasRecorded() throws IOException {
+    long started = System.currentTimeMillis();
+    journal.record( "key", new UploadJournal.Entry( "session", 4 << 20, started ) );
+    journal.record( "key", new UploadJournal.Entry( "session", 8 << 20, started ) );
+
+    UploadJournal.Entry entry = journal.find( "key" );
+    assertEquals( "session", entry.sessionId );
+    assertEquals( 8 << 20, entry.offset );
+    assertEquals( started, entry.started );
+    assertNull( journal.find( "other" ) );
+    // Entries are replaced atomically, no temporary file is left behind.
+    assertEquals( 1, folder.list().length );
+  }
+
+  @Test
+  public void forgetsRemovedEntries() throws IOException {
+    journal.record( "key", new UploadJournal.Entry( "session", 0, System.currentTimeMillis() ) );
+    journal.remove( "key" );
+    assertNull( journal.find( "key" ) );
+    journal.remove( "key" );
+  }
+
+  @Test
+  public void dropsExpiredSessions() throws IOException {
+    long started = System.currentTimeMillis() - UploadJournal.SESSION_VALIDITY_MILLIS - 1;
+    journal.record( "key", new UploadJournal.Entry( "session", 0, started ) );
+    assertNull( journal.find( "key" ) );
+    assertEquals( 0, folder.list().length );
+  }
+
+  @Test
+  public void dropsUnreadableEntries() throws IOException {
+    journal.record( "key", new UploadJournal.Entry( "session", 0, System.currentTimeMillis() ) );
+    Files.write( new File( folder, "key.properties" ).toPath(), "offset=x".getBytes( StandardCharsets.UTF_8 ) );
+    assertNull( journal.find( "key" ) );
+    assertFalse( new File( folder, "key.properties" ).exists() );
+  }
+
+  @Test
+  public void keyChangesWithTheSourceAndTarget() throws IOException {
+    File source = temp.newFile( "source" );
+    Files.write( source.toPath(), new byte[] { 1, 2, 3 } );
+    String key = UploadJournal.key( source, "/target" );
+    assertEquals( key, UploadJournal.key( source, "/target" ) );
+    assertNotEquals( key, UploadJournal.key( source, "/other" ) );
+
+    Files.write( source.toPath(), new byte[] { 1, 2, 3, 4 } );
+    assertNotEquals( key, UploadJournal.key( source, "/target" ) );
+  }
+}